@@ -0,0 +1,158 @@
+package com.jozufozu.flywheel.backend.instancing;
+
+import java.util.BitSet;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.jozufozu.flywheel.api.InstanceData;
+import com.jozufozu.flywheel.api.struct.StructType;
+import com.jozufozu.flywheel.core.layout.BufferLayout;
+
+/**
+ * Compares the two ways {@link AbstractInstancer} has removed deleted instances.
+ *
+ * <p>
+ *     {@code swapRemove} is the current {@link AbstractInstancer#removeDeletedInstances()}, which fills each hole with
+ *     the last instance. {@code compact} is the scan that came before it, which shifts every survivor after the first
+ *     hole to the left. Both return how many instances were marked dirty, since each of those is re-uploaded later.
+ * </p>
+ *
+ * <p>
+ *     Every invocation starts from a fresh instancer with {@code removed} random instances deleted, so only the removal
+ *     itself is measured.
+ * </p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class InstanceRemovalBenchmark {
+
+	@Param({ "1000", "100000" })
+	public int instances;
+
+	@Param({ "1", "100", "1000" })
+	public int removed;
+
+	private SwapRemoveInstancer swapRemove;
+	private CompactingInstancer compact;
+
+	@Setup(Level.Invocation)
+	public void setup() {
+		swapRemove = new SwapRemoveInstancer();
+		compact = new CompactingInstancer();
+		fill(swapRemove);
+		fill(compact);
+	}
+
+	private void fill(BenchmarkInstancer instancer) {
+		Data[] data = new Data[instances];
+		instancer.createInstances(data);
+
+		// same seed, so both strategies see the same holes
+		Random random = new Random(42);
+		for (int i = 0; i < Math.min(removed, instances); i++) {
+			data[random.nextInt(instances)].delete();
+		}
+
+		instancer.dirtied = 0;
+	}
+
+	@Benchmark
+	public int swapRemove() {
+		swapRemove.removeDeletedInstances();
+		return swapRemove.dirtied;
+	}
+
+	@Benchmark
+	public int compact() {
+		compact.removeDeletedInstances();
+		return compact.dirtied;
+	}
+
+	private static class Data extends InstanceData {
+	}
+
+	private static class DataType implements StructType<Data> {
+
+		@Override
+		public Data create() {
+			return new Data();
+		}
+
+		@Override
+		public BufferLayout getLayout() {
+			// only columnar structs need a layout up front
+			return null;
+		}
+	}
+
+	private abstract static class BenchmarkInstancer extends AbstractInstancer<Data> {
+
+		private int dirtied;
+
+		private BenchmarkInstancer() {
+			super(new DataType(), null);
+		}
+
+		@Override
+		public void notifyDirty() {
+		}
+
+		@Override
+		public void notifyDirty(int index) {
+			dirtied++;
+		}
+	}
+
+	private static class SwapRemoveInstancer extends BenchmarkInstancer {
+	}
+
+	private static class CompactingInstancer extends BenchmarkInstancer {
+
+		@Override
+		public void notifyRemoval(int index) {
+			notifyRemoval();
+		}
+
+		@Override
+		protected void removeDeletedInstances() {
+			final int oldSize = this.data.size();
+			int removeCount = 0;
+			final BitSet removeSet = new BitSet(oldSize);
+			for (int i = 0; i < oldSize; i++) {
+				final Data element = this.data.get(i);
+				if (element.isRemoved() || element.getOwner() != this) {
+					removeSet.set(i);
+					removeCount++;
+				}
+			}
+
+			final int newSize = oldSize - removeCount;
+
+			// shift surviving elements left over the spaces left by removed elements
+			for (int i = 0, j = 0; (i < oldSize) && (j < newSize); i++, j++) {
+				i = removeSet.nextClearBit(i);
+
+				if (i != j) {
+					Data element = data.get(i);
+					data.set(j, element);
+					element.setIndex(j);
+					element.markDirty();
+				}
+			}
+
+			data.subList(newSize, oldSize)
+					.clear();
+		}
+	}
+}
@@ -11,7 +11,7 @@ import com.jozufozu.flywheel.config.FlwConfig;
 import com.jozufozu.flywheel.core.Contexts;
 import com.jozufozu.flywheel.core.PartialModel;
 import com.jozufozu.flywheel.core.StitchedSprite;
-import com.jozufozu.flywheel.core.compile.ProgramCompiler;
+import com.jozufozu.flywheel.core.compile.CullingCompiler;
 import com.jozufozu.flywheel.event.ReloadRenderersEvent;
 import com.jozufozu.flywheel.mixin.PausedPartialTickAccessor;
 import com.jozufozu.flywheel.vanilla.VanillaInstances;
@@ -69,7 +69,7 @@ public class Flywheel {
 		Backend.init();
 
 		forgeEventBus.addListener(FlwCommands::registerClientCommands);
-		forgeEventBus.<ReloadRenderersEvent>addListener(ProgramCompiler::invalidateAll);
+		forgeEventBus.<ReloadRenderersEvent>addListener(CullingCompiler::invalidateAll);
 
 		modEventBus.addListener(Contexts::flwInit);
 		modEventBus.addListener(PartialModel::onModelRegistry);
@@ -1,20 +1,24 @@
 package com.jozufozu.flywheel.api;
 
+import net.minecraft.core.Vec3i;
+
 public abstract class InstanceData {
 
 	private Instancer<?> owner;
 
+	private int index;
+
 	private boolean dirty;
 	private boolean removed;
 
 	public final void markDirty() {
 		dirty = true;
-		owner.notifyDirty();
+		owner.notifyDirty(index);
 	}
 
 	public final void delete() {
 		removed = true;
-		owner.notifyRemoval();
+		owner.notifyRemoval(index);
 	}
 
 	public final boolean checkDirtyAndClear() {
@@ -38,4 +42,26 @@ public abstract class InstanceData {
 		this.owner = owner;
 		return this;
 	}
+
+	/**
+	 * @return The position of this instance in its owner, as last set by the owner.
+	 */
+	public int getIndex() {
+		return index;
+	}
+
+	public InstanceData setIndex(int index) {
+		this.index = index;
+		return this;
+	}
+
+	/**
+	 * Move this instance along with the origin coordinate it is positioned relative to.
+	 *
+	 * @param offset How far the origin moved.
+	 * @return false if this type can't be moved, and has to be recreated around the new origin instead.
+	 */
+	public boolean shiftOrigin(Vec3i offset) {
+		return false;
+	}
 }
@@ -42,6 +42,18 @@ public interface Instancer<D extends InstanceData> {
 	 */
 	void notifyDirty();
 
+	/**
+	 * Notify the Instancer that the instance at the given index needs updating.
+	 *
+	 * <p>
+	 *     Implementations that track individual instances can use this to avoid a full scan. May be called from any
+	 *     thread.
+	 * </p>
+	 */
+	default void notifyDirty(int index) {
+		notifyDirty();
+	}
+
 	/**
 	 * Notify the Instances that some of its data should be removed.
 	 *
@@ -51,6 +63,17 @@ public interface Instancer<D extends InstanceData> {
 	 */
 	void notifyRemoval();
 
+	/**
+	 * Notify the Instancer that the instance at the given index should be removed.
+	 *
+	 * <p>
+	 *     Implementations that track individual instances can use this to avoid a full scan.
+	 * </p>
+	 */
+	default void notifyRemoval(int index) {
+		notifyRemoval();
+	}
+
 	/**
 	 * Populate arr with new instances of this model.
 	 * @param arr An array to fill.
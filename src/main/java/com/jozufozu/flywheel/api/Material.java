@@ -23,6 +23,24 @@ public interface Material<D extends InstanceData> {
 	 */
 	Instancer<D> model(Object key, Supplier<Model> modelSupplier);
 
+	/**
+	 * Get an instancer for the given model, building the model off the render thread.
+	 *
+	 * <p>
+	 *     The instancer can be used right away, but draws nothing until the model is ready. Use this for large models
+	 *     that would otherwise cause a frame spike. Backends that can't build models in the background fall back to
+	 *     {@link #model}.
+	 * </p>
+	 *
+	 * @param key           An object that uniquely identifies the model.
+	 * @param modelSupplier A factory that creates the Model that you want to render. Must be safe to call from any
+	 *                      thread.
+	 * @return An instancer for the given model, capable of rendering many copies for little cost.
+	 */
+	default Instancer<D> modelAsync(Object key, Supplier<Model> modelSupplier) {
+		return model(key, modelSupplier);
+	}
+
 	default Instancer<D> getModel(PartialModel partial, BlockState referenceState) {
 		return model(partial, () -> new BlockModel(partial.get(), referenceState));
 	}
@@ -0,0 +1,17 @@
+package com.jozufozu.flywheel.api.struct;
+
+import com.jozufozu.flywheel.core.materials.ColumnData;
+
+/**
+ * An instanced struct that keeps its data off-heap, one column per layout item.
+ *
+ * <p>
+ *     {@link #create()} returns an unbound handle, the instancer assigns it a slot. Instancing backends that support
+ *     columns upload changed ranges with plain memory copies, others fall back to the {@link StructWriter}.
+ * </p>
+ *
+ * @param <S> The handle type.
+ */
+public interface Columnar<S extends ColumnData> extends Instanced<S> {
+
+}
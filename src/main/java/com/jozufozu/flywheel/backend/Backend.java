@@ -101,6 +101,7 @@ public class Backend {
 			case OFF -> true;
 			case BATCHING -> !usingShaders;
 			case INSTANCING -> !usingShaders && GlCompat.getInstance().instancedArraysSupported();
+			case INDIRECT -> !usingShaders && GlCompat.getInstance().multiDrawIndirectSupported();
 		};
 
 		return canUseEngine ? preferredChoice : BackendType.OFF;
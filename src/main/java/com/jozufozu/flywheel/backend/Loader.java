@@ -10,8 +10,13 @@ import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonElement;
 import com.jozufozu.flywheel.backend.instancing.InstancedRenderDispatcher;
+import com.jozufozu.flywheel.config.BackendType;
 import com.jozufozu.flywheel.core.GameStateRegistry;
+import com.jozufozu.flywheel.core.compile.CullingCompiler;
+import com.jozufozu.flywheel.core.compile.ProgramCompiler;
+import com.jozufozu.flywheel.core.compile.ProgramPrecompiler;
 import com.jozufozu.flywheel.core.crumbling.CrumblingRenderer;
+import com.jozufozu.flywheel.core.model.MeshCache;
 import com.jozufozu.flywheel.core.shader.ProgramSpec;
 import com.jozufozu.flywheel.core.source.Resolver;
 import com.jozufozu.flywheel.core.source.ShaderSources;
@@ -69,6 +74,9 @@ public class Loader implements ResourceManagerReloadListener {
 		GameStateRegistry._clear();
 
 		Resolver.INSTANCE.invalidate();
+		ProgramCompiler.deleteAll();
+		CullingCompiler.deleteAll();
+		MeshCache.pruneStale();
 		ModLoader.get()
 				.postEvent(new GatherContextEvent(firstLoad));
 
@@ -80,6 +88,11 @@ public class Loader implements ResourceManagerReloadListener {
 
 		Backend.LOGGER.info("Loaded all shader sources.");
 
+		BackendType backendType = Backend.getBackendType();
+		if (backendType == BackendType.INSTANCING || backendType == BackendType.INDIRECT) {
+			ProgramPrecompiler.run(programs.values());
+		}
+
 		ClientLevel world = Minecraft.getInstance().level;
 		if (Backend.canUseInstancing(world)) {
 			// TODO: looks like it might be good to have another event here
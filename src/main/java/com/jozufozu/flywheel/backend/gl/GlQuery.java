@@ -0,0 +1,39 @@
+package com.jozufozu.flywheel.backend.gl;
+
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL15C;
+
+public class GlQuery extends GlObject {
+	private final int target;
+
+	public GlQuery(int target) {
+		this.target = target;
+		setHandle(GL15.glGenQueries());
+	}
+
+	public void begin() {
+		GL15.glBeginQuery(target, handle());
+	}
+
+	public void end() {
+		GL15.glEndQuery(target);
+	}
+
+	/**
+	 * Write the result of this query into the buffer bound to {@code GL_QUERY_BUFFER}.
+	 *
+	 * <p>
+	 *     The write happens on the GPU once the result is available, so this does not stall the CPU.
+	 * </p>
+	 *
+	 * @param offset The byte offset into the query buffer to write the 32-bit result to.
+	 */
+	public void writeResultToBuffer(long offset) {
+		GL15C.nglGetQueryObjectuiv(handle(), GL15.GL_QUERY_RESULT, offset);
+	}
+
+	@Override
+	protected void deleteInternal(int handle) {
+		GL15.glDeleteQueries(handle);
+	}
+}
@@ -2,6 +2,7 @@ package com.jozufozu.flywheel.backend.gl;
 
 import org.lwjgl.opengl.GL20;
 
+import com.jozufozu.flywheel.backend.struct.ColumnBuffer;
 import com.jozufozu.flywheel.core.layout.BufferLayout;
 import com.jozufozu.flywheel.core.layout.LayoutItem;
 import com.mojang.blaze3d.platform.GlStateManager;
@@ -29,6 +30,12 @@ public class GlVertexArray extends GlObject {
 		}
 	}
 
+	public void enableArrays(int start, int count) {
+		for (int i = start; i < start + count; i++) {
+			GL20.glEnableVertexAttribArray(i);
+		}
+	}
+
 	public void disableArrays(int count) {
 		for (int i = 0; i < count; i++) {
 			GL20.glDisableVertexAttribArray(i);
@@ -36,7 +43,14 @@ public class GlVertexArray extends GlObject {
 	}
 
 	public void bindAttributes(int startIndex, BufferLayout type) {
-		int offset = 0;
+		bindAttributes(startIndex, type, 0);
+	}
+
+	/**
+	 * @param baseOffset Where in the bound buffer the data starts.
+	 */
+	public void bindAttributes(int startIndex, BufferLayout type, int baseOffset) {
+		int offset = baseOffset;
 		for (LayoutItem spec : type.getLayoutItems()) {
 			spec.vertexAttribPointer(type.getStride(), startIndex, offset);
 			startIndex += spec.attributeCount();
@@ -44,6 +58,18 @@ public class GlVertexArray extends GlObject {
 		}
 	}
 
+	/**
+	 * Bind each column of a structure-of-arrays buffer as its own tightly packed array.
+	 */
+	public void bindColumns(int startIndex, ColumnBuffer columns, int baseOffset) {
+		int column = 0;
+		for (LayoutItem spec : columns.getLayout().getLayoutItems()) {
+			spec.vertexAttribPointer(spec.size(), startIndex, baseOffset + (int) columns.columnOffset(column));
+			startIndex += spec.attributeCount();
+			column++;
+		}
+	}
+
 	protected void deleteInternal(int handle) {
 		GlStateManager._glDeleteVertexArrays(handle);
 	}
@@ -21,9 +21,25 @@ public abstract class GlBuffer extends GlObject {
 	 * @return A buffer that will be persistent if the driver supports it.
 	 */
 	public static GlBuffer requestPersistent(GlBufferType type) {
+		return requestPersistent(type, 1);
+	}
+
+	/**
+	 * Request a Persistent mapped buffer split into a ring of segments.
+	 *
+	 * <p>
+	 *     Each frame is written to the next segment, so the CPU only has to wait for the GPU if it falls a whole ring
+	 *     behind. The classic mapped fallback only ever has one segment.
+	 * </p>
+	 *
+	 * @param type The type of buffer you want.
+	 * @param segments How many frames the buffer should hold.
+	 * @return A buffer that will be persistent if the driver supports it.
+	 */
+	public static GlBuffer requestPersistent(GlBufferType type, int segments) {
 		if (GlCompat.getInstance()
                 .bufferStorageSupported()) {
-			return new PersistentGlBuffer(type);
+			return new PersistentGlBuffer(type, segments);
 		} else {
 			return new MappedGlBuffer(type);
 		}
@@ -54,12 +70,45 @@ public abstract class GlBuffer extends GlObject {
 		return capacity;
 	}
 
+	/**
+	 * @return How many copies of the buffer there are.
+	 */
+	public int getSegmentCount() {
+		return 1;
+	}
+
+	/**
+	 * @return The segment that will be written and drawn from this frame.
+	 */
+	public int getSegment() {
+		return 0;
+	}
+
+	/**
+	 * @return The offset in bytes of the current segment from the start of the buffer.
+	 */
+	public long getSegmentOffset() {
+		return 0;
+	}
+
 	public MappedBuffer getBuffer() {
 		return getBuffer(0, capacity);
 	}
 
 	public abstract MappedBuffer getBuffer(long offset, long length);
 
+	/**
+	 * Map a range that will only be partially written.
+	 *
+	 * <p>
+	 *     Call {@link MappedBuffer#flush(long, long)} on each range you write, only those are guaranteed to reach the
+	 *     GPU.
+	 * </p>
+	 */
+	public MappedBuffer getBufferForFlush(long offset, long length) {
+		return getBuffer(offset, length);
+	}
+
 	/**
 	 * Ensure that the buffer has at least enough room to store size bytes.
 	 *
@@ -76,7 +125,7 @@ public abstract class GlBuffer extends GlObject {
 	}
 
 	/**
-	 * Call this after all draw calls using this buffer are complete.
+	 * Call this after all draw calls using this buffer are complete. Moves on to the next segment.
 	 */
 	public void doneForThisFrame() {
 
@@ -7,6 +7,7 @@ import org.lwjgl.opengl.GL31;
 import org.lwjgl.opengl.GL40;
 import org.lwjgl.opengl.GL42;
 import org.lwjgl.opengl.GL43;
+import org.lwjgl.opengl.GL44;
 
 import com.jozufozu.flywheel.backend.gl.GlStateTracker;
 import com.mojang.blaze3d.platform.GlStateManager;
@@ -25,6 +26,7 @@ public enum GlBufferType {
 	ATOMIC_COUNTER_BUFFER(GL42.GL_ATOMIC_COUNTER_BUFFER),
 	DISPATCH_INDIRECT_BUFFER(GL43.GL_DISPATCH_INDIRECT_BUFFER),
 	SHADER_STORAGE_BUFFER(GL43.GL_SHADER_STORAGE_BUFFER),
+	QUERY_BUFFER(GL44.GL_QUERY_BUFFER),
 	;
 
 	public final int glEnum;
@@ -48,6 +50,7 @@ public enum GlBufferType {
 			case GL42.GL_ATOMIC_COUNTER_BUFFER -> ATOMIC_COUNTER_BUFFER;
 			case GL43.GL_DISPATCH_INDIRECT_BUFFER -> DISPATCH_INDIRECT_BUFFER;
 			case GL43.GL_SHADER_STORAGE_BUFFER -> SHADER_STORAGE_BUFFER;
+			case GL44.GL_QUERY_BUFFER -> QUERY_BUFFER;
 			default -> throw new IllegalArgumentException("Unknown target: " + pTarget);
 		};
 	}
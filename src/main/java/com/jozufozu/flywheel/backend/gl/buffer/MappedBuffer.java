@@ -3,18 +3,42 @@ package com.jozufozu.flywheel.backend.gl.buffer;
 import java.nio.ByteBuffer;
 
 import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL30;
 
 public class MappedBuffer extends VecBuffer implements AutoCloseable {
 
 	protected final long offset;
 	protected final long length;
 	protected final Mappable owner;
+	protected final boolean explicitFlush;
 
 	public MappedBuffer(Mappable owner, ByteBuffer internal, long offset, long length) {
+		this(owner, internal, offset, length, false);
+	}
+
+	public MappedBuffer(Mappable owner, ByteBuffer internal, long offset, long length, boolean explicitFlush) {
 		this.internal = internal;
 		this.owner = owner;
 		this.offset = offset;
 		this.length = length;
+		this.explicitFlush = explicitFlush;
+	}
+
+	/**
+	 * Make the changes to a range of this mapping available to the GPU.
+	 *
+	 * <p>
+	 *     Only does anything for mappings from {@link GlBuffer#getBufferForFlush}, where it must be called for every
+	 *     range written before the buffer is closed.
+	 * </p>
+	 *
+	 * @param start The offset into the whole buffer, not into this mapping.
+	 * @param size The number of bytes written.
+	 */
+	public void flush(long start, long size) {
+		if (!explicitFlush || internal == null) return;
+
+		GL30.glFlushMappedBufferRange(owner.getType().glEnum, start - offset, size);
 	}
 
 	/**
@@ -4,6 +4,7 @@ import java.nio.ByteBuffer;
 
 import org.lwjgl.opengl.GL15;
 import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL31;
 
 import com.jozufozu.flywheel.backend.gl.error.GlError;
 import com.jozufozu.flywheel.backend.gl.error.GlException;
@@ -25,6 +26,40 @@ public class MappedGlBuffer extends GlBuffer implements Mappable {
 		GL15.glBufferData(type.glEnum, size, usage.glEnum);
 	}
 
+	/**
+	 * Like {@link #ensureCapacity}, but the current contents survive the reallocation. The buffer keeps its name, so
+	 * VAOs that reference it stay valid. Assumes this buffer is bound.
+	 *
+	 * @return true if the buffer grew.
+	 */
+	public boolean ensureCapacityPreserving(long size) {
+		long oldCapacity = capacity;
+
+		if (size <= oldCapacity) {
+			return false;
+		}
+
+		if (oldCapacity == 0) {
+			return ensureCapacity(size);
+		}
+
+		// Stash the old contents in a scratch buffer, all on the GPU.
+		int scratch = GL15.glGenBuffers();
+		GlBufferType.COPY_WRITE_BUFFER.bind(scratch);
+		GL15.glBufferData(GlBufferType.COPY_WRITE_BUFFER.glEnum, oldCapacity, GL15.GL_STREAM_COPY);
+		GL31.glCopyBufferSubData(type.glEnum, GlBufferType.COPY_WRITE_BUFFER.glEnum, 0, 0, oldCapacity);
+
+		ensureCapacity(size);
+
+		GlBufferType.COPY_READ_BUFFER.bind(scratch);
+		GL31.glCopyBufferSubData(GlBufferType.COPY_READ_BUFFER.glEnum, type.glEnum, 0, 0, oldCapacity);
+
+		GlBufferType.COPY_READ_BUFFER.unbind();
+		GlBufferType.COPY_WRITE_BUFFER.unbind();
+		GL15.glDeleteBuffers(scratch);
+		return true;
+	}
+
 	public void upload(ByteBuffer directBuffer) {
 		GL15.glBufferData(type.glEnum, directBuffer, usage.glEnum);
 	}
@@ -39,6 +74,17 @@ public class MappedGlBuffer extends GlBuffer implements Mappable {
 		return new MappedBuffer(this, byteBuffer, offset, length);
 	}
 
+	@Override
+	public MappedBuffer getBufferForFlush(long offset, long length) {
+		ByteBuffer byteBuffer = GL30.glMapBufferRange(type.glEnum, offset, length, GL30.GL_MAP_WRITE_BIT | GL30.GL_MAP_FLUSH_EXPLICIT_BIT);
+
+		if (byteBuffer == null) {
+			throw new GlException(GlError.poll(), "Could not map buffer");
+		}
+
+		return new MappedBuffer(this, byteBuffer, offset, length, true);
+	}
+
 	@Override
 	public GlBufferType getType() {
 		return type;
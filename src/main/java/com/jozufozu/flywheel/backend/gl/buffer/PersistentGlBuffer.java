@@ -7,54 +7,88 @@ import static org.lwjgl.opengl.GL44.GL_MAP_PERSISTENT_BIT;
 import java.nio.ByteBuffer;
 
 import org.lwjgl.opengl.GL30;
+import org.lwjgl.system.MemoryUtil;
 
 import com.jozufozu.flywheel.backend.gl.GlFence;
 import com.jozufozu.flywheel.backend.gl.error.GlError;
 import com.jozufozu.flywheel.backend.gl.error.GlException;
 import com.jozufozu.flywheel.backend.gl.versioned.GlCompat;
 
+/**
+ * A persistently mapped buffer, split into a ring of equally sized segments.
+ *
+ * <p>
+ *     Each segment is guarded by its own fence. Writes go to the current segment, and {@link #doneForThisFrame()}
+ *     moves on to the next one, so the CPU only waits on the GPU when it gets a whole ring ahead.
+ * </p>
+ */
 public class PersistentGlBuffer extends GlBuffer implements Mappable {
 
-	private MappedBuffer buffer;
+	/**
+	 * Segments start on this alignment so they can be used as attribute offsets.
+	 */
+	private static final int SEGMENT_ALIGNMENT = 256;
+
+	private MappedBuffer[] segments;
 	int flags;
 
 	long size;
-	GlFence fence;
+	long segmentStride;
+	private final GlFence[] fences;
+	private int current;
 
 	public PersistentGlBuffer(GlBufferType type) {
+		this(type, 1);
+	}
+
+	public PersistentGlBuffer(GlBufferType type, int segmentCount) {
 		super(type);
 
 		flags = GL_MAP_WRITE_BIT | GL_MAP_PERSISTENT_BIT | GL_MAP_COHERENT_BIT;
-		fence = new GlFence();
+		fences = new GlFence[segmentCount];
+		for (int i = 0; i < segmentCount; i++) {
+			fences[i] = new GlFence();
+		}
 	}
 
 	@Override
 	public void doneForThisFrame() {
-		fence.post();
+		fences[current].post();
+		current = (current + 1) % fences.length;
 	}
 
 	@Override
 	protected void alloc(long size) {
 		this.size = size;
+		this.segmentStride = (size + SEGMENT_ALIGNMENT - 1) & -SEGMENT_ALIGNMENT;
 
-		if (buffer != null) {
+		if (segments != null) {
 			deleteInternal(handle());
 			_create();
 
 			bind();
 		}
 
-		fence.clear();
+		for (GlFence fence : fences) {
+			fence.clear();
+		}
+		current = 0;
 
-        GlCompat.getInstance().bufferStorage.bufferStorage(type, size, flags);
+		long total = segmentStride * fences.length;
 
-		ByteBuffer byteBuffer = GL30.glMapBufferRange(type.glEnum, 0, size, flags);
+		GlCompat.getInstance().bufferStorage.bufferStorage(type, total, flags);
+
+		ByteBuffer byteBuffer = GL30.glMapBufferRange(type.glEnum, 0, total, flags);
 
 		if (byteBuffer == null) {
 			throw new GlException(GlError.poll(), "Could not map buffer");
 		}
 
-		buffer = new MappedBuffer(this, byteBuffer, 0, size);
+		segments = new MappedBuffer[fences.length];
+		for (int i = 0; i < fences.length; i++) {
+			ByteBuffer segment = MemoryUtil.memSlice(byteBuffer, (int) (i * segmentStride), (int) size);
+			segments[i] = new MappedBuffer(this, segment, 0, size);
+		}
 	}
 
 	@Override
@@ -65,13 +99,30 @@ public class PersistentGlBuffer extends GlBuffer implements Mappable {
 	@Override
 	public MappedBuffer getBuffer(long offset, long length) {
 
-		fence.waitSync();
+		fences[current].waitSync();
+
+		MappedBuffer buffer = segments[current];
 
 		buffer.position((int) offset);
 
 		return buffer;
 	}
 
+	@Override
+	public int getSegmentCount() {
+		return fences.length;
+	}
+
+	@Override
+	public int getSegment() {
+		return current;
+	}
+
+	@Override
+	public long getSegmentOffset() {
+		return current * segmentStride;
+	}
+
 	@Override
 	public GlBufferType getType() {
 		return type;
@@ -2,39 +2,93 @@ package com.jozufozu.flywheel.backend.gl.shader;
 
 import static org.lwjgl.opengl.GL20.glDeleteProgram;
 import static org.lwjgl.opengl.GL20.glGetUniformLocation;
+import static org.lwjgl.opengl.GL20.glUniform1f;
 import static org.lwjgl.opengl.GL20.glUniform1i;
+import static org.lwjgl.opengl.GL20.glUniform2f;
+import static org.lwjgl.opengl.GL20.glUniform3f;
+import static org.lwjgl.opengl.GL20.glUniform4f;
+import static org.lwjgl.opengl.GL20.glUniform4fv;
 import static org.lwjgl.opengl.GL20.glUniformMatrix4fv;
+import static org.lwjgl.opengl.GL41.glProgramUniform1f;
+import static org.lwjgl.opengl.GL41.glProgramUniform1i;
+import static org.lwjgl.opengl.GL41.glProgramUniform2f;
+import static org.lwjgl.opengl.GL41.glProgramUniform3f;
+import static org.lwjgl.opengl.GL41.glProgramUniform4f;
+import static org.lwjgl.opengl.GL41.glProgramUniform4fv;
+import static org.lwjgl.opengl.GL41.glProgramUniformMatrix4fv;
 
 import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.List;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 import org.lwjgl.system.MemoryStack;
 
 import com.jozufozu.flywheel.backend.Backend;
 import com.jozufozu.flywheel.backend.gl.GlObject;
+import com.jozufozu.flywheel.backend.gl.versioned.GlCompat;
 import com.mojang.blaze3d.shaders.ProgramManager;
 import com.mojang.math.Matrix4f;
 
 import net.minecraft.resources.ResourceLocation;
 
+/**
+ * A linked program, or a {@link GlProgramPipeline pipeline} of separately linked stages.
+ *
+ * <p>
+ *     Set uniforms through the {@code setUniform} methods rather than calling {@code glUniform} directly. For
+ *     pipelines, uniform locations are indices into a table of per stage locations, and the values are written to
+ *     every stage that uses the uniform.
+ * </p>
+ */
 public abstract class GlProgram extends GlObject {
 	private static final FloatBuffer floatBuffer = MemoryStack.stackGet()
 			.mallocFloat(16);
 
 	public final ResourceLocation name;
 
+	@Nullable
+	private final GlProgramPipeline pipeline;
+
+	/**
+	 * For pipelines, the location of each uniform in each stage.
+	 */
+	private final List<int[]> stageLocations = new ArrayList<>();
+
 	protected GlProgram(ResourceLocation name, int handle) {
+		this(name, handle, null);
+	}
+
+	/**
+	 * Create a program around a pipeline of separable stages. The program owns the pipeline from now on.
+	 */
+	protected GlProgram(ResourceLocation name, GlProgramPipeline pipeline) {
+		this(name, pipeline.handle(), pipeline);
+	}
+
+	private GlProgram(ResourceLocation name, int handle, @Nullable GlProgramPipeline pipeline) {
 		this.name = name;
+		this.pipeline = pipeline;
 		setHandle(handle);
 	}
 
 	public void bind() {
-		ProgramManager.glUseProgram(handle());
+		ProgramManager.glUseProgram(pipeline == null ? handle() : 0);
+
+		if (pipeline != null) {
+			pipeline.bind();
+		}
 	}
 
 	public static void unbind() {
 		ProgramManager.glUseProgram(0);
+
+		if (GlCompat.getInstance()
+				.separateShaderObjectsSupported()) {
+			GlProgramPipeline.unbind();
+		}
 	}
 
 	/**
@@ -44,7 +98,13 @@ public abstract class GlProgram extends GlObject {
 	 * @return The uniform's index
 	 */
 	public int getUniformLocation(String uniform) {
-		int index = glGetUniformLocation(this.handle(), uniform);
+		int index;
+
+		if (pipeline == null) {
+			index = glGetUniformLocation(this.handle(), uniform);
+		} else {
+			index = getPipelineUniformLocation(uniform);
+		}
 
 		if (index < 0) {
 			Backend.LOGGER.debug("No active uniform '{}' exists in program '{}'. Could be unused.", uniform, this.name);
@@ -53,6 +113,24 @@ public abstract class GlProgram extends GlObject {
 		return index;
 	}
 
+	private int getPipelineUniformLocation(String uniform) {
+		GlSeparableProgram[] stages = pipeline.getStages();
+		int[] locations = new int[stages.length];
+
+		boolean found = false;
+		for (int i = 0; i < stages.length; i++) {
+			locations[i] = glGetUniformLocation(stages[i].handle(), uniform);
+			found |= locations[i] >= 0;
+		}
+
+		if (!found) {
+			return -1;
+		}
+
+		stageLocations.add(locations);
+		return stageLocations.size() - 1;
+	}
+
 	/**
 	 * Binds a sampler uniform to the given texture unit.
 	 *
@@ -65,12 +143,87 @@ public abstract class GlProgram extends GlObject {
 		int samplerUniform = getUniformLocation(name);
 
 		if (samplerUniform >= 0) {
-			glUniform1i(samplerUniform, binding);
+			setUniform1i(samplerUniform, binding);
 		}
 
 		return samplerUniform;
 	}
 
+	public void setUniform1i(int uniform, int x) {
+		if (pipeline == null) {
+			glUniform1i(uniform, x);
+		} else {
+			forEachStage(uniform, (program, location) -> glProgramUniform1i(program, location, x));
+		}
+	}
+
+	public void setUniform1f(int uniform, float x) {
+		if (pipeline == null) {
+			glUniform1f(uniform, x);
+		} else {
+			forEachStage(uniform, (program, location) -> glProgramUniform1f(program, location, x));
+		}
+	}
+
+	public void setUniform2f(int uniform, float x, float y) {
+		if (pipeline == null) {
+			glUniform2f(uniform, x, y);
+		} else {
+			forEachStage(uniform, (program, location) -> glProgramUniform2f(program, location, x, y));
+		}
+	}
+
+	public void setUniform3f(int uniform, float x, float y, float z) {
+		if (pipeline == null) {
+			glUniform3f(uniform, x, y, z);
+		} else {
+			forEachStage(uniform, (program, location) -> glProgramUniform3f(program, location, x, y, z));
+		}
+	}
+
+	public void setUniform4f(int uniform, float x, float y, float z, float w) {
+		if (pipeline == null) {
+			glUniform4f(uniform, x, y, z, w);
+		} else {
+			forEachStage(uniform, (program, location) -> glProgramUniform4f(program, location, x, y, z, w));
+		}
+	}
+
+	public void setUniform4fv(int uniform, float[] values) {
+		if (pipeline == null) {
+			glUniform4fv(uniform, values);
+		} else {
+			forEachStage(uniform, (program, location) -> glProgramUniform4fv(program, location, values));
+		}
+	}
+
+	public void setUniformMatrix4f(int uniform, Matrix4f mat) {
+		if (pipeline == null) {
+			uploadMatrixUniform(uniform, mat);
+		} else {
+			mat.store(floatBuffer);
+			forEachStage(uniform, (program, location) -> glProgramUniformMatrix4fv(program, location, false, floatBuffer));
+		}
+	}
+
+	/**
+	 * Set a uniform in every stage of the pipeline that uses it.
+	 *
+	 * @param uniform A uniform index from {@link #getUniformLocation}.
+	 */
+	private void forEachStage(int uniform, StageUniformSetter setter) {
+		if (uniform < 0) return;
+
+		int[] locations = stageLocations.get(uniform);
+		GlSeparableProgram[] stages = pipeline.getStages();
+		for (int i = 0; i < stages.length; i++) {
+			if (locations[i] >= 0) setter.set(stages[i].handle(), locations[i]);
+		}
+	}
+
+	/**
+	 * Only works for programs that aren't pipelines, prefer {@link #setUniformMatrix4f}.
+	 */
 	protected static void uploadMatrixUniform(int uniform, Matrix4f mat) {
 		mat.store(floatBuffer);
 		glUniformMatrix4fv(uniform, false, floatBuffer);
@@ -78,7 +231,12 @@ public abstract class GlProgram extends GlObject {
 
 	@Override
 	protected void deleteInternal(int handle) {
-		glDeleteProgram(handle);
+		if (pipeline != null) {
+			// the stages are owned by whoever compiled them
+			pipeline.delete();
+		} else {
+			glDeleteProgram(handle);
+		}
 	}
 
 	@Override
@@ -86,6 +244,11 @@ public abstract class GlProgram extends GlObject {
 		return "program " + name;
 	}
 
+	@FunctionalInterface
+	private interface StageUniformSetter {
+		void set(int program, int location);
+	}
+
 	/**
 	 * A factory interface to create a {@link GlProgram}.
 	 */
@@ -94,4 +257,13 @@ public abstract class GlProgram extends GlObject {
 		@Nonnull
 		P create(ResourceLocation name, int handle);
 	}
+
+	/**
+	 * A factory interface to create a {@link GlProgram} around a {@link GlProgramPipeline pipeline}.
+	 */
+	public interface PipelineFactory<P extends GlProgram> {
+
+		@Nonnull
+		P create(ResourceLocation name, GlProgramPipeline pipeline);
+	}
 }
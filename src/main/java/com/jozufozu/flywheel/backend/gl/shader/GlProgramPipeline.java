@@ -0,0 +1,57 @@
+package com.jozufozu.flywheel.backend.gl.shader;
+
+import org.lwjgl.opengl.GL41;
+
+import com.jozufozu.flywheel.backend.gl.GlObject;
+
+/**
+ * Combines independently linked {@link GlSeparableProgram stages} into something that can be drawn with.
+ *
+ * <p>
+ *     The pipeline doesn't own its stages, they are usually shared with many other pipelines.
+ * </p>
+ */
+public class GlProgramPipeline extends GlObject {
+
+	private final GlSeparableProgram[] stages;
+
+	public GlProgramPipeline(GlSeparableProgram... stages) {
+		this.stages = stages;
+
+		int handle = GL41.glGenProgramPipelines();
+
+		for (GlSeparableProgram stage : stages) {
+			GL41.glUseProgramStages(handle, getStageBit(stage.type), stage.handle());
+		}
+
+		setHandle(handle);
+	}
+
+	public GlSeparableProgram[] getStages() {
+		return stages;
+	}
+
+	/**
+	 * Bind this pipeline. A program bound with {@code glUseProgram} takes precedence, so that must be cleared too.
+	 */
+	public void bind() {
+		GL41.glBindProgramPipeline(handle());
+	}
+
+	public static void unbind() {
+		GL41.glBindProgramPipeline(0);
+	}
+
+	@Override
+	protected void deleteInternal(int handle) {
+		GL41.glDeleteProgramPipelines(handle);
+	}
+
+	private static int getStageBit(ShaderType type) {
+		return switch (type) {
+			case VERTEX -> GL41.GL_VERTEX_SHADER_BIT;
+			case FRAGMENT -> GL41.GL_FRAGMENT_SHADER_BIT;
+			case GEOMETRY -> GL41.GL_GEOMETRY_SHADER_BIT;
+		};
+	}
+}
@@ -0,0 +1,52 @@
+package com.jozufozu.flywheel.backend.gl.shader;
+
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL20;
+import org.lwjgl.opengl.GL41;
+
+import com.jozufozu.flywheel.backend.Backend;
+import com.jozufozu.flywheel.backend.gl.GlObject;
+import com.jozufozu.flywheel.core.source.ShaderLoadingException;
+
+import net.minecraft.resources.ResourceLocation;
+
+/**
+ * A program with a single shader stage, linked on its own so it can be combined with any other stage in a
+ * {@link GlProgramPipeline}.
+ */
+public class GlSeparableProgram extends GlObject {
+
+	public final ResourceLocation name;
+	public final ShaderType type;
+
+	public GlSeparableProgram(GlShader shader) {
+		this.name = shader.name;
+		this.type = shader.type;
+
+		shader.checkCompiled();
+
+		int handle = GL20.glCreateProgram();
+		GL41.glProgramParameteri(handle, GL41.GL_PROGRAM_SEPARABLE, GL11.GL_TRUE);
+		GL20.glAttachShader(handle, shader.handle());
+		GL20.glLinkProgram(handle);
+		GL20.glDetachShader(handle, shader.handle());
+
+		String log = GL20.glGetProgramInfoLog(handle);
+
+		if (!log.isEmpty()) {
+			Backend.LOGGER.debug("Separable program link log for " + name + ": " + log);
+		}
+
+		if (GL20.glGetProgrami(handle, GL20.GL_LINK_STATUS) != GL11.GL_TRUE) {
+			GL20.glDeleteProgram(handle);
+			throw new ShaderLoadingException("Could not link separable " + type.name + " stage " + name + ". See log for details.");
+		}
+
+		setHandle(handle);
+	}
+
+	@Override
+	protected void deleteInternal(int handle) {
+		GL20.glDeleteProgram(handle);
+	}
+}
@@ -13,6 +13,8 @@ public class GlShader extends GlObject {
 	public final ResourceLocation name;
 	public final ShaderType type;
 
+	private boolean compiled;
+
 	public GlShader(ResourceLocation name, ShaderType type, String source) {
 		this.name = name;
 		this.type = type;
@@ -21,6 +23,22 @@ public class GlShader extends GlObject {
 		GlCompat.safeShaderSource(handle, source);
 		GL20.glCompileShader(handle);
 
+		setHandle(handle);
+	}
+
+	/**
+	 * Wait for the shader to finish compiling, and throw if it failed.
+	 *
+	 * <p>
+	 *     The status is only queried here rather than right after compiling, so drivers that compile in the background
+	 *     can work on many shaders at once.
+	 * </p>
+	 */
+	public void checkCompiled() {
+		if (compiled) return;
+
+		int handle = handle();
+
 		String log = GL20.glGetShaderInfoLog(handle);
 
 //		if (!log.isEmpty()) {
@@ -31,7 +49,7 @@ public class GlShader extends GlObject {
 			throw new ShaderLoadingException("Could not compile " + name + ". See log for details.");
 		}
 
-		setHandle(handle);
+		compiled = true;
 	}
 
 	@Override
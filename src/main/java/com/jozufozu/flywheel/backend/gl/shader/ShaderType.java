@@ -1,10 +1,12 @@
 package com.jozufozu.flywheel.backend.gl.shader;
 
 import org.lwjgl.opengl.GL20;
+import org.lwjgl.opengl.GL32;
 
 public enum ShaderType {
 	VERTEX("vertex", "VERTEX_SHADER", GL20.GL_VERTEX_SHADER),
 	FRAGMENT("fragment", "FRAGMENT_SHADER", GL20.GL_FRAGMENT_SHADER),
+	GEOMETRY("geometry", "GEOMETRY_SHADER", GL32.GL_GEOMETRY_SHADER),
 	;
 
 	public final String name;
@@ -4,9 +4,12 @@ import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 import org.lwjgl.PointerBuffer;
+import org.lwjgl.opengl.ARBParallelShaderCompile;
 import org.lwjgl.opengl.GL;
 import org.lwjgl.opengl.GL20C;
+import org.lwjgl.opengl.GL41C;
 import org.lwjgl.opengl.GLCapabilities;
+import org.lwjgl.opengl.KHRParallelShaderCompile;
 import org.lwjgl.system.MemoryStack;
 import org.lwjgl.system.MemoryUtil;
 
@@ -32,11 +35,26 @@ public class GlCompat {
 	public final InstancedArrays instancedArrays;
 	public final BufferStorage bufferStorage;
 	public final boolean amd;
+	public final boolean drawIndirect;
+	public final boolean queryBufferObject;
+	public final boolean multiDrawIndirect;
+	public final boolean programBinary;
+	public final boolean khrParallelShaderCompile;
+	public final boolean arbParallelShaderCompile;
+	public final boolean separateShaderObjects;
 
 	private GlCompat() {
 		GLCapabilities caps = GL.createCapabilities();
 		instancedArrays = getLatest(InstancedArrays.class, caps);
 		bufferStorage = getLatest(BufferStorage.class, caps);
+		drawIndirect = caps.OpenGL40 || caps.GL_ARB_draw_indirect;
+		queryBufferObject = caps.OpenGL44 || caps.GL_ARB_query_buffer_object;
+		multiDrawIndirect = (caps.OpenGL43 || caps.GL_ARB_multi_draw_indirect) && (caps.OpenGL42 || caps.GL_ARB_base_instance);
+		// some drivers expose the extension but don't support a single binary format
+		programBinary = (caps.OpenGL41 || caps.GL_ARB_get_program_binary) && GL20C.glGetInteger(GL41C.GL_NUM_PROGRAM_BINARY_FORMATS) > 0;
+		khrParallelShaderCompile = caps.GL_KHR_parallel_shader_compile;
+		arbParallelShaderCompile = caps.GL_ARB_parallel_shader_compile;
+		separateShaderObjects = caps.OpenGL41 || caps.GL_ARB_separate_shader_objects;
 
 		if (Util.getPlatform() == Util.OS.WINDOWS) {
 			String vendor = GL20C.glGetString(GL20C.GL_VENDOR);
@@ -59,6 +77,52 @@ public class GlCompat {
 		return bufferStorage != BufferStorage.UNSUPPORTED;
 	}
 
+	/**
+	 * Multi-draws need a base instance in each command to find their slice of the shared instance buffer.
+	 *
+	 * @return true if multi-draw-indirect and base instances are available.
+	 */
+	public boolean multiDrawIndirectSupported() {
+		return instancedArraysSupported() && multiDrawIndirect;
+	}
+
+	/**
+	 * GPU culling writes the number of visible instances straight into an indirect draw command, so the CPU never has
+	 * to wait on the result.
+	 *
+	 * @return true if both indirect draws and query buffer objects are available.
+	 */
+	public boolean gpuCullingSupported() {
+		return drawIndirect && queryBufferObject;
+	}
+
+	/**
+	 * @return true if linked programs can be saved and loaded as binaries.
+	 */
+	public boolean programBinarySupported() {
+		return programBinary;
+	}
+
+	public boolean separateShaderObjectsSupported() {
+		return separateShaderObjects;
+	}
+
+	public boolean parallelShaderCompileSupported() {
+		return khrParallelShaderCompile || arbParallelShaderCompile;
+	}
+
+	/**
+	 * Let the driver compile shaders on as many threads as it likes. Does nothing if parallel compilation is
+	 * unsupported.
+	 */
+	public void enableParallelShaderCompile() {
+		if (khrParallelShaderCompile) {
+			KHRParallelShaderCompile.glMaxShaderCompilerThreadsKHR(0xFFFFFFFF);
+		} else if (arbParallelShaderCompile) {
+			ARBParallelShaderCompile.glMaxShaderCompilerThreadsARB(0xFFFFFFFF);
+		}
+	}
+
 	/**
 	 * Get the most compatible version of a specific OpenGL feature by iterating over enum constants in order.
 	 *
@@ -10,9 +10,11 @@ import com.jozufozu.flywheel.api.instance.TickableInstance;
 import com.jozufozu.flywheel.backend.instancing.blockentity.BlockEntityInstanceManager;
 import com.jozufozu.flywheel.core.materials.FlatLit;
 import com.jozufozu.flywheel.light.LightListener;
+import com.jozufozu.flywheel.light.WorldLight;
 import com.jozufozu.flywheel.util.box.ImmutableBox;
 
 import net.minecraft.core.BlockPos;
+import net.minecraft.core.Vec3i;
 import net.minecraft.world.level.Level;
 import net.minecraft.world.level.LightLayer;
 
@@ -85,6 +87,25 @@ public abstract class AbstractInstance implements Instance, LightListener {
 		return false;
 	}
 
+	/**
+	 * Called after the origin coordinate moved. The instance data was already moved along with it, so only positions
+	 * relative to the origin kept by the instance itself need to be updated here.
+	 *
+	 * @param offset How far the origin moved.
+	 */
+	public void onOriginMoved(Vec3i offset) {
+	}
+
+	/**
+	 * The region this instance draws in. While every chunk section it touches is hidden,
+	 * {@link DynamicInstance#beginFrame()} is skipped, see {@link SectionVisibility}.
+	 *
+	 * @return The light volume by default.
+	 */
+	public ImmutableBox getRenderVolume() {
+		return getVolume();
+	}
+
 	@Override
 	public boolean isListenerInvalid() {
 		return removed;
@@ -92,6 +113,9 @@ public abstract class AbstractInstance implements Instance, LightListener {
 
 	@Override
 	public void onLightUpdate(LightLayer type, ImmutableBox changed) {
+		// the shaders read light from the world light directly
+		if (WorldLight.covers(getVolume())) return;
+
 		updateLight();
 	}
 
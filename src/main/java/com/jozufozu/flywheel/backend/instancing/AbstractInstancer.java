@@ -1,24 +1,65 @@
 package com.jozufozu.flywheel.backend.instancing;
 
 import java.util.ArrayList;
-import java.util.BitSet;
 import java.util.function.Supplier;
 
+import javax.annotation.Nullable;
+
 import com.jozufozu.flywheel.api.InstanceData;
 import com.jozufozu.flywheel.api.Instancer;
+import com.jozufozu.flywheel.api.struct.Columnar;
+import com.jozufozu.flywheel.api.struct.StructType;
+import com.jozufozu.flywheel.backend.struct.ColumnBuffer;
+import com.jozufozu.flywheel.core.materials.ColumnData;
+import com.jozufozu.flywheel.core.model.AsyncModel;
 import com.jozufozu.flywheel.core.model.Model;
 
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import net.minecraft.core.Vec3i;
+
 public abstract class AbstractInstancer<D extends InstanceData> implements Instancer<D> {
 
 	protected final Supplier<D> factory;
 	protected final Model modelData;
 	protected final ArrayList<D> data = new ArrayList<>();
 
+	/**
+	 * Off-heap storage for {@link Columnar} structs, parallel to {@link #data}. Null for regular structs.
+	 */
+	@Nullable
+	protected final ColumnBuffer columns;
+
+	/**
+	 * A single throwaway slot that removed handles are pointed at, so stray writes can't corrupt live instances.
+	 */
+	@Nullable
+	private final ColumnBuffer graveyard;
+
+	/**
+	 * Indices reported through {@link #notifyRemoval(int)} since the last call to {@link #removeDeletedInstances()}.
+	 */
+	private final IntArrayList removals = new IntArrayList();
+
 	protected boolean anyToRemove;
 
-	protected AbstractInstancer(Supplier<D> factory, Model modelData) {
-		this.factory = factory;
+	/**
+	 * Set when something was removed without telling us where.
+	 */
+	private boolean anyToRescanRemovals;
+
+	protected AbstractInstancer(StructType<D> type, Model modelData) {
+		this.factory = type::create;
 		this.modelData = modelData;
+
+		if (type instanceof Columnar<?>) {
+			columns = new ColumnBuffer(type.getLayout());
+			graveyard = new ColumnBuffer(type.getLayout());
+			graveyard.allocate();
+		} else {
+			columns = null;
+			graveyard = null;
+		}
 	}
 
 	/**
@@ -41,23 +82,69 @@ public abstract class AbstractInstancer<D extends InstanceData> implements Insta
 
 		// Changing the owner reference will delete it in the other instancer
 		inOther.getOwner()
-				.notifyRemoval();
+				.notifyRemoval(inOther.getIndex());
 		_add(inOther);
 	}
 
 	@Override
 	public void notifyRemoval() {
 		anyToRemove = true;
+		anyToRescanRemovals = true;
+	}
+
+	@Override
+	public void notifyRemoval(int index) {
+		synchronized (removals) {
+			removals.add(index);
+		}
+		anyToRemove = true;
+	}
+
+	/**
+	 * Move all instance data along with the origin coordinate.
+	 *
+	 * @return false if some data couldn't be moved, in which case the instancer should be {@link #clear cleared}.
+	 */
+	public boolean shiftOrigin(Vec3i offset) {
+		for (D element : data) {
+			if (!element.isRemoved() && !element.shiftOrigin(offset)) {
+				return false;
+			}
+		}
+		return true;
 	}
 
 	/**
 	 * Clear all instance data without freeing resources.
 	 */
 	public void clear() {
+		if (columns != null) {
+			for (D element : data) {
+				retire(element);
+			}
+			columns.clear();
+		}
 		data.clear();
+		synchronized (removals) {
+			removals.clear();
+		}
 		anyToRemove = true;
 	}
 
+	/**
+	 * @return false while the model is still being built in the background.
+	 */
+	public boolean isModelReady() {
+		return !(modelData instanceof AsyncModel async) || async.isReady();
+	}
+
+	/**
+	 * @return true if the model failed to build. The instancer will never draw anything.
+	 */
+	public boolean isModelFailed() {
+		return modelData instanceof AsyncModel async && async.isFailed();
+	}
+
 	public int getModelVertexCount() {
 		return modelData.vertexCount();
 	}
@@ -70,51 +157,136 @@ public abstract class AbstractInstancer<D extends InstanceData> implements Insta
 		return getModelVertexCount() * getInstanceCount();
 	}
 
+	/**
+	 * Remove deleted and stolen instances.
+	 *
+	 * <p>
+	 *     Each hole is filled with the last instance, so the work and the re-upload are proportional to the number of
+	 *     removed instances rather than the number of survivors. Instances don't keep their order, but each one always
+	 *     knows its current {@link InstanceData#getIndex() index}.
+	 * </p>
+	 */
 	protected void removeDeletedInstances() {
-		// Figure out which elements are to be removed.
-		final int oldSize = this.data.size();
-		int removeCount = 0;
-		final BitSet removeSet = new BitSet(oldSize);
-		for (int i = 0; i < oldSize; i++) {
-			final D element = this.data.get(i);
-			if (element.isRemoved() || element.getOwner() != this) {
-				removeSet.set(i);
-				removeCount++;
+		int[] indices;
+		synchronized (removals) {
+			if (anyToRescanRemovals) {
+				removals.clear();
+				for (int i = 0; i < data.size(); i++) {
+					if (isDead(data.get(i))) {
+						removals.add(i);
+					}
+				}
+				anyToRescanRemovals = false;
 			}
+
+			indices = removals.toIntArray();
+			removals.clear();
 		}
 
-		final int newSize = oldSize - removeCount;
+		// Work from the back so everything past the current hole has already been dealt with.
+		IntArrays.quickSort(indices);
+
+		final int oldSize = data.size();
+		int size = oldSize;
+
+		for (int r = indices.length - 1; r >= 0; r--) {
+			final int i = indices[r];
 
-		// shift surviving elements left over the spaces left by removed elements
-		for (int i = 0, j = 0; (i < oldSize) && (j < newSize); i++, j++) {
-			i = removeSet.nextClearBit(i);
+			// reported twice
+			if (i >= size || !isDead(data.get(i))) continue;
 
-			if (i != j) {
-				D element = data.get(i);
-				data.set(j, element);
-				// Marking the data dirty marks us dirty too.
-				// Perhaps there will be some wasted cycles, but the JVM should be able to
-				// generate code that moves the repeated segment out of the loop.
-				element.markDirty();
+			retire(data.get(i));
+			size--;
+
+			// in case something was removed without telling us
+			while (size > i && isDead(data.get(size))) {
+				retire(data.get(size));
+				size--;
+			}
+
+			if (i != size) {
+				D last = data.get(size);
+				data.set(i, last);
+				last.setIndex(i);
+
+				if (columns != null) {
+					columns.copy(size, i);
+					((ColumnData) last).setSlot(columns, i);
+				}
+
+				last.markDirty();
 			}
 		}
 
-		data.subList(newSize, oldSize)
+		data.subList(size, oldSize)
 				.clear();
 
+		if (columns != null) {
+			columns.truncate(size);
+		}
+	}
+
+	private boolean isDead(D element) {
+		return element.isRemoved() || element.getOwner() != this;
+	}
+
+	private void retire(D element) {
+		// stolen instances already live in another instancer's columns
+		if (columns != null && element.getOwner() == this) {
+			((ColumnData) element).setSlot(graveyard, 0);
+		}
+	}
+
+	/**
+	 * Let the off-heap storage grow into one block, see {@link ColumnBuffer#flushGrowth()}. Must be called at a sync
+	 * point, when no tasks can be writing to instances, and before the storage is uploaded.
+	 */
+	protected void flushColumnGrowth() {
+		if (columns != null) {
+			columns.flushGrowth();
+		}
+	}
+
+	/**
+	 * Free the off-heap storage, if any.
+	 */
+	protected void freeColumns() {
+		if (columns != null) {
+			columns.delete();
+			graveyard.delete();
+		}
 	}
 
 	private D _add(D instanceData) {
 		instanceData.setOwner(this);
 
-		instanceData.markDirty();
 		synchronized (data) {
+			if (columns != null) {
+				allocateSlot(columns, (ColumnData) instanceData);
+			}
+			instanceData.setIndex(data.size());
 			data.add(instanceData);
 		}
 
+		instanceData.markDirty();
+
 		return instanceData;
 	}
 
+	private static void allocateSlot(ColumnBuffer columns, ColumnData handle) {
+		int index = columns.allocate();
+		ColumnBuffer previous = handle.getColumns();
+
+		if (previous != null) {
+			// carry the data over from the instancer we stole this from
+			columns.copyFrom(previous, handle.getSlot(), index);
+			handle.setSlot(columns, index);
+		} else {
+			handle.setSlot(columns, index);
+			handle.writeDefaults();
+		}
+	}
+
 	@Override
 	public String toString() {
 		return "Instancer[" + modelData + ']';
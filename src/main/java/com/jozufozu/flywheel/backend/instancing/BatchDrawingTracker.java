@@ -68,16 +68,8 @@ public class BatchDrawingTracker {
 	}
 
 	private void _draw(RenderType renderType) {
-		DrawBuffer drawBuffer = RenderTypeExtension.getDrawBuffer(renderType);
-
-		BufferBuilderExtension scratch = (BufferBuilderExtension) this.scratch;
-		if (drawBuffer.hasVertices()) {
-			drawBuffer.inject(scratch);
-
-			renderType.end(this.scratch, 0, 0, 0);
-
-			drawBuffer.reset();
-		}
+		RenderTypeExtension.getDrawBuffer(renderType)
+				.draw(scratch);
 	}
 
 }
@@ -4,27 +4,63 @@ import java.nio.ByteBuffer;
 
 import org.jetbrains.annotations.ApiStatus;
 
+import com.jozufozu.flywheel.backend.ShadersModHandler;
+import com.jozufozu.flywheel.backend.gl.GlStateTracker;
+import com.jozufozu.flywheel.backend.gl.GlVertexArray;
+import com.jozufozu.flywheel.backend.gl.buffer.GlBuffer;
+import com.jozufozu.flywheel.backend.gl.buffer.GlBufferType;
+import com.jozufozu.flywheel.backend.gl.buffer.MappedBuffer;
 import com.jozufozu.flywheel.backend.model.BufferBuilderExtension;
 import com.jozufozu.flywheel.backend.model.DirectVertexConsumer;
+import com.mojang.blaze3d.platform.GlStateManager;
 import com.mojang.blaze3d.platform.MemoryTracker;
+import com.mojang.blaze3d.platform.Window;
+import com.mojang.blaze3d.systems.RenderSystem;
+import com.mojang.blaze3d.vertex.BufferBuilder;
 import com.mojang.blaze3d.vertex.VertexFormat;
+import com.mojang.blaze3d.vertex.VertexFormatElement;
 
+import net.minecraft.client.Minecraft;
 import net.minecraft.client.renderer.RenderType;
+import net.minecraft.client.renderer.ShaderInstance;
 
 /**
- * A byte buffer that can be used to draw vertices through a {@link DirectVertexConsumer}.
+ * A buffer that can be used to draw vertices through a {@link DirectVertexConsumer}.
+ *
+ * <p>
+ *     Vertices are written straight into a persistently mapped VBO, and drawn from there with the
+ *     {@link RenderType}'s state set up, so they are never copied again. Each frame writes to the next segment of a
+ *     fenced ring, so the CPU never writes over vertices the GPU is still reading. RenderTypes that sort their quads
+ *     on upload still go through a {@link BufferBuilder}, because the sort needs the vertices on the CPU. So does
+ *     everything while a shader pack is in use, since Oculus hooks vanilla's upload path to draw with its shaders.
+ * </p>
  *
  * The number of vertices needs to be known ahead of time.
  */
 public class DrawBuffer {
 
+	/**
+	 * How many frames of vertices the VBO holds.
+	 */
+	private static final int BUFFERED_FRAMES = 3;
+
 	private final RenderType parent;
+	private final boolean canDrawDirect;
+	/**
+	 * Whether the vertices since {@link #begin} are being written to the VBO.
+	 */
+	private boolean direct;
 	private ByteBuffer backingBuffer;
 	private int expectedVertices;
 
+	private GlBuffer vbo;
+	private GlVertexArray vao;
+	private MappedBuffer mapping;
+
 	@ApiStatus.Internal
 	public DrawBuffer(RenderType parent) {
 		this.parent = parent;
+		this.canDrawDirect = !RenderTypeExtension.sortsOnUpload(parent);
 	}
 
 	/**
@@ -39,9 +75,14 @@ public class DrawBuffer {
 		}
 
 		this.expectedVertices = vertexCount;
+		this.direct = canDrawDirect && !ShadersModHandler.isShaderPackInUse();
 
 		VertexFormat format = parent.format();
 
+		if (direct) {
+			return new DirectVertexConsumer(map(format.getVertexSize() * vertexCount), format, vertexCount);
+		}
+
 		// Add one extra vertex to uphold the vanilla assumption that BufferBuilders have at least
 		// enough buffer space for one more vertex. Rubidium checks for this extra space when popNextBuffer
 		// is called and reallocates the buffer if there is not space for one more vertex.
@@ -57,6 +98,143 @@ public class DrawBuffer {
 		return new DirectVertexConsumer(backingBuffer, format, vertexCount);
 	}
 
+	private ByteBuffer map(int byteSize) {
+		if (vbo == null) {
+			vbo = GlBuffer.requestPersistent(GlBufferType.ARRAY_BUFFER, BUFFERED_FRAMES);
+			vao = new GlVertexArray();
+		}
+
+		GlStateTracker.State restoreState = GlStateTracker.getRestoreState();
+
+		vbo.bind();
+		// never map an empty buffer
+		vbo.ensureCapacity(Math.max(byteSize, parent.format().getVertexSize()));
+		mapping = vbo.getBuffer();
+
+		restoreState.restore();
+
+		ByteBuffer buffer = mapping.unwrap();
+		buffer.position(0);
+		return buffer;
+	}
+
+	/**
+	 * Draw everything written since {@link #begin}, and reset.
+	 * @param scratch A builder to hand the vertices to vanilla with, for RenderTypes that sort on upload.
+	 */
+	public void draw(BufferBuilder scratch) {
+		if (hasVertices()) {
+			if (direct) {
+				drawDirect();
+			} else {
+				inject((BufferBuilderExtension) scratch);
+
+				parent.end(scratch, 0, 0, 0);
+			}
+		}
+
+		reset();
+	}
+
+	private void drawDirect() {
+		unmap();
+
+		VertexFormat.Mode mode = parent.mode();
+		int indexCount = mode.indexCount(expectedVertices);
+
+		parent.setupRenderState();
+
+		ShaderInstance shader = RenderSystem.getShader();
+		setupShader(shader, mode);
+		shader.apply();
+
+		GlStateTracker.State restoreState = GlStateTracker.getRestoreState();
+
+		vao.bind();
+		vbo.bind();
+		setupAttributes(parent.format(), vbo.getSegmentOffset());
+
+		// bound after the VAO, so the element buffer binding lands on ours
+		RenderSystem.AutoStorageIndexBuffer indices = RenderSystem.getSequentialBuffer(mode, indexCount);
+		GlBufferType.ELEMENT_ARRAY_BUFFER.bind(indices.name());
+
+		GlStateManager._drawElements(mode.asGLMode, indexCount, indices.type().asGLType, 0L);
+
+		vbo.doneForThisFrame();
+
+		restoreState.restore();
+
+		shader.clear();
+		parent.clearRenderState();
+	}
+
+	/**
+	 * Point the vertex attributes at the current segment. The segments aren't necessarily a whole number of vertices
+	 * apart, so this can't be done with a base vertex.
+	 */
+	private static void setupAttributes(VertexFormat format, long baseOffset) {
+		int stride = format.getVertexSize();
+		long offset = baseOffset;
+
+		int index = 0;
+		for (VertexFormatElement element : format.getElements()) {
+			element.setupBufferState(index, offset, stride);
+			offset += element.getByteSize();
+			index++;
+		}
+	}
+
+	/**
+	 * Set the same uniforms vanilla's {@code BufferUploader} does.
+	 */
+	private static void setupShader(ShaderInstance shader, VertexFormat.Mode mode) {
+		for (int i = 0; i < 8; i++) {
+			shader.setSampler("Sampler" + i, RenderSystem.getShaderTexture(i));
+		}
+
+		if (shader.MODEL_VIEW_MATRIX != null) {
+			shader.MODEL_VIEW_MATRIX.set(RenderSystem.getModelViewMatrix());
+		}
+		if (shader.PROJECTION_MATRIX != null) {
+			shader.PROJECTION_MATRIX.set(RenderSystem.getProjectionMatrix());
+		}
+		if (shader.INVERSE_VIEW_ROTATION_MATRIX != null) {
+			shader.INVERSE_VIEW_ROTATION_MATRIX.set(RenderSystem.getInverseViewRotationMatrix());
+		}
+		if (shader.COLOR_MODULATOR != null) {
+			shader.COLOR_MODULATOR.set(RenderSystem.getShaderColor());
+		}
+		if (shader.FOG_START != null) {
+			shader.FOG_START.set(RenderSystem.getShaderFogStart());
+		}
+		if (shader.FOG_END != null) {
+			shader.FOG_END.set(RenderSystem.getShaderFogEnd());
+		}
+		if (shader.FOG_COLOR != null) {
+			shader.FOG_COLOR.set(RenderSystem.getShaderFogColor());
+		}
+		if (shader.FOG_SHAPE != null) {
+			shader.FOG_SHAPE.set(RenderSystem.getShaderFogShape()
+					.getIndex());
+		}
+		if (shader.TEXTURE_MATRIX != null) {
+			shader.TEXTURE_MATRIX.set(RenderSystem.getTextureMatrix());
+		}
+		if (shader.GAME_TIME != null) {
+			shader.GAME_TIME.set(RenderSystem.getShaderGameTime());
+		}
+		if (shader.SCREEN_SIZE != null) {
+			Window window = Minecraft.getInstance()
+					.getWindow();
+			shader.SCREEN_SIZE.set((float) window.getWidth(), (float) window.getHeight());
+		}
+		if (shader.LINE_WIDTH != null && (mode == VertexFormat.Mode.LINES || mode == VertexFormat.Mode.LINE_STRIP)) {
+			shader.LINE_WIDTH.set(RenderSystem.getShaderLineWidth());
+		}
+
+		RenderSystem.setupShaderLights(shader);
+	}
+
 	/**
 	 * Injects the backing buffer into the given builder and prepares it for rendering.
 	 * @param bufferBuilder The buffer builder to inject into.
@@ -79,5 +257,22 @@ public class DrawBuffer {
 	 */
 	public void reset() {
 		this.expectedVertices = 0;
+
+		unmap();
+	}
+
+	private void unmap() {
+		if (mapping == null) {
+			return;
+		}
+
+		GlStateTracker.State restoreState = GlStateTracker.getRestoreState();
+
+		// only does anything for the non-persistent fallback
+		vbo.bind();
+		mapping.flush();
+		mapping = null;
+
+		restoreState.restore();
 	}
 }
@@ -24,6 +24,8 @@ import com.mojang.math.Vector3f;
 import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
 import net.minecraft.client.Camera;
 import net.minecraft.core.BlockPos;
+import net.minecraft.core.Vec3i;
+import net.minecraft.util.Mth;
 
 public abstract class InstanceManager<T> implements InstancingEngine.OriginShiftListener {
 
@@ -111,12 +113,13 @@ public abstract class InstanceManager<T> implements InstancingEngine.OriginShift
 		ArrayList<TickableInstance> instances = new ArrayList<>(tickableInstances.values());
 		int incr = 500;
 		int size = instances.size();
+		List<Runnable> tasks = new ArrayList<>(Mth.positiveCeilDiv(size, incr));
 		int start = 0;
 		while (start < size) {
 			int end = Math.min(start + incr, size);
 
 			List<TickableInstance> sub = instances.subList(start, end);
-			taskEngine.submit(() -> {
+			tasks.add(() -> {
 				for (TickableInstance instance : sub) {
 					tickInstance(cX, cY, cZ, instance);
 				}
@@ -124,6 +127,8 @@ public abstract class InstanceManager<T> implements InstancingEngine.OriginShift
 
 			start += incr;
 		}
+
+		taskEngine.submitAll(tasks);
 	}
 
 	protected void tickInstance(int cX, int cY, int cZ, TickableInstance instance) {
@@ -158,12 +163,13 @@ public abstract class InstanceManager<T> implements InstancingEngine.OriginShift
 		ArrayList<DynamicInstance> instances = new ArrayList<>(dynamicInstances.values());
 		int incr = 500;
 		int size = instances.size();
+		List<Runnable> tasks = new ArrayList<>(Mth.positiveCeilDiv(size, incr));
 		int start = 0;
 		while (start < size) {
 			int end = Math.min(start + incr, size);
 
 			List<DynamicInstance> sub = instances.subList(start, end);
-			taskEngine.submit(() -> {
+			tasks.add(() -> {
 				for (DynamicInstance dyn : sub) {
 					updateInstance(dyn, lookX, lookY, lookZ, cX, cY, cZ);
 				}
@@ -171,6 +177,8 @@ public abstract class InstanceManager<T> implements InstancingEngine.OriginShift
 
 			start += incr;
 		}
+
+		taskEngine.submitAll(tasks);
 	}
 
 	protected void updateInstance(DynamicInstance dyn, float lookX, float lookY, float lookZ, int cX, int cY, int cZ) {
@@ -179,7 +187,13 @@ public abstract class InstanceManager<T> implements InstancingEngine.OriginShift
 			return;
 		}
 
+		// hidden behind terrain, it won't be drawn either
+		if (!isInVisibleSection(dyn)) {
+			return;
+		}
+
 		BlockPos worldPos = dyn.getWorldPosition();
+
 		int dX = worldPos.getX() - cX;
 		int dY = worldPos.getY() - cY;
 		int dZ = worldPos.getZ() - cZ;
@@ -195,6 +209,14 @@ public abstract class InstanceManager<T> implements InstancingEngine.OriginShift
 			dyn.beginFrame();
 	}
 
+	private static boolean isInVisibleSection(DynamicInstance dyn) {
+		if (dyn instanceof AbstractInstance instance) {
+			return SectionVisibility.isVisible(instance.getRenderVolume());
+		}
+
+		return SectionVisibility.isVisible(dyn.getWorldPosition());
+	}
+
 	public void add(T obj) {
 		if (!Backend.isOn()) return;
 
@@ -354,6 +376,13 @@ public abstract class InstanceManager<T> implements InstancingEngine.OriginShift
 		instanced.forEach(this::add);
 	}
 
+	@Override
+	public void onOriginMoved(Vec3i offset) {
+		for (AbstractInstance instance : instances.values()) {
+			instance.onOriginMoved(offset);
+		}
+	}
+
 	public void detachLightListeners() {
 		for (AbstractInstance value : instances.values()) {
 			LightUpdater.get(value.world).removeListener(value);
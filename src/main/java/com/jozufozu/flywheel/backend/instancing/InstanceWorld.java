@@ -6,11 +6,13 @@ import com.jozufozu.flywheel.backend.Backend;
 import com.jozufozu.flywheel.backend.instancing.batching.BatchingEngine;
 import com.jozufozu.flywheel.backend.instancing.blockentity.BlockEntityInstanceManager;
 import com.jozufozu.flywheel.backend.instancing.entity.EntityInstanceManager;
+import com.jozufozu.flywheel.backend.instancing.indirect.IndirectEngine;
 import com.jozufozu.flywheel.backend.instancing.instancing.InstancingEngine;
 import com.jozufozu.flywheel.core.Contexts;
 import com.jozufozu.flywheel.core.shader.WorldProgram;
 import com.jozufozu.flywheel.event.BeginFrameEvent;
 import com.jozufozu.flywheel.event.RenderLayerEvent;
+import com.jozufozu.flywheel.light.WorldLight;
 import com.jozufozu.flywheel.util.ClientLevelExtension;
 
 import net.minecraft.client.Minecraft;
@@ -36,6 +38,7 @@ public class InstanceWorld {
 		return switch (Backend.getBackendType()) {
 		case INSTANCING -> {
 			InstancingEngine<WorldProgram> manager = InstancingEngine.builder(Contexts.WORLD)
+					.setCullingCompiler(Contexts.WORLD_CULLING)
 					.build();
 
 			var entityInstanceManager = new EntityInstanceManager(manager);
@@ -45,6 +48,16 @@ public class InstanceWorld {
 			manager.addListener(blockEntityInstanceManager);
 			yield new InstanceWorld(manager, entityInstanceManager, blockEntityInstanceManager);
 		}
+		case INDIRECT -> {
+			IndirectEngine<WorldProgram> manager = new IndirectEngine<>(Contexts.WORLD);
+
+			var entityInstanceManager = new EntityInstanceManager(manager);
+			var blockEntityInstanceManager = new BlockEntityInstanceManager(manager);
+
+			manager.addListener(entityInstanceManager);
+			manager.addListener(blockEntityInstanceManager);
+			yield new InstanceWorld(manager, entityInstanceManager, blockEntityInstanceManager);
+		}
 		case BATCHING -> {
 			var manager = new BatchingEngine();
 			var entityInstanceManager = new EntityInstanceManager(manager);
@@ -76,6 +89,7 @@ public class InstanceWorld {
 	 */
 	public void delete() {
 		engine.delete();
+		WorldLight.delete();
 		entityInstanceManager.detachLightListeners();
 		blockEntityInstanceManager.detachLightListeners();
 	}
@@ -89,7 +103,8 @@ public class InstanceWorld {
 	 * </p>
 	 */
 	public void beginFrame(BeginFrameEvent event) {
-		engine.beginFrame(event.getCamera());
+		engine.beginFrame(event.getCamera(), event.getFrustum());
+		WorldLight.beginFrame(event.getWorld(), event.getCamera());
 
 		taskEngine.syncPoint();
 
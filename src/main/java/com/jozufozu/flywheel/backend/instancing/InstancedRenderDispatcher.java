@@ -112,6 +112,8 @@ public class InstancedRenderDispatcher {
 		if (Backend.isOn() && world != null) {
 			resetInstanceWorld(world);
 		}
+
+		SectionVisibility.delete();
 	}
 
 	public static void resetInstanceWorld(ClientLevel world) {
@@ -1,11 +1,16 @@
 package com.jozufozu.flywheel.backend.instancing;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Deque;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 import java.util.function.Consumer;
 import java.util.stream.Stream;
 
@@ -15,27 +20,59 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.jozufozu.flywheel.Flywheel;
-import com.jozufozu.flywheel.backend.instancing.batching.WaitGroup;
 
 import net.minecraft.util.Mth;
 
-// https://github.com/CaffeineMC/sodium-fabric/blob/5d364ed5ba63f9067fcf72a078ca310bff4db3e9/src/main/java/me/jellysquid/mods/sodium/client/render/chunk/compile/ChunkBuilder.java
+/**
+ * A work-stealing thread pool.
+ *
+ * <p>
+ *     Each worker owns a deque. Workers take their own jobs from the tail, and when they run out, steal from the head
+ *     of the other workers' deques. Jobs submitted from outside the pool are dealt out round-robin, and jobs submitted
+ *     from a worker go straight to that worker's deque.
+ * </p>
+ * <p>
+ *     Idle workers spin for a short while before parking, and submitting only wakes as many parked workers as there
+ *     are new jobs. Nothing on the submission path takes a lock.
+ * </p>
+ * <p>
+ *     {@link #submitBackground Background} jobs sit in a separate queue that workers only look at when there is nothing
+ *     else to do. They don't count towards {@link #syncPoint()}, so long jobs like meshing never stall a frame.
+ * </p>
+ */
+// Worker lifecycle adapted from https://github.com/CaffeineMC/sodium-fabric/blob/5d364ed5ba63f9067fcf72a078ca310bff4db3e9/src/main/java/me/jellysquid/mods/sodium/client/render/chunk/compile/ChunkBuilder.java
 public class ParallelTaskEngine implements TaskEngine {
 	private static final Logger LOGGER = LoggerFactory.getLogger("BatchExecutor");
 
+	/**
+	 * How many times an idle thread looks for work before parking.
+	 */
+	private static final int SPIN_ITERATIONS = 128;
+
 	private final String name;
 
 	/**
 	 * If set to false, the engine will shut down.
 	 */
 	private final AtomicBoolean running = new AtomicBoolean(false);
-	private final WaitGroup wg = new WaitGroup();
+
+	/**
+	 * The number of submitted jobs that have not finished yet.
+	 */
+	private final AtomicInteger pending = new AtomicInteger(0);
 
 	private final Deque<Runnable> syncTasks = new ConcurrentLinkedDeque<>();
-	private final Deque<Runnable> jobQueue = new ConcurrentLinkedDeque<>();
-	private final List<Thread> threads = new ArrayList<>();
+	private final Queue<Runnable> background = new ConcurrentLinkedQueue<>();
+	private final Queue<Worker> parked = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger nextWorker = new AtomicInteger(0);
+
+	private Worker[] workers = new Worker[0];
 
-	private final Object jobNotifier = new Object();
+	/**
+	 * The thread waiting in {@link #syncPoint()}, if any.
+	 */
+	@Nullable
+	private volatile Thread syncWaiter;
 
 	private final int threadCount;
 
@@ -49,28 +86,29 @@ public class ParallelTaskEngine implements TaskEngine {
 	}
 
 	/**
-	 * Spawns a number of work-stealing threads to process results in the build queue. If the builder is already
-	 * running, this method does nothing and exits.
+	 * Spawns a number of work-stealing threads to process submitted jobs. If the engine is already running, this
+	 * method does nothing and exits.
 	 */
 	public void startWorkers() {
 		if (this.running.getAndSet(true)) {
 			return;
 		}
 
-		if (!this.threads.isEmpty()) {
+		if (this.workers.length != 0) {
 			throw new IllegalStateException("Threads are still alive while in the STOPPED state");
 		}
 
+		Worker[] workers = new Worker[this.threadCount];
 		for (int i = 0; i < this.threadCount; i++) {
+			workers[i] = new Worker(i, name + " " + i);
+		}
+		this.workers = workers;
 
-			Thread thread = new Thread(new WorkerRunnable(), name + " " + i);
-			thread.setPriority(Math.max(0, Thread.NORM_PRIORITY - 2));
-			thread.start();
-
-			this.threads.add(thread);
+		for (Worker worker : workers) {
+			worker.start();
 		}
 
-		LOGGER.info("Started {} worker threads", this.threads.size());
+		LOGGER.info("Started {} worker threads", workers.length);
 	}
 
 	public void stopWorkers() {
@@ -78,24 +116,35 @@ public class ParallelTaskEngine implements TaskEngine {
 			return;
 		}
 
-		if (this.threads.isEmpty()) {
+		if (this.workers.length == 0) {
 			throw new IllegalStateException("No threads are alive but the executor is in the RUNNING state");
 		}
 
-		synchronized (this.jobNotifier) {
-			this.jobNotifier.notifyAll();
+		for (Worker worker : this.workers) {
+			LockSupport.unpark(worker);
 		}
 
 		try {
-			for (Thread thread : this.threads) {
-				thread.join();
+			for (Worker worker : this.workers) {
+				worker.join();
 			}
 		} catch (InterruptedException ignored) {
 		}
 
-		this.threads.clear();
+		for (Worker worker : this.workers) {
+			worker.jobs.clear();
+		}
+
+		this.workers = new Worker[0];
 
-		this.jobQueue.clear();
+		// Background jobs build models that instancers are waiting on, dropping them would leave those never ready.
+		Runnable job;
+		while ((job = this.background.poll()) != null) {
+			processBackgroundTask(job);
+		}
+
+		this.parked.clear();
+		this.pending.set(0);
 	}
 
 	/**
@@ -103,30 +152,121 @@ public class ParallelTaskEngine implements TaskEngine {
 	 */
 	@Override
 	public void submit(@NotNull Runnable command) {
-		this.jobQueue.add(command);
-		this.wg.add(1);
+		Worker[] workers = this.workers;
+
+		if (workers.length == 0) {
+			// not running, nobody will pick this up
+			runInline(command);
+			return;
+		}
+
+		this.pending.incrementAndGet();
+
+		if (Thread.currentThread() instanceof Worker worker && worker.owner() == this) {
+			worker.jobs.addLast(command);
+		} else {
+			nextDeque(workers).addLast(command);
+		}
+
+		wakeWorkers(1);
+	}
+
+	/**
+	 * Submit many tasks at once.
+	 *
+	 * <p>
+	 *     The batch is split into contiguous runs, one per worker, and at most one worker is woken per run.
+	 * </p>
+	 */
+	@Override
+	public void submitAll(@NotNull Collection<? extends Runnable> commands) {
+		int size = commands.size();
+
+		if (size == 0) {
+			return;
+		}
+
+		Worker[] workers = this.workers;
+
+		if (workers.length == 0) {
+			commands.forEach(this::runInline);
+			return;
+		}
 
-		synchronized (this.jobNotifier) {
-			this.jobNotifier.notify();
+		this.pending.addAndGet(size);
+
+		if (Thread.currentThread() instanceof Worker worker && worker.owner() == this) {
+			// idle workers will steal from us
+			worker.jobs.addAll(commands);
+			wakeWorkers(Math.min(size - 1, workers.length - 1));
+			return;
 		}
+
+		int runs = Math.min(size, workers.length);
+		int perRun = Mth.positiveCeilDiv(size, runs);
+
+		Iterator<? extends Runnable> it = commands.iterator();
+		for (int i = 0; i < runs; i++) {
+			List<Runnable> run = new ArrayList<>(perRun);
+			for (int j = 0; j < perRun && it.hasNext(); j++) {
+				run.add(it.next());
+			}
+			nextDeque(workers).addAll(run);
+		}
+
+		wakeWorkers(runs);
+	}
+
+	/**
+	 * Submit a low priority task that nobody will wait on.
+	 *
+	 * <p>
+	 *     The task runs once the workers have nothing else to do, and is never run by a thread waiting in
+	 *     {@link #syncPoint()}.
+	 * </p>
+	 */
+	@Override
+	public void submitBackground(@NotNull Runnable command) {
+		if (this.workers.length == 0) {
+			processBackgroundTask(command);
+			return;
+		}
+
+		this.background.add(command);
+
+		wakeWorkers(1);
 	}
 
 	/**
 	 * Wait for all running jobs to finish.
+	 *
+	 * <p>
+	 *     The calling thread helps out by stealing jobs until there are none left to steal.
+	 * </p>
 	 */
 	@Override
 	public void syncPoint() {
 		Runnable job;
 
 		// Finish everyone else's work...
-		while ((job = this.jobQueue.pollLast()) != null) {
+		while ((job = steal(-1)) != null) {
 			processTask(job);
 		}
 
 		// and wait for any stragglers.
-		try {
-			this.wg.await();
-		} catch (InterruptedException ignored) {
+		int spins = 0;
+		while (this.pending.get() > 0) {
+			if (spins < SPIN_ITERATIONS) {
+				spins++;
+				Thread.onSpinWait();
+				continue;
+			}
+
+			this.syncWaiter = Thread.currentThread();
+			if (this.pending.get() > 0) {
+				LockSupport.park(this);
+			}
+			this.syncWaiter = null;
 		}
 
 		while ((job = this.syncTasks.pollLast()) != null) {
@@ -134,20 +274,59 @@ public class ParallelTaskEngine implements TaskEngine {
 		}
 	}
 
+	private Deque<Runnable> nextDeque(Worker[] workers) {
+		return workers[Math.floorMod(this.nextWorker.getAndIncrement(), workers.length)].jobs;
+	}
+
+	private void wakeWorkers(int count) {
+		for (int i = 0; i < count; i++) {
+			Worker worker = this.parked.poll();
+
+			if (worker == null) {
+				return;
+			}
+
+			LockSupport.unpark(worker);
+		}
+	}
+
+	/**
+	 * Take a job from the head of any worker's deque.
+	 *
+	 * @param thief The index of the worker doing the stealing, or -1 if the thief isn't a worker.
+	 */
 	@Nullable
-	private Runnable getNextTask() {
-		Runnable job = this.jobQueue.pollFirst();
-
-		if (job == null) {
-			synchronized (ParallelTaskEngine.this.jobNotifier) {
-				try {
-					ParallelTaskEngine.this.jobNotifier.wait();
-				} catch (InterruptedException ignored) {
-				}
+	private Runnable steal(int thief) {
+		Worker[] workers = this.workers;
+		int count = workers.length;
+
+		for (int i = 1; i <= count; i++) {
+			int victim = Math.floorMod(thief + i, count);
+
+			if (victim == thief) continue;
+
+			Runnable job = workers[victim].jobs.pollFirst();
+
+			if (job != null) {
+				return job;
 			}
 		}
 
-		return job;
+		return null;
+	}
+
+	private boolean hasWork() {
+		for (Worker worker : this.workers) {
+			if (!worker.jobs.isEmpty()) {
+				return true;
+			}
+		}
+		return !this.background.isEmpty();
+	}
+
+	private void runInline(Runnable job) {
+		this.pending.incrementAndGet();
+		processTask(job);
 	}
 
 	// TODO: job context
@@ -157,7 +336,21 @@ public class ParallelTaskEngine implements TaskEngine {
 		} catch (Exception e) {
 			Flywheel.LOGGER.error("Error running job", e);
 		} finally {
-			ParallelTaskEngine.this.wg.done();
+			if (this.pending.decrementAndGet() == 0) {
+				Thread waiter = this.syncWaiter;
+
+				if (waiter != null) {
+					LockSupport.unpark(waiter);
+				}
+			}
+		}
+	}
+
+	private void processBackgroundTask(Runnable job) {
+		try {
+			job.run();
+		} catch (Exception e) {
+			Flywheel.LOGGER.error("Error running background job", e);
 		}
 	}
 
@@ -173,24 +366,69 @@ public class ParallelTaskEngine implements TaskEngine {
 		return Runtime.getRuntime().availableProcessors();
 	}
 
-	private class WorkerRunnable implements Runnable {
+	private class Worker extends Thread {
 
-		private final AtomicBoolean running = ParallelTaskEngine.this.running;
+		private final int index;
+		private final Deque<Runnable> jobs = new ConcurrentLinkedDeque<>();
+
+		private Worker(int index, String name) {
+			super(name);
+			this.index = index;
+			setPriority(Math.max(0, Thread.NORM_PRIORITY - 2));
+			setDaemon(true);
+		}
+
+		private ParallelTaskEngine owner() {
+			return ParallelTaskEngine.this;
+		}
 
 		@Override
 		public void run() {
-			// Run until the chunk builder shuts down
-			while (this.running.get()) {
-				Runnable job = ParallelTaskEngine.this.getNextTask();
+			int spins = 0;
+
+			// Run until the engine shuts down
+			while (ParallelTaskEngine.this.running.get()) {
+				Runnable job = this.jobs.pollLast();
 
 				if (job == null) {
+					job = ParallelTaskEngine.this.steal(this.index);
+				}
+
+				if (job != null) {
+					ParallelTaskEngine.this.processTask(job);
+					spins = 0;
 					continue;
 				}
 
-				ParallelTaskEngine.this.processTask(job);
+				job = ParallelTaskEngine.this.background.poll();
+
+				if (job != null) {
+					ParallelTaskEngine.this.processBackgroundTask(job);
+					spins = 0;
+					continue;
+				}
+
+				if (spins < SPIN_ITERATIONS) {
+					spins++;
+					Thread.onSpinWait();
+					continue;
+				}
+
+				park();
+				spins = 0;
 			}
 		}
 
+		private void park() {
+			ParallelTaskEngine.this.parked.add(this);
+
+			// Check again now that submitters can see us, otherwise we might miss a wakeup.
+			if (!ParallelTaskEngine.this.hasWork() && ParallelTaskEngine.this.running.get()) {
+				LockSupport.park(ParallelTaskEngine.this);
+			}
+
+			ParallelTaskEngine.this.parked.remove(this);
+		}
 	}
 
 	public class WorkGroupBuilder {
@@ -230,7 +468,9 @@ public class ParallelTaskEngine implements TaskEngine {
 
 			WorkGroup workGroup = new WorkGroup(name, finalizer);
 
-			tasks.map(task -> new WorkGroupTask(workGroup, task)).forEach(ParallelTaskEngine.this::submit);
+			List<Runnable> groupTasks = tasks.<Runnable>map(task -> new WorkGroupTask(workGroup, task)).toList();
+
+			ParallelTaskEngine.this.submitAll(groupTasks);
 		}
 
 	}
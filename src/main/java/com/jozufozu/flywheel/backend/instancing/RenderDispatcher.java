@@ -3,6 +3,7 @@ package com.jozufozu.flywheel.backend.instancing;
 import com.jozufozu.flywheel.event.RenderLayerEvent;
 
 import net.minecraft.client.Camera;
+import net.minecraft.client.renderer.culling.Frustum;
 
 public interface RenderDispatcher {
 	/**
@@ -17,8 +18,11 @@ public interface RenderDispatcher {
 	 * Maintain the integer origin coordinate to be within a certain distance from the camera in all directions.
 	 * <p>
 	 * This prevents floating point precision issues at high coordinates.
+	 *
+	 * @param info    The camera the frame will be rendered from.
+	 * @param frustum The view frustum for this frame, already prepared with the camera position.
 	 */
-	void beginFrame(Camera info);
+	void beginFrame(Camera info, Frustum frustum);
 
 	void delete();
 }
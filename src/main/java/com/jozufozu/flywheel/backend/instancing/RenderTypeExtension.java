@@ -14,6 +14,11 @@ public interface RenderTypeExtension {
 	 */
 	DrawBuffer flywheel$getDrawBuffer();
 
+	/**
+	 * @return {@code true} if vanilla sorts the quads of this RenderType before uploading them.
+	 */
+	boolean flywheel$sortsOnUpload();
+
 	/**
 	 * Helper function to cast a RenderType to a RenderTypeExtension and get its DrawBuffer.
 	 * @param type The RenderType to get the DrawBuffer from.
@@ -22,4 +27,8 @@ public interface RenderTypeExtension {
 	static DrawBuffer getDrawBuffer(RenderType type) {
 		return ((RenderTypeExtension) type).flywheel$getDrawBuffer();
 	}
+
+	static boolean sortsOnUpload(RenderType type) {
+		return ((RenderTypeExtension) type).flywheel$sortsOnUpload();
+	}
 }
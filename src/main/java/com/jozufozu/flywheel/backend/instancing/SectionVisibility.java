@@ -0,0 +1,295 @@
+package com.jozufozu.flywheel.backend.instancing;
+
+import static org.lwjgl.opengl.GL11.GL_NEAREST;
+import static org.lwjgl.opengl.GL11.GL_RED;
+import static org.lwjgl.opengl.GL11.GL_TEXTURE_MAG_FILTER;
+import static org.lwjgl.opengl.GL11.GL_TEXTURE_MIN_FILTER;
+import static org.lwjgl.opengl.GL11.GL_UNPACK_ALIGNMENT;
+import static org.lwjgl.opengl.GL11.GL_UNSIGNED_BYTE;
+import static org.lwjgl.opengl.GL11.glPixelStorei;
+import static org.lwjgl.opengl.GL12.GL_TEXTURE_3D;
+import static org.lwjgl.opengl.GL12.glTexImage3D;
+import static org.lwjgl.opengl.GL12.glTexSubImage3D;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import javax.annotation.Nullable;
+
+import org.lwjgl.opengl.GL30;
+import org.lwjgl.system.MemoryUtil;
+
+import com.jozufozu.flywheel.api.instance.DynamicInstance;
+import com.jozufozu.flywheel.backend.ShadersModHandler;
+import com.jozufozu.flywheel.backend.gl.GlTexture;
+import com.jozufozu.flywheel.backend.gl.GlTextureUnit;
+import com.jozufozu.flywheel.config.FlwConfig;
+import com.jozufozu.flywheel.mixin.RenderChunkInfoAccessor;
+import com.jozufozu.flywheel.util.box.ImmutableBox;
+
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.SectionPos;
+import net.minecraft.world.level.LevelHeightAccessor;
+
+/**
+ * The chunk sections vanilla found to be visible this frame, after frustum and occlusion culling.
+ *
+ * <p>
+ *     Captured at the end of {@code LevelRenderer#setupRender}. Instances whose
+ *     {@link AbstractInstance#getRenderVolume() render volume} only touches sections that aren't visible skip their
+ *     {@link DynamicInstance#beginFrame()}, and the GPU culling pass drops them before they are drawn. Dynamic instances
+ *     are updated before vanilla culls, so they see the previous frame's sections. Like with the update limiter, an
+ *     instance that comes into view may show a stale pose for a frame.
+ * </p>
+ *
+ * <p>
+ *     Vanilla only knows about sections within the render distance and the build height, so anything outside the
+ *     grid of sections it looked at is considered visible. The same goes for everything if nothing was captured, for
+ *     example because Rubidium replaces vanilla's chunk culling.
+ * </p>
+ */
+public final class SectionVisibility {
+
+	public static final GlTextureUnit TEXTURE_UNIT = GlTextureUnit.T5;
+
+	private static final LongOpenHashSet visible = new LongOpenHashSet();
+	private static boolean captured;
+
+	// The bounding box of the visible sections, spanning the whole build height. Uploaded as a grid of bytes for the GPU.
+	private static int gridMinX;
+	private static int gridMinY;
+	private static int gridMinZ;
+	private static int gridSizeX;
+	private static int gridSizeY;
+	private static int gridSizeZ;
+	private static boolean gridDirty;
+
+	@Nullable
+	private static GlTexture texture;
+	private static int textureSizeX;
+	private static int textureSizeY;
+	private static int textureSizeZ;
+	@Nullable
+	private static ByteBuffer staging;
+
+	private SectionVisibility() {
+	}
+
+	public static boolean isEnabled() {
+		return FlwConfig.get()
+				.sectionCulling();
+	}
+
+	/**
+	 * @return true if instances are currently being culled by section.
+	 */
+	public static boolean isActive() {
+		return captured && !ShadersModHandler.isRenderingShadowPass();
+	}
+
+	/**
+	 * Record the sections vanilla is about to draw.
+	 *
+	 * @param level        The level being rendered.
+	 * @param renderChunks The contents of {@code LevelRenderer#renderChunksInFrustum}.
+	 */
+	public static void capture(LevelHeightAccessor level, List<?> renderChunks) {
+		visible.clear();
+
+		captured = isEnabled() && !renderChunks.isEmpty();
+
+		if (!captured) {
+			return;
+		}
+
+		int minX = Integer.MAX_VALUE, minZ = Integer.MAX_VALUE;
+		int maxX = Integer.MIN_VALUE, maxZ = Integer.MIN_VALUE;
+
+		for (Object info : renderChunks) {
+			BlockPos origin = ((RenderChunkInfoAccessor) info).flywheel$getChunk()
+					.getOrigin();
+
+			int x = SectionPos.blockToSectionCoord(origin.getX());
+			int z = SectionPos.blockToSectionCoord(origin.getZ());
+			minX = Math.min(minX, x);
+			minZ = Math.min(minZ, z);
+			maxX = Math.max(maxX, x);
+			maxZ = Math.max(maxZ, z);
+
+			visible.add(SectionPos.asLong(x, SectionPos.blockToSectionCoord(origin.getY()), z));
+		}
+
+		gridMinX = minX;
+		gridMinY = level.getMinSection();
+		gridMinZ = minZ;
+		gridSizeX = maxX - minX + 1;
+		gridSizeY = level.getSectionsCount();
+		gridSizeZ = maxZ - minZ + 1;
+		gridDirty = true;
+	}
+
+	/**
+	 * @return false if the section containing the given position was culled by vanilla.
+	 */
+	public static boolean isVisible(BlockPos pos) {
+		if (!isActive()) {
+			return true;
+		}
+
+		int x = SectionPos.blockToSectionCoord(pos.getX());
+		int y = SectionPos.blockToSectionCoord(pos.getY());
+		int z = SectionPos.blockToSectionCoord(pos.getZ());
+
+		if (!isInGrid(x, y, z)) {
+			return true;
+		}
+
+		return visible.contains(SectionPos.asLong(x, y, z));
+	}
+
+	/**
+	 * @return false if every section the given box touches was culled by vanilla.
+	 */
+	public static boolean isVisible(ImmutableBox box) {
+		if (!isActive()) {
+			return true;
+		}
+
+		int minX = SectionPos.blockToSectionCoord(box.getMinX());
+		int minY = SectionPos.blockToSectionCoord(box.getMinY());
+		int minZ = SectionPos.blockToSectionCoord(box.getMinZ());
+		int maxX = SectionPos.blockToSectionCoord(Math.max(box.getMinX(), box.getMaxX() - 1));
+		int maxY = SectionPos.blockToSectionCoord(Math.max(box.getMinY(), box.getMaxY() - 1));
+		int maxZ = SectionPos.blockToSectionCoord(Math.max(box.getMinZ(), box.getMaxZ() - 1));
+
+		// like the GPU pass, large instances aren't worth the lookups
+		if (maxX - minX > 1 || maxY - minY > 1 || maxZ - minZ > 1) {
+			return true;
+		}
+
+		for (int x = minX; x <= maxX; x++) {
+			for (int y = minY; y <= maxY; y++) {
+				for (int z = minZ; z <= maxZ; z++) {
+					if (!isInGrid(x, y, z) || visible.contains(SectionPos.asLong(x, y, z))) {
+						return true;
+					}
+				}
+			}
+		}
+
+		return false;
+	}
+
+	private static boolean isInGrid(int x, int y, int z) {
+		return x >= gridMinX && x < gridMinX + gridSizeX && y >= gridMinY && y < gridMinY + gridSizeY && z >= gridMinZ && z < gridMinZ + gridSizeZ;
+	}
+
+	/**
+	 * Bind the visible sections to {@link #TEXTURE_UNIT}, uploading them if they changed.
+	 *
+	 * @return false if nothing is known this frame, and nothing was bound.
+	 */
+	public static boolean bind() {
+		if (!isActive()) {
+			return false;
+		}
+
+		if (texture == null) {
+			texture = new GlTexture(GL_TEXTURE_3D);
+			TEXTURE_UNIT.makeActive();
+			texture.bind();
+			texture.setParameteri(GL_TEXTURE_MIN_FILTER, GL_NEAREST);
+			texture.setParameteri(GL_TEXTURE_MAG_FILTER, GL_NEAREST);
+		}
+
+		TEXTURE_UNIT.makeActive();
+		texture.bind();
+
+		if (gridDirty) {
+			uploadGrid();
+			gridDirty = false;
+		}
+
+		GlTextureUnit.T0.makeActive();
+		return true;
+	}
+
+	/**
+	 * @return The minimum corner of the grid, in blocks.
+	 */
+	public static BlockPos getGridMin() {
+		return new BlockPos(SectionPos.sectionToBlockCoord(gridMinX), SectionPos.sectionToBlockCoord(gridMinY), SectionPos.sectionToBlockCoord(gridMinZ));
+	}
+
+	public static int getGridSizeX() {
+		return gridSizeX;
+	}
+
+	public static int getGridSizeY() {
+		return gridSizeY;
+	}
+
+	public static int getGridSizeZ() {
+		return gridSizeZ;
+	}
+
+	private static void uploadGrid() {
+		int bytes = gridSizeX * gridSizeY * gridSizeZ;
+
+		if (staging == null) {
+			staging = MemoryUtil.memAlloc(bytes);
+		} else if (staging.capacity() < bytes) {
+			staging = MemoryUtil.memRealloc(staging, bytes);
+		}
+
+		long ptr = MemoryUtil.memAddress(staging);
+		MemoryUtil.memSet(ptr, 0, bytes);
+
+		for (LongIterator it = visible.iterator(); it.hasNext(); ) {
+			long section = it.nextLong();
+			int x = SectionPos.x(section) - gridMinX;
+			int y = SectionPos.y(section) - gridMinY;
+			int z = SectionPos.z(section) - gridMinZ;
+
+			if (y < 0 || y >= gridSizeY) continue;
+
+			MemoryUtil.memPutByte(ptr + x + (long) gridSizeX * (y + (long) gridSizeY * z), (byte) 0xFF);
+		}
+
+		staging.position(0);
+		staging.limit(bytes);
+
+		glPixelStorei(GL_UNPACK_ALIGNMENT, 1); // rows are as long as the grid is wide
+
+		if (textureSizeX < gridSizeX || textureSizeY < gridSizeY || textureSizeZ < gridSizeZ) {
+			textureSizeX = Math.max(textureSizeX, gridSizeX);
+			textureSizeY = Math.max(textureSizeY, gridSizeY);
+			textureSizeZ = Math.max(textureSizeZ, gridSizeZ);
+			glTexImage3D(GL_TEXTURE_3D, 0, GL30.GL_R8, textureSizeX, textureSizeY, textureSizeZ, 0, GL_RED, GL_UNSIGNED_BYTE, 0);
+		}
+
+		glTexSubImage3D(GL_TEXTURE_3D, 0, 0, 0, 0, gridSizeX, gridSizeY, gridSizeZ, GL_RED, GL_UNSIGNED_BYTE, staging);
+
+		glPixelStorei(GL_UNPACK_ALIGNMENT, 4); // 4 is the default
+
+		staging.clear();
+	}
+
+	public static void delete() {
+		visible.clear();
+		captured = false;
+
+		if (texture != null) {
+			texture.delete();
+			texture = null;
+			textureSizeX = textureSizeY = textureSizeZ = 0;
+		}
+
+		if (staging != null) {
+			MemoryUtil.memFree(staging);
+			staging = null;
+		}
+	}
+}
@@ -1,10 +1,37 @@
 package com.jozufozu.flywheel.backend.instancing;
 
+import java.util.Collection;
+
 import org.jetbrains.annotations.NotNull;
 
 public interface TaskEngine {
 	void submit(@NotNull Runnable command);
 
+	/**
+	 * Submit many tasks at once.
+	 *
+	 * <p>
+	 *     Prefer this over calling {@link #submit} in a loop, implementations are free to enqueue the whole batch at
+	 *     once and wake each worker at most one time.
+	 * </p>
+	 */
+	default void submitAll(@NotNull Collection<? extends Runnable> commands) {
+		for (Runnable command : commands) {
+			submit(command);
+		}
+	}
+
+	/**
+	 * Submit a low priority task that {@link #syncPoint()} does not wait for.
+	 *
+	 * <p>
+	 *     Implementations without spare threads may simply run the task right away.
+	 * </p>
+	 */
+	default void submitBackground(@NotNull Runnable command) {
+		command.run();
+	}
+
 	/**
 	 * Wait for all running jobs to finish.
 	 */
@@ -1,6 +1,8 @@
 package com.jozufozu.flywheel.backend.instancing.batching;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import com.jozufozu.flywheel.api.InstanceData;
@@ -12,6 +14,7 @@ import com.jozufozu.flywheel.backend.instancing.BatchDrawingTracker;
 import com.jozufozu.flywheel.backend.instancing.TaskEngine;
 import com.jozufozu.flywheel.backend.model.DirectVertexConsumer;
 import com.mojang.blaze3d.vertex.PoseStack;
+import com.mojang.math.Matrix4f;
 
 import net.minecraft.client.renderer.RenderType;
 
@@ -37,7 +40,15 @@ public class BatchedMaterialGroup implements MaterialGroup {
 		}
 	}
 
-	public void render(PoseStack stack, BatchDrawingTracker source, TaskEngine pool) {
+	/**
+	 * Draw every instance in this group.
+	 *
+	 * @param stack  The transform from world space to cache space.
+	 * @param view   The transform from cache space to view space.
+	 * @param source Where to get the buffer from.
+	 * @param pool   The task engine to transform the vertices on.
+	 */
+	public void render(PoseStack stack, Matrix4f view, BatchDrawingTracker source, TaskEngine pool) {
 
 		vertexCount = 0;
 		instanceCount = 0;
@@ -49,17 +60,18 @@ public class BatchedMaterialGroup implements MaterialGroup {
 			}
 		}
 
+		// every vertex is written by exactly one task, so there's no need to clear the buffer first
 		DirectVertexConsumer consumer = source.getDirectConsumer(state, vertexCount);
 
-		// avoids rendering garbage, but doesn't fix the issue of some instances not being buffered
-		consumer.memSetZero();
-
+		List<Runnable> tasks = new ArrayList<>();
 		for (BatchedMaterial<?> material : materials.values()) {
 			for (CPUInstancer<?> instancer : material.models.values()) {
 				instancer.sbb.context.outputColorDiffuse = !consumer.hasOverlay() && !ShadersModHandler.isShaderPackInUse();
-				instancer.submitTasks(stack, pool, consumer);
+				instancer.collectTasks(stack, view, tasks, consumer);
 			}
 		}
+
+		pool.submitAll(tasks);
 	}
 
 	public void clear() {
@@ -67,6 +79,7 @@ public class BatchedMaterialGroup implements MaterialGroup {
 	}
 
 	public void delete() {
+		materials.values().forEach(BatchedMaterial::delete);
 		materials.clear();
 	}
 
@@ -5,6 +5,9 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.system.MemoryUtil;
+
 import com.jozufozu.flywheel.api.MaterialGroup;
 import com.jozufozu.flywheel.backend.RenderLayer;
 import com.jozufozu.flywheel.backend.instancing.BatchDrawingTracker;
@@ -12,19 +15,33 @@ import com.jozufozu.flywheel.backend.instancing.Engine;
 import com.jozufozu.flywheel.backend.instancing.TaskEngine;
 import com.jozufozu.flywheel.event.RenderLayerEvent;
 import com.jozufozu.flywheel.util.FlwUtil;
+import com.jozufozu.flywheel.util.MatrixWrite;
 import com.mojang.blaze3d.platform.Lighting;
+import com.mojang.blaze3d.vertex.PoseStack;
 import com.mojang.math.Matrix4f;
 
 import net.minecraft.client.Camera;
 import net.minecraft.client.renderer.RenderType;
+import net.minecraft.client.renderer.culling.Frustum;
 import net.minecraft.core.BlockPos;
 import net.minecraft.core.Vec3i;
+import net.minecraft.util.Mth;
 
 public class BatchingEngine implements Engine {
 
+	/**
+	 * How far the camera can get from the cache origin before it moves. Moving it throws away every cached vertex.
+	 */
+	public static int MAX_CACHE_ORIGIN_DISTANCE = 512;
+
 	private final Map<RenderLayer, Map<RenderType, BatchedMaterialGroup>> layers;
 	private final BatchDrawingTracker batchTracker = new BatchDrawingTracker();
 
+	/**
+	 * Transformed vertices are cached relative to this, so they stay valid while the camera moves.
+	 */
+	private BlockPos cacheOrigin = BlockPos.ZERO;
+
 	public BatchingEngine() {
 		this.layers = new EnumMap<>(RenderLayer.class);
 		for (RenderLayer value : RenderLayer.values()) {
@@ -45,8 +62,13 @@ public class BatchingEngine implements Engine {
 	@Override
 	public void render(TaskEngine taskEngine, RenderLayerEvent event) {
 		Map<RenderType, BatchedMaterialGroup> groups = layers.get(event.getLayer());
+
+		PoseStack cacheStack = new PoseStack();
+		cacheStack.translate(-cacheOrigin.getX(), -cacheOrigin.getY(), -cacheOrigin.getZ());
+		Matrix4f view = getCacheView(event.stack);
+
 		for (BatchedMaterialGroup group : groups.values()) {
-			group.render(event.stack, batchTracker, taskEngine);
+			group.render(cacheStack, view, batchTracker, taskEngine);
 		}
 
 		// FIXME: this probably breaks some vanilla stuff but it works much better for flywheel
@@ -62,13 +84,59 @@ public class BatchingEngine implements Engine {
 		batchTracker.endBatch();
 	}
 
+	/**
+	 * Move the origin of the given world space transform to the cache origin.
+	 *
+	 * <p>
+	 *     The translation is combined in double precision, so large camera coordinates don't lose any more precision
+	 *     than they already have.
+	 * </p>
+	 */
+	private Matrix4f getCacheView(PoseStack stack) {
+		Matrix4f view = new Matrix4f();
+
+		try (MemoryStack memoryStack = MemoryStack.stackPush()) {
+			long ptr = memoryStack.nmalloc(16 * 4);
+			((MatrixWrite) (Object) stack.last()
+					.pose()).flywheel$writeUnsafe(ptr);
+
+			// column major, the translation is the last column
+			for (int row = 0; row < 3; row++) {
+				double translation = MemoryUtil.memGetFloat(ptr + (12 + row) * 4L);
+				translation += (double) MemoryUtil.memGetFloat(ptr + row * 4L) * cacheOrigin.getX();
+				translation += (double) MemoryUtil.memGetFloat(ptr + (4 + row) * 4L) * cacheOrigin.getY();
+				translation += (double) MemoryUtil.memGetFloat(ptr + (8 + row) * 4L) * cacheOrigin.getZ();
+				MemoryUtil.memPutFloat(ptr + (12 + row) * 4L, (float) translation);
+			}
+
+			((MatrixWrite) (Object) view).flywheel$readUnsafe(ptr);
+		}
+
+		return view;
+	}
+
 	@Override
 	public void delete() {
+		layers.values()
+				.stream()
+				.flatMap(FlwUtil::mapValues)
+				.forEach(BatchedMaterialGroup::delete);
 	}
 
 	@Override
-	public void beginFrame(Camera info) {
+	public void beginFrame(Camera info, Frustum frustum) {
+		int cX = Mth.floor(info.getPosition().x);
+		int cY = Mth.floor(info.getPosition().y);
+		int cZ = Mth.floor(info.getPosition().z);
 
+		int dX = cX - cacheOrigin.getX();
+		int dY = cY - cacheOrigin.getY();
+		int dZ = cZ - cacheOrigin.getZ();
+
+		if (Math.abs(dX) > MAX_CACHE_ORIGIN_DISTANCE || Math.abs(dY) > MAX_CACHE_ORIGIN_DISTANCE || Math.abs(dZ) > MAX_CACHE_ORIGIN_DISTANCE) {
+			// the instancers notice the new transform and rebuild their caches
+			cacheOrigin = new BlockPos(cX, cY, cZ);
+		}
 	}
 
 	@Override
@@ -1,14 +1,23 @@
 package com.jozufozu.flywheel.backend.instancing.batching;
 
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.system.MemoryUtil;
+
 import com.jozufozu.flywheel.api.InstanceData;
 import com.jozufozu.flywheel.api.struct.Batched;
 import com.jozufozu.flywheel.backend.instancing.AbstractInstancer;
-import com.jozufozu.flywheel.backend.instancing.TaskEngine;
 import com.jozufozu.flywheel.backend.model.DirectVertexConsumer;
 import com.jozufozu.flywheel.core.model.Model;
 import com.jozufozu.flywheel.core.model.ModelTransformer;
+import com.jozufozu.flywheel.util.MatrixWrite;
 import com.mojang.blaze3d.vertex.PoseStack;
 import com.mojang.blaze3d.vertex.VertexConsumer;
+import com.mojang.blaze3d.vertex.VertexFormat;
+import com.mojang.math.Matrix3f;
+import com.mojang.math.Matrix4f;
 
 public class CPUInstancer<D extends InstanceData> extends AbstractInstancer<D> {
 
@@ -16,16 +25,54 @@ public class CPUInstancer<D extends InstanceData> extends AbstractInstancer<D> {
 
 	final ModelTransformer sbb;
 
+	/**
+	 * The transformed vertices of every instance, in cache space and without the view transform.
+	 */
+	private ByteBuffer cache;
+
+	/**
+	 * What the cache was built with. If any of it changes, every instance has to be transformed again.
+	 */
+	private VertexFormat cacheFormat;
+	private boolean cacheDiffuse;
+	private Matrix4f cacheTransform;
+
 	public CPUInstancer(Batched<D> type, Model modelData) {
-		super(type::create, modelData);
+		super(type, modelData);
 		batchingType = type;
 
 		sbb = new ModelTransformer(modelData);
 	}
 
-	void submitTasks(PoseStack stack, TaskEngine pool, DirectVertexConsumer consumer) {
+	/**
+	 * Queue tasks to draw every instance into the given consumer.
+	 *
+	 * <p>
+	 *     Only instances that were marked dirty since the last frame are transformed, into the cache. The cache is
+	 *     then copied out in large spans, and the view transform is applied to the copied positions on the way.
+	 * </p>
+	 *
+	 * @param stack    The transform from world space to cache space.
+	 * @param view     The transform from cache space to what the consumer expects.
+	 * @param tasks    Where to put the tasks.
+	 * @param consumer The consumer to draw into.
+	 */
+	void collectTasks(PoseStack stack, Matrix4f view, List<Runnable> tasks, DirectVertexConsumer consumer) {
 		int instances = getInstanceCount();
 
+		if (instances == 0 || sbb.isEmpty()) {
+			return;
+		}
+
+		if (sbb.context.fullNormalTransform) {
+			// the normals would depend on the view transform too
+			collectUncachedTasks(stack, view, tasks, consumer);
+			return;
+		}
+
+		boolean invalid = ensureCache(stack, consumer);
+		float[] viewMatrix = unpackAffine(view);
+
 		while (instances > 0) {
 			int end = instances;
 			instances -= 512;
@@ -35,11 +82,103 @@ public class CPUInstancer<D extends InstanceData> extends AbstractInstancer<D> {
 
 			DirectVertexConsumer sub = consumer.split(verts);
 
-			pool.submit(() -> drawRange(stack, sub, start, end));
+			tasks.add(() -> drawRange(stack, viewMatrix, sub, start, end, invalid));
 		}
 	}
 
-	private void drawRange(PoseStack stack, VertexConsumer buffer, int from, int to) {
+	private void collectUncachedTasks(PoseStack stack, Matrix4f view, List<Runnable> tasks, DirectVertexConsumer consumer) {
+		PoseStack full = new PoseStack();
+		full.last()
+				.pose()
+				.load(view);
+		full.last()
+				.pose()
+				.multiply(stack.last()
+						.pose());
+		full.last()
+				.normal()
+				.load(new Matrix3f(view));
+		full.last()
+				.normal()
+				.mul(stack.last()
+						.normal());
+
+		int instances = getInstanceCount();
+
+		while (instances > 0) {
+			int end = instances;
+			instances -= 512;
+			int start = Math.max(instances, 0);
+
+			int verts = getModelVertexCount() * (end - start);
+
+			DirectVertexConsumer sub = consumer.split(verts);
+
+			tasks.add(() -> drawRange(full, sub, start, end));
+		}
+	}
+
+	/**
+	 * Make sure the cache can hold every instance.
+	 *
+	 * @return {@code true} if everything in the cache is stale.
+	 */
+	private boolean ensureCache(PoseStack stack, DirectVertexConsumer consumer) {
+		boolean invalid = consumer.format != cacheFormat || sbb.context.outputColorDiffuse != cacheDiffuse || !stack.last()
+				.pose()
+				.equals(cacheTransform);
+
+		cacheFormat = consumer.format;
+		cacheDiffuse = sbb.context.outputColorDiffuse;
+		cacheTransform = stack.last()
+				.pose()
+				.copy();
+
+		int byteSize = getVertexCount() * consumer.getStride();
+
+		if (cache == null) {
+			cache = MemoryUtil.memAlloc(byteSize);
+		} else if (byteSize > cache.capacity()) {
+			// anything new in the cache was marked dirty when it was added
+			cache = MemoryUtil.memRealloc(cache, byteSize);
+		}
+
+		return invalid;
+	}
+
+	private void drawRange(PoseStack stack, float[] view, DirectVertexConsumer buffer, int from, int to, boolean invalid) {
+		ModelTransformer.Params params = new ModelTransformer.Params();
+
+		int modelVertexCount = getModelVertexCount();
+		int stride = buffer.getStride();
+		int vertexCount = modelVertexCount * (to - from);
+
+		DirectVertexConsumer cached = new DirectVertexConsumer(MemoryUtil.memSlice(cache, from * modelVertexCount * stride, vertexCount * stride), cacheFormat, vertexCount);
+
+		for (D d : data.subList(from, to)) {
+			// always clear the flag, so a stale cache doesn't leave it set for the next frame
+			if (d.checkDirtyAndClear() | invalid) {
+				params.loadDefault();
+
+				batchingType.transform(d, params);
+
+				sbb.renderInto(params, stack, cached);
+			} else {
+				cached.reserve(modelVertexCount);
+			}
+		}
+
+		long src = MemoryUtil.memAddress(cache, from * modelVertexCount * stride);
+		long dst = buffer.reserve(vertexCount);
+		MemoryUtil.memCopy(src, dst, (long) vertexCount * stride);
+
+		int position = buffer.getPositionOffset();
+		if (position >= 0) {
+			transformPositions(dst + position, vertexCount, stride, view);
+		}
+	}
+
+	private void drawRange(PoseStack stack, DirectVertexConsumer buffer, int from, int to) {
 		ModelTransformer.Params params = new ModelTransformer.Params();
 
 		for (D d : data.subList(from, to)) {
@@ -51,6 +190,42 @@ public class CPUInstancer<D extends InstanceData> extends AbstractInstancer<D> {
 		}
 	}
 
+	/**
+	 * Transform the positions of the given vertices in place.
+	 *
+	 * @param m The first three rows of an affine matrix, row major.
+	 */
+	private static void transformPositions(long ptr, int vertexCount, int stride, float[] m) {
+		float m00 = m[0], m01 = m[1], m02 = m[2], m03 = m[3];
+		float m10 = m[4], m11 = m[5], m12 = m[6], m13 = m[7];
+		float m20 = m[8], m21 = m[9], m22 = m[10], m23 = m[11];
+
+		for (int i = 0; i < vertexCount; i++, ptr += stride) {
+			float x = MemoryUtil.memGetFloat(ptr);
+			float y = MemoryUtil.memGetFloat(ptr + 4);
+			float z = MemoryUtil.memGetFloat(ptr + 8);
+			MemoryUtil.memPutFloat(ptr, m00 * x + m01 * y + m02 * z + m03);
+			MemoryUtil.memPutFloat(ptr + 4, m10 * x + m11 * y + m12 * z + m13);
+			MemoryUtil.memPutFloat(ptr + 8, m20 * x + m21 * y + m22 * z + m23);
+		}
+	}
+
+	private static float[] unpackAffine(Matrix4f mat) {
+		float[] out = new float[12];
+		try (MemoryStack stack = MemoryStack.stackPush()) {
+			long ptr = stack.nmalloc(16 * 4);
+			((MatrixWrite) (Object) mat).flywheel$writeUnsafe(ptr);
+
+			// column major in, row major out
+			for (int row = 0; row < 3; row++) {
+				for (int col = 0; col < 4; col++) {
+					out[row * 4 + col] = MemoryUtil.memGetFloat(ptr + (col * 4L + row) * 4);
+				}
+			}
+		}
+		return out;
+	}
+
 	void drawAll(PoseStack stack, VertexConsumer buffer) {
 		ModelTransformer.Params params = new ModelTransformer.Params();
 		for (D d : data) {
@@ -63,14 +238,25 @@ public class CPUInstancer<D extends InstanceData> extends AbstractInstancer<D> {
 	}
 
 	void setup() {
+		flushColumnGrowth();
+
 		if (anyToRemove) {
-			data.removeIf(InstanceData::isRemoved);
+			removeDeletedInstances();
 			anyToRemove = false;
 		}
 	}
 
+	void delete() {
+		freeColumns();
+
+		if (cache != null) {
+			MemoryUtil.memFree(cache);
+			cache = null;
+		}
+	}
+
 	@Override
 	public void notifyDirty() {
-		// noop
+		// the dirty flags are checked as each instance is drawn
 	}
 }
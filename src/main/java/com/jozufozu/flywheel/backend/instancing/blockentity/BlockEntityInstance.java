@@ -12,6 +12,7 @@ import com.jozufozu.flywheel.util.box.GridAlignedBB;
 import com.jozufozu.flywheel.util.box.ImmutableBox;
 
 import net.minecraft.core.BlockPos;
+import net.minecraft.core.Vec3i;
 import net.minecraft.world.level.block.entity.BlockEntity;
 import net.minecraft.world.level.block.state.BlockState;
 
@@ -36,7 +37,7 @@ public abstract class BlockEntityInstance<T extends BlockEntity> extends Abstrac
 
 	protected final T blockEntity;
 	protected final BlockPos pos;
-	protected final BlockPos instancePos;
+	protected BlockPos instancePos;
 	protected final BlockState blockState;
 
 	public BlockEntityInstance(MaterialManager materialManager, T blockEntity) {
@@ -76,6 +77,11 @@ public abstract class BlockEntityInstance<T extends BlockEntity> extends Abstrac
 		return pos;
 	}
 
+	@Override
+	public void onOriginMoved(Vec3i offset) {
+		instancePos = getInstancePosition();
+	}
+
 	protected Material<ModelData> getTransformMaterial() {
         return materialManager.defaultCutout().material(Materials.TRANSFORMED);
     }
@@ -88,4 +94,9 @@ public abstract class BlockEntityInstance<T extends BlockEntity> extends Abstrac
 	public ImmutableBox getVolume() {
 		return GridAlignedBB.from(pos);
 	}
+
+	@Override
+	public ImmutableBox getRenderVolume() {
+		return GridAlignedBB.from(blockEntity.getRenderBoundingBox());
+	}
 }
@@ -0,0 +1,171 @@
+package com.jozufozu.flywheel.backend.instancing.indirect;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import javax.annotation.Nullable;
+
+import com.jozufozu.flywheel.api.MaterialGroup;
+import com.jozufozu.flywheel.backend.RenderLayer;
+import com.jozufozu.flywheel.backend.gl.GlStateTracker;
+import com.jozufozu.flywheel.backend.instancing.Engine;
+import com.jozufozu.flywheel.backend.instancing.TaskEngine;
+import com.jozufozu.flywheel.backend.instancing.instancing.InstancingEngine;
+import com.jozufozu.flywheel.core.compile.ProgramCompiler;
+import com.jozufozu.flywheel.core.shader.WorldProgram;
+import com.jozufozu.flywheel.event.RenderLayerEvent;
+import com.jozufozu.flywheel.util.FlwUtil;
+import com.jozufozu.flywheel.util.WeakHashSet;
+import com.mojang.math.Matrix4f;
+
+import net.minecraft.client.Camera;
+import net.minecraft.client.renderer.RenderType;
+import net.minecraft.client.renderer.culling.Frustum;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.Vec3i;
+import net.minecraft.util.Mth;
+
+/**
+ * An engine that draws every instancer of a material with one {@code glMultiDrawElementsIndirect}.
+ *
+ * <p>
+ *     Functionally identical to the {@link InstancingEngine}, but instead of one VAO and one draw call per model,
+ *     each material owns a single instance buffer and VAO, and each model is just one command in an indirect buffer.
+ * </p>
+ */
+public class IndirectEngine<P extends WorldProgram> implements Engine {
+
+	protected BlockPos originCoordinate = BlockPos.ZERO;
+
+	protected final ProgramCompiler<P> context;
+
+	protected final Map<RenderLayer, Map<RenderType, IndirectMaterialGroup<P>>> layers;
+
+	private final WeakHashSet<InstancingEngine.OriginShiftListener> listeners;
+
+	public IndirectEngine(ProgramCompiler<P> context) {
+		this.context = context;
+
+		this.listeners = new WeakHashSet<>();
+
+		this.layers = new EnumMap<>(RenderLayer.class);
+		for (RenderLayer value : RenderLayer.values()) {
+			layers.put(value, new HashMap<>());
+		}
+	}
+
+	/**
+	 * Get a material group that will render in the given layer with the given type.
+	 *
+	 * @param layer The {@link RenderLayer} you want to draw in.
+	 * @param type The {@link RenderType} you need to draw with.
+	 * @return A material group whose children will
+	 */
+	@Override
+	public MaterialGroup state(RenderLayer layer, RenderType type) {
+		return layers.get(layer).computeIfAbsent(type, t -> new IndirectMaterialGroup<>(this, t));
+	}
+
+	/**
+	 * Render every model for every material.
+	 */
+	@Override
+	public void render(TaskEngine taskEngine, RenderLayerEvent event) {
+		GlStateTracker.State restoreState = GlStateTracker.getRestoreState();
+
+		double camX = event.camX - originCoordinate.getX();
+		double camY = event.camY - originCoordinate.getY();
+		double camZ = event.camZ - originCoordinate.getZ();
+
+		Matrix4f viewProjection = Matrix4f.createTranslateMatrix((float) -camX, (float) -camY, (float) -camZ);
+		viewProjection.multiplyBackward(event.viewProjection);
+
+		getGroupsToRender(event.getLayer()).forEach(group -> group.render(viewProjection, camX, camY, camZ, event.getLayer()));
+
+		restoreState.restore();
+	}
+
+	private Stream<IndirectMaterialGroup<P>> getGroupsToRender(@Nullable RenderLayer layer) {
+		if (layer != null) {
+			return layers.get(layer)
+					.values()
+					.stream();
+		} else {
+			return layers.values()
+					.stream()
+					.flatMap(FlwUtil::mapValues);
+		}
+	}
+
+	@Override
+	public void delete() {
+		for (Map<RenderType, IndirectMaterialGroup<P>> groups : layers.values()) {
+
+			groups.values().forEach(IndirectMaterialGroup::delete);
+		}
+	}
+
+	@Override
+	public Vec3i getOriginCoordinate() {
+		return originCoordinate;
+	}
+
+	public void addListener(InstancingEngine.OriginShiftListener listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * Maintain the integer origin coordinate to be within {@link InstancingEngine#MAX_ORIGIN_DISTANCE} of the camera in
+	 * all directions.
+	 *
+	 * This prevents floating point precision issues at high coordinates.
+	 */
+	@Override
+	public void beginFrame(Camera info, Frustum frustum) {
+		int cX = Mth.floor(info.getPosition().x);
+		int cY = Mth.floor(info.getPosition().y);
+		int cZ = Mth.floor(info.getPosition().z);
+
+		int dX = cX - originCoordinate.getX();
+		int dY = cY - originCoordinate.getY();
+		int dZ = cZ - originCoordinate.getZ();
+
+		int maxDistance = InstancingEngine.MAX_ORIGIN_DISTANCE;
+		if (Math.abs(dX) > maxDistance || Math.abs(dY) > maxDistance || Math.abs(dZ) > maxDistance) {
+			shiftOrigin(new BlockPos(cX, cY, cZ));
+		}
+	}
+
+	private void shiftOrigin(BlockPos newOrigin) {
+		Vec3i offset = newOrigin.subtract(originCoordinate);
+		originCoordinate = newOrigin;
+
+		boolean moved = layers.values()
+				.stream()
+				.flatMap(FlwUtil::mapValues)
+				.allMatch(group -> group.shiftOrigin(offset));
+
+		if (moved) {
+			listeners.forEach(listener -> listener.onOriginMoved(offset));
+			return;
+		}
+
+		for (Map<RenderType, IndirectMaterialGroup<P>> groups : layers.values()) {
+			groups.values().forEach(IndirectMaterialGroup::clear);
+		}
+
+		listeners.forEach(InstancingEngine.OriginShiftListener::onOriginShift);
+	}
+
+	@Override
+	public void addDebugInfo(List<String> info) {
+		info.add("GL43 Multi Draw Indirect");
+		info.add("Instances: " + getGroupsToRender(null).mapToInt(IndirectMaterialGroup::getInstanceCount).sum());
+		info.add("Vertices: " + getGroupsToRender(null).mapToInt(IndirectMaterialGroup::getVertexCount).sum());
+		info.add("Draw calls: " + getGroupsToRender(null).mapToInt(IndirectMaterialGroup::getDrawCount).sum());
+		info.add("Origin: " + originCoordinate.getX() + ", " + originCoordinate.getY() + ", " + originCoordinate.getZ());
+	}
+}
@@ -0,0 +1,161 @@
+package com.jozufozu.flywheel.backend.instancing.indirect;
+
+import org.lwjgl.system.MemoryUtil;
+
+import com.jozufozu.flywheel.api.InstanceData;
+import com.jozufozu.flywheel.api.struct.Instanced;
+import com.jozufozu.flywheel.api.struct.StructWriter;
+import com.jozufozu.flywheel.backend.instancing.AbstractInstancer;
+import com.jozufozu.flywheel.backend.model.BufferedModel;
+import com.jozufozu.flywheel.backend.model.ModelPool;
+import com.jozufozu.flywheel.core.model.Model;
+
+/**
+ * An instancer whose data lives in a slice of its material's shared instance buffer.
+ *
+ * <p>
+ *     Instancers don't own any GL objects. Each frame the material assigns every instancer a
+ *     {@link #getBaseInstance() base instance}, and the instancer becomes one command in a multi-draw.
+ * </p>
+ */
+public class IndirectInstancer<D extends InstanceData> extends AbstractInstancer<D> {
+
+	private ModelPool.PooledModel model;
+	private boolean initialized;
+	private boolean deleted;
+
+	private int baseInstance = -1;
+	private boolean moved;
+
+	protected boolean anyToUpdate;
+
+	public IndirectInstancer(Instanced<D> type, Model model) {
+		super(type, model);
+	}
+
+	@Override
+	public void notifyDirty() {
+		anyToUpdate = true;
+	}
+
+	public void init(ModelPool pool) {
+		if (isInitialized()) return;
+
+		initialized = true;
+
+		model = pool.alloc(modelData, $ -> {});
+	}
+
+	public boolean isInitialized() {
+		return initialized;
+	}
+
+	public boolean isEmpty() {
+		return !anyToUpdate && !anyToRemove && data.isEmpty();
+	}
+
+	/**
+	 * Remove deleted instances and claim a slice of the shared instance buffer.
+	 *
+	 * @param baseInstance The index of the first instance in the shared buffer.
+	 * @return The number of instances in the slice.
+	 */
+	int prepare(int baseInstance) {
+		flushColumnGrowth();
+
+		if (anyToRemove) {
+			removeDeletedInstances();
+			anyToRemove = false;
+		}
+
+		if (this.baseInstance != baseInstance) {
+			this.baseInstance = baseInstance;
+			moved = true;
+		}
+
+		return data.size();
+	}
+
+	/**
+	 * Force the next {@link #write} to write every instance, e.g. because the shared buffer was reallocated.
+	 */
+	void markMoved() {
+		moved = true;
+	}
+
+	boolean needsWrite() {
+		return moved || anyToUpdate;
+	}
+
+	/**
+	 * Write changed instances into the shared buffer.
+	 *
+	 * @param writer A writer positioned at the start of the shared buffer.
+	 */
+	void write(StructWriter<D> writer) {
+		final int size = data.size();
+
+		if (moved) {
+			writer.seek(baseInstance);
+			for (D element : data) {
+				element.checkDirtyAndClear();
+				writer.write(element);
+			}
+		} else if (anyToUpdate) {
+			boolean sequential = false;
+			for (int i = 0; i < size; i++) {
+				final D element = data.get(i);
+				if (element.checkDirtyAndClear()) {
+					if (!sequential) {
+						writer.seek(baseInstance + i);
+					}
+					writer.write(element);
+					sequential = true;
+				} else {
+					sequential = false;
+				}
+			}
+		}
+
+		moved = false;
+		anyToUpdate = false;
+	}
+
+	/**
+	 * Write this instancer's draw command.
+	 *
+	 * @param ptr The address of the command.
+	 * @return false if there is nothing to draw, in which case nothing was written.
+	 */
+	boolean writeCommand(long ptr) {
+		if (deleted || model == null || !model.valid() || data.isEmpty()) return false;
+
+		model.writeIndirectCommand(ptr);
+		MemoryUtil.memPutInt(ptr + 4, data.size());
+		MemoryUtil.memPutInt(ptr + 16, baseInstance);
+		return true;
+	}
+
+	ModelPool.PooledModel getModel() {
+		return model;
+	}
+
+	int getBaseInstance() {
+		return baseInstance;
+	}
+
+	/**
+	 * Free acquired resources. All other Instancer methods are undefined behavior after calling delete.
+	 */
+	public void delete() {
+		if (deleted) return;
+
+		deleted = true;
+
+		if (model != null) {
+			model.delete();
+		}
+
+		freeColumns();
+	}
+}
@@ -0,0 +1,275 @@
+package com.jozufozu.flywheel.backend.instancing.indirect;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import org.lwjgl.opengl.GL43;
+import org.lwjgl.system.MemoryUtil;
+
+import com.jozufozu.flywheel.Flywheel;
+import com.jozufozu.flywheel.api.InstanceData;
+import com.jozufozu.flywheel.api.Instancer;
+import com.jozufozu.flywheel.api.Material;
+import com.jozufozu.flywheel.api.struct.Instanced;
+import com.jozufozu.flywheel.api.struct.StructWriter;
+import com.jozufozu.flywheel.backend.gl.GlPrimitive;
+import com.jozufozu.flywheel.backend.gl.GlVertexArray;
+import com.jozufozu.flywheel.backend.gl.buffer.GlBuffer;
+import com.jozufozu.flywheel.backend.gl.buffer.GlBufferType;
+import com.jozufozu.flywheel.backend.gl.buffer.GlBufferUsage;
+import com.jozufozu.flywheel.backend.gl.buffer.MappedBuffer;
+import com.jozufozu.flywheel.backend.gl.buffer.MappedGlBuffer;
+import com.jozufozu.flywheel.backend.gl.versioned.GlCompat;
+import com.jozufozu.flywheel.backend.model.BufferedModel;
+import com.jozufozu.flywheel.backend.model.ElementBuffer;
+import com.jozufozu.flywheel.backend.model.ModelPool;
+import com.jozufozu.flywheel.core.layout.BufferLayout;
+import com.jozufozu.flywheel.core.model.Model;
+
+import net.minecraft.core.Vec3i;
+
+/**
+ * A collection of Instancers that all have the same format, drawn with a single multi-draw.
+ *
+ * <p>
+ *     The instances of every instancer are packed into one shared buffer, and every model comes from the group's
+ *     {@link ModelPool}, so one VAO can draw all of them. Each instancer becomes one indirect command whose base
+ *     instance points at its slice of the shared buffer.
+ * </p>
+ * @param <D>
+ */
+public class IndirectMaterial<D extends InstanceData> implements Material<D> {
+
+	protected final Map<Object, IndirectInstancer<D>> models = new HashMap<>();
+	protected final Instanced<D> type;
+	protected final List<IndirectInstancer<D>> uninitialized = new ArrayList<>();
+
+	private final BufferLayout instanceFormat;
+	private final List<IndirectInstancer<D>> initialized = new ArrayList<>();
+	private final List<DrawBatch> batches = new ArrayList<>();
+
+	private GlVertexArray vao;
+	private GlBuffer instanceBuffer;
+	private GlBuffer commandBuffer;
+	private ByteBuffer commands;
+	private int instanceCount;
+
+	public IndirectMaterial(Instanced<D> type) {
+		this.type = type;
+		this.instanceFormat = type.getLayout();
+	}
+
+	/**
+	 * Get an instancer for the given model. Calling this method twice with the same key will return the same instancer.
+	 *
+	 * @param key An object that uniquely identifies the model.
+	 * @param modelSupplier A factory that creates the IModel that you want to render.
+	 * @return An instancer for the given model, capable of rendering many copies for little cost.
+	 */
+	@Override
+	public Instancer<D> model(Object key, Supplier<Model> modelSupplier) {
+		return models.computeIfAbsent(key, $ -> {
+			IndirectInstancer<D> instancer = new IndirectInstancer<>(type, modelSupplier.get());
+			uninitialized.add(instancer);
+			return instancer;
+		});
+	}
+
+	void init(ModelPool pool) {
+		if (vao == null) {
+			vao = new GlVertexArray();
+			instanceBuffer = GlBuffer.requestPersistent(GlBufferType.ARRAY_BUFFER);
+			instanceBuffer.setGrowthMargin(instanceFormat.getStride() * 64);
+			commandBuffer = new MappedGlBuffer(GlBufferType.DRAW_INDIRECT_BUFFER, GlBufferUsage.DYNAMIC_DRAW);
+			commands = MemoryUtil.memAlloc(BufferedModel.INDIRECT_COMMAND_SIZE * 16);
+
+			vao.bind();
+			pool.setupState(vao);
+			vao.enableArrays(pool.getAttributeCount() + instanceFormat.getAttributeCount());
+			instanceBuffer.bind();
+			bindInstanceAttributes(pool.getAttributeCount());
+			instanceBuffer.unbind();
+		}
+
+		for (IndirectInstancer<D> instancer : uninitialized) {
+			instancer.init(pool);
+			initialized.add(instancer);
+		}
+		uninitialized.clear();
+	}
+
+	/**
+	 * Pack every instancer into the shared buffer, write changed instances, and build the draw commands.
+	 * Must be called after the model pool has been flushed.
+	 */
+	void prepare(ModelPool pool) {
+		if (vao == null) return;
+
+		int total = 0;
+		boolean anyToWrite = false;
+		for (IndirectInstancer<D> instancer : initialized) {
+			total += instancer.prepare(total);
+			anyToWrite |= instancer.needsWrite();
+		}
+		instanceCount = total;
+
+		vao.bind();
+		instanceBuffer.bind();
+		if (instanceBuffer.ensureCapacity((long) total * instanceFormat.getStride())) {
+			// persistent buffers are recreated when they grow
+			bindInstanceAttributes(pool.getAttributeCount());
+			initialized.forEach(IndirectInstancer::markMoved);
+			anyToWrite = true;
+		}
+
+		if (anyToWrite && total > 0) {
+			try (MappedBuffer mapped = instanceBuffer.getBuffer()) {
+				StructWriter<D> writer = type.getWriter(mapped);
+				for (IndirectInstancer<D> instancer : initialized) {
+					if (instancer.needsWrite()) {
+						instancer.write(writer);
+					}
+				}
+			} catch (Exception e) {
+				Flywheel.LOGGER.error("Error updating IndirectMaterial:", e);
+			}
+		}
+		instanceBuffer.unbind();
+
+		buildCommands();
+	}
+
+	private void buildCommands() {
+		batches.clear();
+
+		int required = initialized.size() * BufferedModel.INDIRECT_COMMAND_SIZE;
+		if (commands.capacity() < required) {
+			commands = MemoryUtil.memRealloc(commands, required * 2);
+		}
+
+		long ptr = MemoryUtil.memAddress(commands);
+		int count = 0;
+		ElementBuffer batchEbo = null;
+		int batchStart = 0;
+
+		for (IndirectInstancer<D> instancer : initialized) {
+			if (!instancer.writeCommand(ptr + (long) count * BufferedModel.INDIRECT_COMMAND_SIZE)) continue;
+
+			ElementBuffer ebo = instancer.getModel().getElementBuffer();
+			if (batchEbo == null || !batchEbo.isCompatible(ebo)) {
+				if (batchEbo != null) {
+					batches.add(new DrawBatch(batchEbo, batchStart, count - batchStart));
+				}
+				batchEbo = ebo;
+				batchStart = count;
+			}
+			count++;
+		}
+
+		if (batchEbo != null) {
+			batches.add(new DrawBatch(batchEbo, batchStart, count - batchStart));
+		}
+
+		commands.limit(count * BufferedModel.INDIRECT_COMMAND_SIZE);
+		commandBuffer.bind();
+		commandBuffer.upload(commands);
+		commandBuffer.unbind();
+		commands.clear();
+	}
+
+	/**
+	 * Draw every instancer, assuming the program is already bound.
+	 */
+	void render() {
+		if (vao == null || batches.isEmpty()) return;
+
+		vao.bind();
+		commandBuffer.bind();
+
+		for (DrawBatch batch : batches) {
+			batch.ebo.bind();
+			GL43.glMultiDrawElementsIndirect(GlPrimitive.TRIANGLES.glEnum, batch.ebo.eboIndexType.getGlEnum(), (long) batch.first * BufferedModel.INDIRECT_COMMAND_SIZE, batch.count, 0);
+		}
+
+		commandBuffer.unbind();
+
+		// persistent mapping sync point
+		instanceBuffer.doneForThisFrame();
+	}
+
+	private void bindInstanceAttributes(int attributeBaseIndex) {
+		vao.bindAttributes(attributeBaseIndex, instanceFormat);
+
+		for (int i = 0; i < instanceFormat.getAttributeCount(); i++) {
+			GlCompat.getInstance().instancedArrays.vertexAttribDivisor(attributeBaseIndex + i, 1);
+		}
+	}
+
+	/**
+	 * @return The number of draw commands submitted last frame.
+	 */
+	public int getDrawCount() {
+		return batches.size();
+	}
+
+	public int getInstanceCount() {
+		return instanceCount;
+	}
+
+	public int getVertexCount() {
+		return models.values().stream().mapToInt(IndirectInstancer::getVertexCount).sum();
+	}
+
+	public boolean nothingToRender() {
+		return models.size() > 0 && models.values()
+				.stream()
+				.allMatch(IndirectInstancer::isEmpty);
+	}
+
+	public void delete() {
+		models.values().forEach(IndirectInstancer::delete);
+		models.clear();
+		initialized.clear();
+		uninitialized.clear();
+		batches.clear();
+
+		if (vao != null) {
+			vao.delete();
+			instanceBuffer.delete();
+			commandBuffer.delete();
+			MemoryUtil.memFree(commands);
+			vao = null;
+		}
+	}
+
+	/**
+	 * Clear all instance data without freeing resources.
+	 */
+	public void clear() {
+		models.values()
+				.forEach(IndirectInstancer::clear);
+	}
+
+	/**
+	 * Move all instance data along with the origin coordinate.
+	 *
+	 * @return false if some data couldn't be moved, and this material should be cleared.
+	 */
+	public boolean shiftOrigin(Vec3i offset) {
+		return models.values()
+				.stream()
+				.allMatch(instancer -> instancer.shiftOrigin(offset));
+	}
+
+	public Collection<IndirectInstancer<D>> getAllInstancers() {
+		return models.values();
+	}
+
+	private record DrawBatch(ElementBuffer ebo, int first, int count) {
+	}
+}
@@ -0,0 +1,159 @@
+package com.jozufozu.flywheel.backend.instancing.indirect;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.jozufozu.flywheel.api.InstanceData;
+import com.jozufozu.flywheel.api.MaterialGroup;
+import com.jozufozu.flywheel.api.struct.Instanced;
+import com.jozufozu.flywheel.api.struct.StructType;
+import com.jozufozu.flywheel.backend.RenderLayer;
+import com.jozufozu.flywheel.backend.model.ModelPool;
+import com.jozufozu.flywheel.core.Formats;
+import com.jozufozu.flywheel.core.compile.ProgramContext;
+import com.jozufozu.flywheel.core.shader.WorldProgram;
+import com.jozufozu.flywheel.util.Textures;
+import com.mojang.math.Matrix4f;
+
+import net.minecraft.client.renderer.RenderType;
+import net.minecraft.core.Vec3i;
+
+/**
+ * A group of materials all rendered with the same GL state.
+ *
+ * All models in a group share one {@link ModelPool}, and each material is drawn with a single multi-draw.
+ */
+public class IndirectMaterialGroup<P extends WorldProgram> implements MaterialGroup {
+
+	protected final IndirectEngine<P> owner;
+	protected final RenderType type;
+
+	private final Map<Instanced<? extends InstanceData>, IndirectMaterial<?>> materials = new HashMap<>();
+
+	private ModelPool modelPool;
+	private int vertexCount;
+	private int instanceCount;
+	private int drawCount;
+
+	public IndirectMaterialGroup(IndirectEngine<P> owner, RenderType type) {
+		this.owner = owner;
+		this.type = type;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public <D extends InstanceData> IndirectMaterial<D> material(StructType<D> type) {
+		if (type instanceof Instanced<D> instanced) {
+			return (IndirectMaterial<D>) materials.computeIfAbsent(instanced, IndirectMaterial::new);
+		} else {
+			throw new ClassCastException("Cannot use type '" + type + "' with GPU instancing.");
+		}
+	}
+
+	/**
+	 * Get the number of instances drawn last frame.
+	 * @return The instance count.
+	 */
+	public int getInstanceCount() {
+		return instanceCount;
+	}
+
+	/**
+	 * Get the number of vertices drawn last frame.
+	 * @return The vertex count.
+	 */
+	public int getVertexCount() {
+		return vertexCount;
+	}
+
+	/**
+	 * Get the number of draw calls issued last frame.
+	 * @return The draw call count.
+	 */
+	public int getDrawCount() {
+		return drawCount;
+	}
+
+	public void render(Matrix4f viewProjection, double camX, double camY, double camZ, RenderLayer layer) {
+		type.setupRenderState();
+		Textures.bindActiveTextures();
+		renderAll(viewProjection, camX, camY, camZ, layer);
+		type.clearRenderState();
+	}
+
+	protected void renderAll(Matrix4f viewProjection, double camX, double camY, double camZ, RenderLayer layer) {
+		ModelPool pool = getModelPool();
+
+		for (IndirectMaterial<?> material : materials.values()) {
+			material.init(pool);
+		}
+
+		// models need their final positions in the pool before commands can be built
+		pool.flush();
+
+		vertexCount = 0;
+		instanceCount = 0;
+		drawCount = 0;
+
+		for (Map.Entry<Instanced<? extends InstanceData>, IndirectMaterial<?>> entry : materials.entrySet()) {
+			IndirectMaterial<?> material = entry.getValue();
+			if (material.nothingToRender()) continue;
+
+			material.prepare(pool);
+
+			P program = owner.context.getProgram(ProgramContext.create(entry.getKey()
+					.getProgramSpec(), Formats.POS_TEX_NORMAL, layer));
+
+			program.bind();
+			program.uploadViewProjection(viewProjection);
+			program.uploadCameraPos(camX, camY, camZ);
+			program.uploadWorldLight(owner.getOriginCoordinate());
+
+			setup(program);
+
+			material.render();
+
+			vertexCount += material.getVertexCount();
+			instanceCount += material.getInstanceCount();
+			drawCount += material.getDrawCount();
+		}
+	}
+
+	protected void setup(P program) {
+
+	}
+
+	private ModelPool getModelPool() {
+		if (modelPool == null) {
+			modelPool = new ModelPool(Formats.POS_TEX_NORMAL);
+		}
+		return modelPool;
+	}
+
+	public void clear() {
+		materials.values().forEach(IndirectMaterial::clear);
+	}
+
+	/**
+	 * Move all instance data along with the origin coordinate.
+	 *
+	 * @return false if some data couldn't be moved, and this group should be cleared.
+	 */
+	public boolean shiftOrigin(Vec3i offset) {
+		return materials.values()
+				.stream()
+				.allMatch(material -> material.shiftOrigin(offset));
+	}
+
+	public void delete() {
+		materials.values()
+				.forEach(IndirectMaterial::delete);
+
+		materials.clear();
+
+		if (modelPool != null) {
+			modelPool.delete();
+			modelPool = null;
+		}
+	}
+}
@@ -1,24 +1,45 @@
 package com.jozufozu.flywheel.backend.instancing.instancing;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL31;
+import org.lwjgl.system.MemoryStack;
 import org.lwjgl.system.MemoryUtil;
 
 import com.jozufozu.flywheel.Flywheel;
 import com.jozufozu.flywheel.api.InstanceData;
 import com.jozufozu.flywheel.api.struct.Instanced;
 import com.jozufozu.flywheel.api.struct.StructWriter;
+import com.jozufozu.flywheel.backend.gl.GlQuery;
 import com.jozufozu.flywheel.backend.gl.GlVertexArray;
 import com.jozufozu.flywheel.backend.gl.buffer.GlBuffer;
 import com.jozufozu.flywheel.backend.gl.buffer.GlBufferType;
+import com.jozufozu.flywheel.backend.gl.buffer.GlBufferUsage;
 import com.jozufozu.flywheel.backend.gl.buffer.MappedBuffer;
+import com.jozufozu.flywheel.backend.gl.buffer.MappedGlBuffer;
 import com.jozufozu.flywheel.backend.gl.versioned.GlCompat;
 import com.jozufozu.flywheel.backend.instancing.AbstractInstancer;
 import com.jozufozu.flywheel.backend.model.BufferedModel;
 import com.jozufozu.flywheel.backend.model.ModelAllocator;
 import com.jozufozu.flywheel.core.layout.BufferLayout;
 import com.jozufozu.flywheel.core.model.Model;
+import com.jozufozu.flywheel.core.shader.CullingProgram;
+import com.jozufozu.flywheel.util.AtomicBitSet;
+import com.mojang.math.Vector4f;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
 
 public class GPUInstancer<D extends InstanceData> extends AbstractInstancer<D> {
 
+	/**
+	 * How many frames of instance data to keep, so we can write the next frame while the GPU reads the last.
+	 */
+	private static final int BUFFERED_FRAMES = 3;
+
 	private final BufferLayout instanceFormat;
 	private final Instanced<D> instancedType;
 
@@ -29,10 +50,53 @@ public class GPUInstancer<D extends InstanceData> extends AbstractInstancer<D> {
 	private boolean deleted;
 	private boolean initialized;
 
+	// GPU culling state, created the first time this instancer is culled.
+	private Vector4f boundingSphere;
+	private GlVertexArray cullVao;
+	private GlBuffer culledVBO;
+	private GlBuffer indirectBuffer;
+	private GlQuery visibleQuery;
+	private BufferLayout culledFormat;
+	private boolean culledThisFrame;
+	/**
+	 * Set when culling was skipped and the draw VAO was pointed back at the instance buffer.
+	 */
+	private boolean drawingUnculled;
+
+	/**
+	 * The capacity of {@link #columns} when it was last uploaded, the column offsets in the VBO depend on it.
+	 */
+	private int uploadedColumnCapacity;
+
+	/**
+	 * Which instances changed this frame, so we only need to visit those.
+	 */
+	private final AtomicBitSet dirtyInstances = new AtomicBitSet(64);
+
+	/**
+	 * Per segment of the instance buffer, the instances that changed since that segment was last written.
+	 */
+	private BitSet[] staleInstances;
+
+	/**
+	 * Per segment of the instance buffer, whether it has to be rewritten from scratch.
+	 */
+	private boolean[] staleSegments;
+
+	/**
+	 * The offset of the segment the instance attributes currently point at.
+	 */
+	private long boundSegmentOffset = -1;
+
 	protected boolean anyToUpdate;
 
+	/**
+	 * Set when we lost track of which instances changed and need to check all of them.
+	 */
+	protected boolean anyToRescan;
+
 	public GPUInstancer(Instanced<D> type, Model model) {
-		super(type::create, model);
+		super(type, model);
 		this.instanceFormat = type.getLayout();
 		instancedType = type;
 	}
@@ -40,6 +104,17 @@ public class GPUInstancer<D extends InstanceData> extends AbstractInstancer<D> {
 	@Override
 	public void notifyDirty() {
 		anyToUpdate = true;
+		anyToRescan = true;
+	}
+
+	@Override
+	public void notifyDirty(int index) {
+		anyToUpdate = true;
+
+		if (!dirtyInstances.set(index)) {
+			// newly added past the end of the set, it'll grow after this frame
+			anyToRescan = true;
+		}
 	}
 
 	public void render() {
@@ -47,16 +122,132 @@ public class GPUInstancer<D extends InstanceData> extends AbstractInstancer<D> {
 
 		vao.bind();
 
-		renderSetup();
+		if (culledThisFrame) {
+			culledThisFrame = false;
 
-		if (glInstanceCount > 0) {
-			model.drawInstances(glInstanceCount);
+			// instance data was uploaded in the culling pass
+			if (glInstanceCount > 0) {
+				indirectBuffer.bind();
+				model.drawInstancesIndirect(0);
+				indirectBuffer.unbind();
+			}
+		} else {
+			if (isCulled()) {
+				// culling was skipped this frame, draw everything straight from the instance buffer
+				boundSegmentOffset = -1;
+				drawingUnculled = true;
+			}
+
+			renderSetup();
+
+			if (isCulled()) {
+				// the culling VAO has to be pointed at the instance buffer again, too
+				boundSegmentOffset = -1;
+			}
+
+			if (glInstanceCount > 0) {
+				model.drawInstances(glInstanceCount);
+			}
 		}
 
 		// persistent mapping sync point
 		instanceVBO.doneForThisFrame();
 	}
 
+	/**
+	 * Upload any changed instances and copy those that are visible into the buffer used for drawing.
+	 *
+	 * <p>
+	 *     The culling program must be bound, and rasterization should be disabled. The number of visible instances
+	 *     never makes it back to the CPU: it is written by a query directly into this instancer's indirect draw
+	 *     command. Frames where this isn't called before {@link #render()} draw every instance without culling.
+	 * </p>
+	 */
+	public void cull(CullingProgram program) {
+		if (invalid()) return;
+
+		if (!isCulled()) {
+			initCulling(program.getCulledLayout());
+		}
+
+		cullVao.bind();
+
+		renderSetup();
+		culledThisFrame = true;
+
+		if (glInstanceCount <= 0) return;
+
+		culledVBO.bind();
+		if (culledVBO.ensureCapacity((long) glInstanceCount * culledFormat.getStride()) || drawingUnculled) {
+			vao.bind();
+			bindCulledAttributes();
+			cullVao.bind();
+			drawingUnculled = false;
+		}
+		culledVBO.unbind();
+
+		indirectBuffer.bind();
+		try (MemoryStack stack = MemoryStack.stackPush()) {
+			ByteBuffer command = stack.calloc(BufferedModel.INDIRECT_COMMAND_SIZE);
+			model.writeIndirectCommand(MemoryUtil.memAddress(command));
+			indirectBuffer.upload(command);
+		}
+		indirectBuffer.unbind();
+
+		program.uploadModelBounds(boundingSphere);
+
+		GL30.glBindBufferBase(GL30.GL_TRANSFORM_FEEDBACK_BUFFER, 0, culledVBO.handle());
+		visibleQuery.begin();
+		GL30.glBeginTransformFeedback(GL11.GL_POINTS);
+		GL31.glDrawArraysInstanced(GL11.GL_POINTS, 0, 1, glInstanceCount);
+		GL30.glEndTransformFeedback();
+		visibleQuery.end();
+		GL30.glBindBufferBase(GL30.GL_TRANSFORM_FEEDBACK_BUFFER, 0, 0);
+
+		// the instance count is the second integer of the draw command
+		GlBufferType.QUERY_BUFFER.bind(indirectBuffer.handle());
+		visibleQuery.writeResultToBuffer(4);
+		GlBufferType.QUERY_BUFFER.unbind();
+	}
+
+	private boolean isCulled() {
+		return cullVao != null;
+	}
+
+	private void initCulling(BufferLayout culledFormat) {
+		this.culledFormat = culledFormat;
+		boundingSphere = modelData.getBoundingSphere();
+
+		culledVBO = new MappedGlBuffer(GlBufferType.ARRAY_BUFFER, GlBufferUsage.DYNAMIC_COPY);
+		culledVBO.setGrowthMargin(culledFormat.getStride() * 16);
+
+		indirectBuffer = new MappedGlBuffer(GlBufferType.DRAW_INDIRECT_BUFFER, GlBufferUsage.DYNAMIC_DRAW);
+		visibleQuery = new GlQuery(GL30.GL_TRANSFORM_FEEDBACK_PRIMITIVES_WRITTEN);
+
+		// the draw VAO now reads instances from the culled buffer
+		vao.bind();
+		culledVBO.bind();
+		bindCulledAttributes();
+		culledVBO.unbind();
+
+		// the culling VAO only needs the instances, everything else is computed in the shader
+		cullVao = new GlVertexArray();
+		cullVao.bind();
+		cullVao.enableArrays(model.getAttributeCount(), instanceFormat.getAttributeCount());
+		instanceVBO.bind();
+		bindInstanceAttributes();
+		instanceVBO.unbind();
+	}
+
+	private void bindCulledAttributes() {
+		int attributeBaseIndex = model.getAttributeCount();
+		vao.bindAttributes(attributeBaseIndex, culledFormat);
+
+		for (int i = 0; i < culledFormat.getAttributeCount(); i++) {
+			GlCompat.getInstance().instancedArrays.vertexAttribDivisor(attributeBaseIndex + i, 1);
+		}
+	}
+
 	private boolean invalid() {
 		return deleted || model == null;
 	}
@@ -77,8 +268,14 @@ public class GPUInstancer<D extends InstanceData> extends AbstractInstancer<D> {
 		vao.bind();
 		vao.enableArrays(model.getAttributeCount() + instanceFormat.getAttributeCount());
 
-		instanceVBO = GlBuffer.requestPersistent(GlBufferType.ARRAY_BUFFER);
+		instanceVBO = GlBuffer.requestPersistent(GlBufferType.ARRAY_BUFFER, BUFFERED_FRAMES);
 		instanceVBO.setGrowthMargin(instanceFormat.getStride() * 16);
+
+		int segments = instanceVBO.getSegmentCount();
+		staleInstances = new BitSet[segments];
+		Arrays.setAll(staleInstances, $ -> new BitSet());
+		staleSegments = new boolean[segments];
+		markAllStale();
 	}
 
 	public boolean isInitialized() {
@@ -93,6 +290,8 @@ public class GPUInstancer<D extends InstanceData> extends AbstractInstancer<D> {
 	 * Free acquired resources. All other Instancer methods are undefined behavior after calling delete.
 	 */
 	public void delete() {
+		freeColumns();
+
 		if (invalid()) return;
 
 		deleted = true;
@@ -101,102 +300,203 @@ public class GPUInstancer<D extends InstanceData> extends AbstractInstancer<D> {
 
 		instanceVBO.delete();
 		vao.delete();
+
+		if (isCulled()) {
+			cullVao.delete();
+			culledVBO.delete();
+			indirectBuffer.delete();
+			visibleQuery.delete();
+		}
 	}
 
 	protected void renderSetup() {
+		flushColumnGrowth();
+
 		if (anyToRemove) {
 			removeDeletedInstances();
 		}
 
 		instanceVBO.bind();
-		if (!realloc()) {
 
-			if (anyToRemove) {
-				clearBufferTail();
-			}
+		if (realloc()) {
+			markAllStale();
+		}
 
-			if (anyToUpdate) {
-				updateBuffer();
-			}
+		collectDirty();
+
+		final int segment = instanceVBO.getSegment();
+
+		if (staleSegments[segment]) {
+			writeAll();
+		} else if (!staleInstances[segment].isEmpty()) {
+			writeStale(staleInstances[segment]);
+		}
 
-			glInstanceCount = data.size();
+		staleSegments[segment] = false;
+		staleInstances[segment].clear();
+
+		glInstanceCount = data.size();
+
+		if (boundSegmentOffset != instanceVBO.getSegmentOffset()) {
+			bindInstanceAttributes();
 		}
 
 		instanceVBO.unbind();
 
-		anyToRemove = anyToUpdate = false;
+		dirtyInstances.clear();
+		dirtyInstances.ensureCapacity(data.size());
+
+		anyToRemove = anyToUpdate = anyToRescan = false;
+	}
+
+	/**
+	 * Every segment of the instance buffer is a separate copy, so changes have to be remembered until each segment
+	 * has been written.
+	 */
+	private void collectDirty() {
+		if (anyToRescan) {
+			markAllStale();
+			return;
+		}
+
+		if (!anyToUpdate) return;
+
+		for (int i = dirtyInstances.nextSetBit(0); i >= 0; i = dirtyInstances.nextSetBit(i + 1)) {
+			for (BitSet stale : staleInstances) {
+				stale.set(i);
+			}
+		}
+	}
+
+	private void markAllStale() {
+		Arrays.fill(staleSegments, true);
 	}
 
-	private void clearBufferTail() {
-		int size = data.size();
-		final int offset = size * instanceFormat.getStride();
-		final long length = instanceVBO.getCapacity() - offset;
-		if (length > 0) {
-			try (MappedBuffer buf = instanceVBO.getBuffer(offset, length)) {
-				MemoryUtil.memSet(MemoryUtil.memAddress(buf.unwrap()), 0, length);
-			} catch (Exception e) {
-				Flywheel.LOGGER.error("Error clearing buffer tail:", e);
+	private void writeAll() {
+		if (data.isEmpty()) return;
+
+		try (MappedBuffer buffer = instanceVBO.getBuffer()) {
+			if (columns != null) {
+				columns.copyAll(MemoryUtil.memAddress0(buffer.unwrap()));
+			} else {
+				StructWriter<D> writer = instancedType.getWriter(buffer);
+				for (D datum : data) {
+					writer.write(datum);
+				}
 			}
+		} catch (Exception e) {
+			Flywheel.LOGGER.error("Error updating GPUInstancer:", e);
 		}
 	}
 
-	private void updateBuffer() {
+	/**
+	 * Write only the runs of stale instances.
+	 *
+	 * <p>
+	 *     Each run is flushed on its own, so moving a single instance only costs a single instance.
+	 * </p>
+	 */
+	private void writeStale(BitSet stale) {
 		final int size = data.size();
 
-		if (size <= 0) return;
+		IntArrayList runs = new IntArrayList();
+		for (int start = stale.nextSetBit(0); start >= 0 && start < size; start = stale.nextSetBit(start)) {
+			int end = Math.min(stale.nextClearBit(start), size);
+			runs.add(start);
+			runs.add(end);
+			start = end;
+		}
+
+		if (runs.isEmpty()) return;
+
+		if (columns != null) {
+			writeStaleColumns(runs);
+			return;
+		}
 
-		try (MappedBuffer mapped = instanceVBO.getBuffer()) {
+		final int stride = instanceFormat.getStride();
+		final long first = (long) runs.getInt(0) * stride;
+		final long last = (long) runs.getInt(runs.size() - 1) * stride;
 
+		// map only the span between the first and last run
+		try (MappedBuffer mapped = instanceVBO.getBufferForFlush(first, last - first)) {
 			final StructWriter<D> writer = instancedType.getWriter(mapped);
 
-			boolean sequential = true;
-			for (int i = 0; i < size; i++) {
-				final D element = data.get(i);
-				if (element.checkDirtyAndClear()) {
-					if (!sequential) {
-						writer.seek(i);
-					}
-					writer.write(element);
-					sequential = true;
-				} else {
-					sequential = false;
+			for (int r = 0; r < runs.size(); r += 2) {
+				int start = runs.getInt(r);
+				int end = runs.getInt(r + 1);
+
+				writer.seek(start);
+				for (int i = start; i < end; i++) {
+					writer.write(data.get(i));
 				}
+
+				mapped.flush((long) start * stride, (long) (end - start) * stride);
 			}
 		} catch (Exception e) {
 			Flywheel.LOGGER.error("Error updating GPUInstancer:", e);
 		}
 	}
 
-	private boolean realloc() {
-		int size = this.data.size();
-		int stride = instanceFormat.getStride();
-		int requiredSize = size * stride;
-		if (instanceVBO.ensureCapacity(requiredSize)) {
+	private void writeStaleColumns(IntArrayList runs) {
+		try (MappedBuffer mapped = instanceVBO.getBufferForFlush(0, columns.byteSize())) {
+			final long ptr = MemoryUtil.memAddress0(mapped.unwrap());
 
-			try (MappedBuffer buffer = instanceVBO.getBuffer()) {
-				StructWriter<D> writer = instancedType.getWriter(buffer);
-				for (D datum : data) {
-					writer.write(datum);
+			for (int r = 0; r < runs.size(); r += 2) {
+				int start = runs.getInt(r);
+				int end = runs.getInt(r + 1);
+
+				for (int column = 0; column < columns.columnCount(); column++) {
+					int elementSize = columns.columnSize(column);
+					long offset = columns.columnOffset(column) + (long) start * elementSize;
+					long length = (long) (end - start) * elementSize;
+
+					MemoryUtil.memCopy(columns.address(column, start), ptr + offset, length);
+					mapped.flush(offset, length);
 				}
-			} catch (Exception e) {
-				Flywheel.LOGGER.error("Error reallocating GPUInstancer:", e);
 			}
+		} catch (Exception e) {
+			Flywheel.LOGGER.error("Error updating GPUInstancer:", e);
+		}
+	}
 
-			glInstanceCount = size;
+	/**
+	 * Make sure the instance buffer is large enough.
+	 *
+	 * @return true if the contents of the buffer were lost or have to be laid out differently.
+	 */
+	private boolean realloc() {
+		if (columns != null) {
+			// the column offsets depend on the capacity
+			boolean grew = instanceVBO.ensureCapacity(columns.byteSize());
 
-			bindInstanceAttributes();
+			if (!grew && uploadedColumnCapacity == columns.capacity()) {
+				return false;
+			}
 
-			return true;
+			uploadedColumnCapacity = columns.capacity();
+		} else if (!instanceVBO.ensureCapacity((long) data.size() * instanceFormat.getStride())) {
+			return false;
 		}
-		return false;
+
+		// the buffer may have a new name, so the attributes need to be bound again
+		boundSegmentOffset = -1;
+		return true;
 	}
 
 	private void bindInstanceAttributes() {
 		int attributeBaseIndex = model.getAttributeCount();
-		vao.bindAttributes(attributeBaseIndex, instanceFormat);
+		int segmentOffset = (int) instanceVBO.getSegmentOffset();
+		if (columns != null) {
+			vao.bindColumns(attributeBaseIndex, columns, segmentOffset);
+		} else {
+			vao.bindAttributes(attributeBaseIndex, instanceFormat, segmentOffset);
+		}
 
 		for (int i = 0; i < instanceFormat.getAttributeCount(); i++) {
             GlCompat.getInstance().instancedArrays.vertexAttribDivisor(attributeBaseIndex + i, 1);
 		}
+
+		boundSegmentOffset = segmentOffset;
 	}
 }
@@ -0,0 +1,294 @@
+package com.jozufozu.flywheel.backend.instancing.instancing;
+
+import static org.lwjgl.opengl.GL11.GL_FLOAT;
+import static org.lwjgl.opengl.GL11.GL_NEAREST;
+import static org.lwjgl.opengl.GL11.GL_RED;
+import static org.lwjgl.opengl.GL11.GL_TEXTURE_2D;
+import static org.lwjgl.opengl.GL11.GL_TEXTURE_MAG_FILTER;
+import static org.lwjgl.opengl.GL11.GL_TEXTURE_MIN_FILTER;
+import static org.lwjgl.opengl.GL11.GL_TRIANGLES;
+import static org.lwjgl.opengl.GL11.glBindTexture;
+import static org.lwjgl.opengl.GL11.glDrawArrays;
+import static org.lwjgl.opengl.GL11.glGetInteger;
+import static org.lwjgl.opengl.GL11.glTexImage2D;
+import static org.lwjgl.opengl.GL12.GL_TEXTURE_BASE_LEVEL;
+import static org.lwjgl.opengl.GL12.GL_TEXTURE_MAX_LEVEL;
+import static org.lwjgl.opengl.GL20.glUniform1i;
+import static org.lwjgl.opengl.GL30.GL_COLOR_ATTACHMENT0;
+import static org.lwjgl.opengl.GL30.GL_DRAW_FRAMEBUFFER_BINDING;
+import static org.lwjgl.opengl.GL30.GL_FRAMEBUFFER;
+import static org.lwjgl.opengl.GL30.GL_R32F;
+
+import javax.annotation.Nullable;
+
+import com.jozufozu.flywheel.Flywheel;
+import com.jozufozu.flywheel.backend.gl.GLSLVersion;
+import com.jozufozu.flywheel.backend.gl.GlTexture;
+import com.jozufozu.flywheel.backend.gl.GlTextureUnit;
+import com.jozufozu.flywheel.backend.gl.GlVertexArray;
+import com.jozufozu.flywheel.backend.gl.shader.GlProgram;
+import com.jozufozu.flywheel.backend.gl.shader.GlShader;
+import com.jozufozu.flywheel.backend.gl.shader.ShaderType;
+import com.jozufozu.flywheel.core.compile.ProgramAssembler;
+import com.mojang.blaze3d.pipeline.RenderTarget;
+import com.mojang.blaze3d.platform.GlStateManager;
+import com.mojang.blaze3d.systems.RenderSystem;
+
+import net.minecraft.resources.ResourceLocation;
+
+/**
+ * A hierarchical depth buffer, or Hi-Z pyramid, built from the depth of a render target.
+ *
+ * <p>
+ *     Each level holds the farthest depth of the 2x2 texels below it, so a single texel of a coarse level says how far
+ *     away everything it covers is at most. Level 0 is half the size of the depth buffer. The culling pass tests the
+ *     screen space bounds of each instance against the level where they cover at most 2x2 texels, and drops instances
+ *     that are farther away than everything there.
+ * </p>
+ *
+ * <p>
+ *     Must be rebuilt whenever the depth buffer changes, and is only valid for the frame it was built in.
+ * </p>
+ */
+public class HiZBuffer {
+
+	public static final GlTextureUnit TEXTURE_UNIT = GlTextureUnit.T6;
+
+	private static final ResourceLocation NAME = Flywheel.rl("hi_z_downsample");
+
+	private static final String VERTEX_SOURCE = """
+			void main() {
+			    // a single triangle covering the whole viewport
+			    vec2 pos = vec2(gl_VertexID == 1 ? 3. : -1., gl_VertexID == 2 ? 3. : -1.);
+			    gl_Position = vec4(pos, 0., 1.);
+			}
+			""";
+
+	private static final String FRAGMENT_SOURCE = """
+			uniform sampler2D uSource;
+
+			out float fragDepth;
+
+			void main() {
+			    ivec2 last = textureSize(uSource, 0) - 1;
+			    ivec2 base = ivec2(gl_FragCoord.xy) * 2;
+
+			    float depth = 0.;
+			    for (int x = 0; x < 3; x++) {
+			        for (int y = 0; y < 3; y++) {
+			            ivec2 pos = base + ivec2(x, y);
+			            // the third row and column are only needed at the far edge of odd sized levels
+			            if ((x == 2 && pos.x != last.x) || (y == 2 && pos.y != last.y)) {
+			                continue;
+			            }
+			            depth = max(depth, texelFetch(uSource, pos, 0).r);
+			        }
+			    }
+
+			    fragDepth = depth;
+			}
+			""";
+
+	@Nullable
+	private DownsampleProgram program;
+	@Nullable
+	private GlVertexArray vao;
+	@Nullable
+	private GlTexture pyramid;
+	private int framebuffer = -1;
+
+	private int depthWidth;
+	private int depthHeight;
+	private int width;
+	private int height;
+	private int levels;
+
+	private boolean valid;
+
+	/**
+	 * Build the pyramid from the depth buffer of the given target.
+	 *
+	 * <p>
+	 *     The target must be bound for drawing, and stays bound afterwards. The program and vertex array bindings are
+	 *     changed, so this should be called inside a {@link com.jozufozu.flywheel.backend.gl.GlStateTracker
+	 *     GlStateTracker} restore block.
+	 * </p>
+	 *
+	 * @return true if the pyramid was built.
+	 */
+	public boolean build(RenderTarget target) {
+		valid = false;
+
+		if (!target.useDepth || glGetInteger(GL_DRAW_FRAMEBUFFER_BINDING) != target.frameBufferId) {
+			return false;
+		}
+
+		if (program == null) {
+			program = compile();
+			vao = new GlVertexArray();
+			pyramid = new GlTexture(GL_TEXTURE_2D);
+			framebuffer = GlStateManager.glGenFramebuffers();
+
+			TEXTURE_UNIT.makeActive();
+			pyramid.bind();
+			pyramid.setParameteri(GL_TEXTURE_MIN_FILTER, GL_NEAREST);
+			pyramid.setParameteri(GL_TEXTURE_MAG_FILTER, GL_NEAREST);
+		}
+
+		TEXTURE_UNIT.makeActive();
+		pyramid.bind();
+
+		depthWidth = target.width;
+		depthHeight = target.height;
+		resize(Math.max(depthWidth / 2, 1), Math.max(depthHeight / 2, 1));
+
+		RenderSystem.disableDepthTest();
+		RenderSystem.depthMask(false);
+		RenderSystem.disableBlend();
+
+		program.bind();
+		glUniform1i(program.uSource, TEXTURE_UNIT.number);
+		vao.bind();
+
+		GlStateManager._glBindFramebuffer(GL_FRAMEBUFFER, framebuffer);
+
+		int levelWidth = width;
+		int levelHeight = height;
+		for (int level = 0; level < levels; level++) {
+			if (level == 0) {
+				glBindTexture(GL_TEXTURE_2D, target.getDepthTextureId());
+			} else {
+				// only the previous level can be read, so drawing to this one isn't a feedback loop
+				pyramid.bind();
+				pyramid.setParameteri(GL_TEXTURE_BASE_LEVEL, level - 1);
+				pyramid.setParameteri(GL_TEXTURE_MAX_LEVEL, level - 1);
+			}
+
+			GlStateManager._glFramebufferTexture2D(GL_FRAMEBUFFER, GL_COLOR_ATTACHMENT0, GL_TEXTURE_2D, pyramid.handle(), level);
+			GlStateManager._viewport(0, 0, levelWidth, levelHeight);
+
+			glDrawArrays(GL_TRIANGLES, 0, 3);
+
+			levelWidth = Math.max(levelWidth / 2, 1);
+			levelHeight = Math.max(levelHeight / 2, 1);
+		}
+
+		pyramid.bind();
+		pyramid.setParameteri(GL_TEXTURE_BASE_LEVEL, 0);
+		pyramid.setParameteri(GL_TEXTURE_MAX_LEVEL, levels - 1);
+
+		GlTextureUnit.T0.makeActive();
+
+		target.bindWrite(true);
+		RenderSystem.depthMask(true);
+
+		valid = true;
+		return true;
+	}
+
+	private void resize(int width, int height) {
+		if (this.width == width && this.height == height) {
+			return;
+		}
+
+		this.width = width;
+		this.height = height;
+		this.levels = 32 - Integer.numberOfLeadingZeros(Math.max(width, height));
+
+		int levelWidth = width;
+		int levelHeight = height;
+		for (int level = 0; level < levels; level++) {
+			glTexImage2D(GL_TEXTURE_2D, level, GL_R32F, levelWidth, levelHeight, 0, GL_RED, GL_FLOAT, 0);
+
+			levelWidth = Math.max(levelWidth / 2, 1);
+			levelHeight = Math.max(levelHeight / 2, 1);
+		}
+	}
+
+	/**
+	 * Mark the pyramid as out of date, until it is built again.
+	 */
+	public void invalidate() {
+		valid = false;
+	}
+
+	public boolean isValid() {
+		return valid;
+	}
+
+	/**
+	 * @return The width of the depth buffer the pyramid was built from.
+	 */
+	public int getDepthWidth() {
+		return depthWidth;
+	}
+
+	public int getDepthHeight() {
+		return depthHeight;
+	}
+
+	/**
+	 * @return The number of levels in the pyramid.
+	 */
+	public int getLevels() {
+		return levels;
+	}
+
+	/**
+	 * Bind the pyramid to {@link #TEXTURE_UNIT}.
+	 */
+	public void bind() {
+		if (pyramid == null) return;
+
+		TEXTURE_UNIT.makeActive();
+		pyramid.bind();
+		GlTextureUnit.T0.makeActive();
+	}
+
+	public void delete() {
+		valid = false;
+
+		if (program != null) {
+			program.delete();
+			program = null;
+		}
+
+		if (vao != null) {
+			vao.delete();
+			vao = null;
+		}
+
+		if (pyramid != null) {
+			pyramid.delete();
+			pyramid = null;
+		}
+
+		if (framebuffer != -1) {
+			GlStateManager._glDeleteFramebuffers(framebuffer);
+			framebuffer = -1;
+		}
+
+		depthWidth = depthHeight = width = height = levels = 0;
+	}
+
+	private static DownsampleProgram compile() {
+		String header = "#version " + GLSLVersion.V330 + "\n";
+
+		GlShader vertex = new GlShader(NAME, ShaderType.VERTEX, header + VERTEX_SOURCE);
+		GlShader fragment = new GlShader(NAME, ShaderType.FRAGMENT, header + FRAGMENT_SOURCE);
+
+		return new ProgramAssembler(NAME).attachShader(vertex)
+				.attachShader(fragment)
+				.link()
+				.deleteLinkedShaders()
+				.build(DownsampleProgram::new);
+	}
+
+	private static class DownsampleProgram extends GlProgram {
+		private final int uSource = getUniformLocation("uSource");
+
+		private DownsampleProgram(ResourceLocation name, int handle) {
+			super(name, handle);
+		}
+	}
+}
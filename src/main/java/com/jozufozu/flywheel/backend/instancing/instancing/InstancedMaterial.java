@@ -11,8 +11,12 @@ import com.jozufozu.flywheel.api.InstanceData;
 import com.jozufozu.flywheel.api.Instancer;
 import com.jozufozu.flywheel.api.Material;
 import com.jozufozu.flywheel.api.struct.Instanced;
+import com.jozufozu.flywheel.backend.Backend;
+import com.jozufozu.flywheel.core.model.AsyncModel;
 import com.jozufozu.flywheel.core.model.Model;
 
+import net.minecraft.core.Vec3i;
+
 /**
  * A collection of Instancers that all have the same format.
  * @param <D>
@@ -43,6 +47,20 @@ public class InstancedMaterial<D extends InstanceData> implements Material<D> {
 		});
 	}
 
+	/**
+	 * Get an instancer whose model is built on the task engine's background queue. The instancer is initialized
+	 * once the model is ready.
+	 */
+	@Override
+	public Instancer<D> modelAsync(Object key, Supplier<Model> modelSupplier) {
+		return models.computeIfAbsent(key, $ -> {
+			AsyncModel model = AsyncModel.supply(key, modelSupplier, Backend.getTaskEngine()::submitBackground);
+			GPUInstancer<D> instancer = new GPUInstancer<>(type, model);
+			uninitialized.add(instancer);
+			return instancer;
+		});
+	}
+
 	public int getInstanceCount() {
 		return models.values().stream().mapToInt(GPUInstancer::getInstanceCount).sum();
 	}
@@ -70,6 +88,17 @@ public class InstancedMaterial<D extends InstanceData> implements Material<D> {
 				.forEach(GPUInstancer::clear);
 	}
 
+	/**
+	 * Move all instance data along with the origin coordinate.
+	 *
+	 * @return false if some data couldn't be moved, and this material should be cleared.
+	 */
+	public boolean shiftOrigin(Vec3i offset) {
+		return models.values()
+				.stream()
+				.allMatch(instancer -> instancer.shiftOrigin(offset));
+	}
+
 	public Collection<GPUInstancer<D>> getAllInstancers() {
 		return models.values();
 	}
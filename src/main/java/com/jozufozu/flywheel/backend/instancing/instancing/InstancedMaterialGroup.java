@@ -3,6 +3,9 @@ package com.jozufozu.flywheel.backend.instancing.instancing;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL30;
+
 import com.jozufozu.flywheel.api.InstanceData;
 import com.jozufozu.flywheel.api.MaterialGroup;
 import com.jozufozu.flywheel.api.struct.Instanced;
@@ -14,11 +17,13 @@ import com.jozufozu.flywheel.backend.model.ModelAllocator;
 import com.jozufozu.flywheel.backend.model.ModelPool;
 import com.jozufozu.flywheel.core.Formats;
 import com.jozufozu.flywheel.core.compile.ProgramContext;
+import com.jozufozu.flywheel.core.shader.CullingProgram;
 import com.jozufozu.flywheel.core.shader.WorldProgram;
 import com.jozufozu.flywheel.util.Textures;
 import com.mojang.math.Matrix4f;
 
 import net.minecraft.client.renderer.RenderType;
+import net.minecraft.core.Vec3i;
 
 /**
  * A group of materials all rendered with the same GL state.
@@ -85,12 +90,20 @@ public class InstancedMaterialGroup<P extends WorldProgram> implements MaterialG
 			InstancedMaterial<?> material = entry.getValue();
 			if (material.nothingToRender()) continue;
 
-			P program = owner.context.getProgram(ProgramContext.create(entry.getKey()
-					.getProgramSpec(), Formats.POS_TEX_NORMAL, layer));
+			ProgramContext context = ProgramContext.create(entry.getKey()
+					.getProgramSpec(), Formats.POS_TEX_NORMAL, layer);
+
+			CullingProgram culling = owner.getCullingProgram(context);
+			if (culling != null) {
+				cull(culling, material, viewProjection);
+			}
+
+			P program = owner.context.getProgram(context);
 
 			program.bind();
 			program.uploadViewProjection(viewProjection);
 			program.uploadCameraPos(camX, camY, camZ);
+			program.uploadWorldLight(owner.getOriginCoordinate());
 
 			setup(program);
 
@@ -102,15 +115,33 @@ public class InstancedMaterialGroup<P extends WorldProgram> implements MaterialG
 		}
 	}
 
+	private void cull(CullingProgram program, InstancedMaterial<?> material, Matrix4f viewProjection) {
+		program.bind();
+		program.uploadFrustum(owner.getFrustum());
+		program.uploadSectionVisibility(owner.getCullingOrigin());
+		program.uploadHiZ(viewProjection, owner.getHiZ());
+
+		GL11.glEnable(GL30.GL_RASTERIZER_DISCARD);
+
+		for (GPUInstancer<?> instancer : material.getAllInstancers()) {
+			instancer.cull(program);
+		}
+
+		GL11.glDisable(GL30.GL_RASTERIZER_DISCARD);
+	}
+
 	private void initializeInstancers() {
 		ModelAllocator allocator = getModelAllocator();
 
-		// initialize all uninitialized instancers...
+		// initialize all uninitialized instancers whose models are ready...
 		for (InstancedMaterial<?> material : materials.values()) {
-			for (GPUInstancer<?> instancer : material.uninitialized) {
-				instancer.init(allocator);
-			}
-			material.uninitialized.clear();
+			material.uninitialized.removeIf(instancer -> {
+				if (instancer.isModelReady()) {
+					instancer.init(allocator);
+					return true;
+				}
+				return instancer.isModelFailed();
+			});
 		}
 
 		if (allocator instanceof ModelPool pool) {
@@ -127,6 +158,17 @@ public class InstancedMaterialGroup<P extends WorldProgram> implements MaterialG
 		materials.values().forEach(InstancedMaterial::clear);
 	}
 
+	/**
+	 * Move all instance data along with the origin coordinate.
+	 *
+	 * @return false if some data couldn't be moved, and this group should be cleared.
+	 */
+	public boolean shiftOrigin(Vec3i offset) {
+		return materials.values()
+				.stream()
+				.allMatch(material -> material.shiftOrigin(offset));
+	}
+
 	public void delete() {
 		materials.values()
 				.forEach(InstancedMaterial::delete);
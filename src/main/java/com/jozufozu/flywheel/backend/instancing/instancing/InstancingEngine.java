@@ -8,33 +8,63 @@ import java.util.stream.Stream;
 
 import javax.annotation.Nullable;
 
+import com.jozufozu.flywheel.api.InstanceData;
 import com.jozufozu.flywheel.api.MaterialGroup;
 import com.jozufozu.flywheel.backend.RenderLayer;
+import com.jozufozu.flywheel.backend.ShadersModHandler;
 import com.jozufozu.flywheel.backend.gl.GlStateTracker;
+import com.jozufozu.flywheel.backend.gl.versioned.GlCompat;
 import com.jozufozu.flywheel.backend.instancing.Engine;
 import com.jozufozu.flywheel.backend.instancing.TaskEngine;
+import com.jozufozu.flywheel.config.FlwConfig;
+import com.jozufozu.flywheel.core.compile.CullingCompiler;
 import com.jozufozu.flywheel.core.compile.ProgramCompiler;
+import com.jozufozu.flywheel.core.compile.ProgramContext;
+import com.jozufozu.flywheel.core.shader.CullingProgram;
 import com.jozufozu.flywheel.core.shader.WorldProgram;
 import com.jozufozu.flywheel.event.RenderLayerEvent;
 import com.jozufozu.flywheel.util.FlwUtil;
+import com.jozufozu.flywheel.util.FrustumPlanes;
 import com.jozufozu.flywheel.util.WeakHashSet;
 import com.mojang.math.Matrix4f;
 
 import net.minecraft.client.Camera;
+import net.minecraft.client.Minecraft;
 import net.minecraft.client.renderer.RenderType;
+import net.minecraft.client.renderer.culling.Frustum;
 import net.minecraft.core.BlockPos;
 import net.minecraft.core.Vec3i;
 import net.minecraft.util.Mth;
 
 public class InstancingEngine<P extends WorldProgram> implements Engine {
 
-	public static int MAX_ORIGIN_DISTANCE = 100;
+	/**
+	 * How far the camera can get from the origin before instances are moved to a new one.
+	 *
+	 * <p>
+	 *     The camera is rebased onto the origin every frame, in double precision, when the view projection is built, so
+	 *     moving around costs nothing. This only bounds how large the float offsets stored in instance data get. At
+	 *     1024 blocks they are still accurate to about a ten thousandth of a block, which is well below anything
+	 *     visible.
+	 * </p>
+	 *
+	 * <p>
+	 *     When the origin does move, the existing instance data is moved along with it, see
+	 *     {@link InstanceData#shiftOrigin}. Only if some instance can't be moved is everything cleared and recreated.
+	 * </p>
+	 */
+	public static int MAX_ORIGIN_DISTANCE = 1024;
 
 	protected BlockPos originCoordinate = BlockPos.ZERO;
 
 	protected final ProgramCompiler<P> context;
+	@Nullable
+	protected final CullingCompiler culling;
 	protected final GroupFactory<P> groupFactory;
 	protected final boolean ignoreOriginCoordinate;
+	protected final FrustumPlanes frustum = new FrustumPlanes();
+	@Nullable
+	protected HiZBuffer hiZ;
 
 	protected final Map<RenderLayer, Map<RenderType, InstancedMaterialGroup<P>>> layers;
 
@@ -44,8 +74,10 @@ public class InstancingEngine<P extends WorldProgram> implements Engine {
 		return new Builder<>(context);
 	}
 
-	public InstancingEngine(ProgramCompiler<P> context, GroupFactory<P> groupFactory, boolean ignoreOriginCoordinate) {
+	public InstancingEngine(ProgramCompiler<P> context, @Nullable CullingCompiler culling, GroupFactory<P> groupFactory, boolean ignoreOriginCoordinate) {
 		this.context = context;
+		this.culling = culling != null && GlCompat.getInstance()
+				.gpuCullingSupported() ? culling : null;
 		this.ignoreOriginCoordinate = ignoreOriginCoordinate;
 
 		this.listeners = new WeakHashSet<>();
@@ -94,11 +126,52 @@ public class InstancingEngine<P extends WorldProgram> implements Engine {
 			viewProjection = event.viewProjection;
 		}
 
+		updateHiZ(event.getLayer());
+
 		getGroupsToRender(event.getLayer()).forEach(group -> group.render(viewProjection, camX, camY, camZ, event.getLayer()));
 
 		restoreState.restore();
 	}
 
+	/**
+	 * Rebuild the depth pyramid from what has been drawn so far, before the instances in the given layer are culled.
+	 */
+	private void updateHiZ(@Nullable RenderLayer layer) {
+		// crumbling draws over the finished frame, and transparent instances are tested against the opaque depth
+		if (layer == null || layer == RenderLayer.TRANSPARENT) {
+			return;
+		}
+
+		if (culling == null || !FlwConfig.get()
+				.hiZCulling() || ShadersModHandler.isShaderPackInUse()) {
+			if (hiZ != null) {
+				hiZ.invalidate();
+			}
+			return;
+		}
+
+		// nothing will be culled, a pyramid from an earlier layer is still conservative
+		if (layers.get(layer)
+				.isEmpty()) {
+			return;
+		}
+
+		if (hiZ == null) {
+			hiZ = new HiZBuffer();
+		}
+
+		hiZ.build(Minecraft.getInstance()
+				.getMainRenderTarget());
+	}
+
+	/**
+	 * @return The depth pyramid to cull against, if one was built this frame.
+	 */
+	@Nullable
+	public HiZBuffer getHiZ() {
+		return hiZ;
+	}
+
 	private Stream<InstancedMaterialGroup<P>> getGroupsToRender(@Nullable RenderLayer layer) {
 		// layer is null when this is called from CrumblingRenderer
 		if (layer != null) {
@@ -112,12 +185,46 @@ public class InstancingEngine<P extends WorldProgram> implements Engine {
 		}
 	}
 
+	/**
+	 * Get the program used to cull instances of the given program on the GPU.
+	 *
+	 * @param ctx The context the instances will be drawn with.
+	 * @return A culling program, or null if the instances should be drawn without culling.
+	 */
+	@Nullable
+	public CullingProgram getCullingProgram(ProgramContext ctx) {
+		if (culling == null || !frustum.isValid()) {
+			return null;
+		}
+
+		return culling.getProgram(ctx);
+	}
+
+	/**
+	 * @return The origin of the coordinate space instances are culled in.
+	 */
+	public Vec3i getCullingOrigin() {
+		return ignoreOriginCoordinate ? BlockPos.ZERO : originCoordinate;
+	}
+
+	/**
+	 * @return The frustum for this frame, relative to the origin coordinate.
+	 */
+	public FrustumPlanes getFrustum() {
+		return frustum;
+	}
+
 	@Override
 	public void delete() {
 		for (Map<RenderType, InstancedMaterialGroup<P>> groups : layers.values()) {
 
 			groups.values().forEach(InstancedMaterialGroup::delete);
 		}
+
+		if (hiZ != null) {
+			hiZ.delete();
+			hiZ = null;
+		}
 	}
 
 	@Override
@@ -130,12 +237,12 @@ public class InstancingEngine<P extends WorldProgram> implements Engine {
 	}
 
 	/**
-	 * Maintain the integer origin coordinate to be within a certain distance from the camera in all directions.
+	 * Maintain the integer origin coordinate to be within {@link #MAX_ORIGIN_DISTANCE} of the camera in all directions.
 	 *
 	 * This prevents floating point precision issues at high coordinates.
 	 */
 	@Override
-	public void beginFrame(Camera info) {
+	public void beginFrame(Camera info, Frustum frustum) {
 		int cX = Mth.floor(info.getPosition().x);
 		int cY = Mth.floor(info.getPosition().y);
 		int cZ = Mth.floor(info.getPosition().z);
@@ -145,20 +252,49 @@ public class InstancingEngine<P extends WorldProgram> implements Engine {
 		int dZ = cZ - originCoordinate.getZ();
 
 		if (Math.abs(dX) > MAX_ORIGIN_DISTANCE || Math.abs(dY) > MAX_ORIGIN_DISTANCE || Math.abs(dZ) > MAX_ORIGIN_DISTANCE) {
+			shiftOrigin(new BlockPos(cX, cY, cZ));
+		}
 
-			originCoordinate = new BlockPos(cX, cY, cZ);
+		if (culling != null) {
+			this.frustum.set(frustum, getCullingOrigin());
+		}
 
-			for (Map<RenderType, InstancedMaterialGroup<P>> groups : layers.values()) {
-				groups.values().forEach(InstancedMaterialGroup::clear);
-			}
+		// the camera moved, last frame's depth says nothing about this one
+		if (hiZ != null) {
+			hiZ.invalidate();
+		}
+	}
+
+	private void shiftOrigin(BlockPos newOrigin) {
+		Vec3i offset = newOrigin.subtract(originCoordinate);
+		originCoordinate = newOrigin;
 
-			listeners.forEach(OriginShiftListener::onOriginShift);
+		boolean moved = layers.values()
+				.stream()
+				.flatMap(FlwUtil::mapValues)
+				.allMatch(group -> group.shiftOrigin(offset));
+
+		if (moved) {
+			listeners.forEach(listener -> listener.onOriginMoved(offset));
+			return;
 		}
+
+		for (Map<RenderType, InstancedMaterialGroup<P>> groups : layers.values()) {
+			groups.values().forEach(InstancedMaterialGroup::clear);
+		}
+
+		listeners.forEach(OriginShiftListener::onOriginShift);
 	}
 
 	@Override
 	public void addDebugInfo(List<String> info) {
 		info.add("GL33 Instanced Arrays");
+		if (culling != null) {
+			info.add("GPU Frustum Culling");
+		}
+		if (hiZ != null && hiZ.isValid()) {
+			info.add("GPU Occlusion Culling");
+		}
 		info.add("Instances: " + getGroupsToRender(null).mapToInt(InstancedMaterialGroup::getInstanceCount).sum());
 		info.add("Vertices: " + getGroupsToRender(null).mapToInt(InstancedMaterialGroup::getVertexCount).sum());
 		info.add("Origin: " + originCoordinate.getX() + ", " + originCoordinate.getY() + ", " + originCoordinate.getZ());
@@ -166,7 +302,20 @@ public class InstancingEngine<P extends WorldProgram> implements Engine {
 
 	@FunctionalInterface
 	public interface OriginShiftListener {
+		/**
+		 * Called after the origin moved and all instance data was cleared. Everything has to be recreated.
+		 */
 		void onOriginShift();
+
+		/**
+		 * Called after the origin moved and all instance data was moved along with it. Anything else kept relative to
+		 * the origin has to be moved too.
+		 *
+		 * @param offset How far the origin moved.
+		 */
+		default void onOriginMoved(Vec3i offset) {
+			onOriginShift();
+		}
 	}
 
 	@FunctionalInterface
@@ -176,6 +325,7 @@ public class InstancingEngine<P extends WorldProgram> implements Engine {
 
 	public static class Builder<P extends WorldProgram> {
 		protected final ProgramCompiler<P> context;
+		protected CullingCompiler culling;
 		protected GroupFactory<P> groupFactory = InstancedMaterialGroup::new;
 		protected boolean ignoreOriginCoordinate;
 
@@ -183,6 +333,14 @@ public class InstancingEngine<P extends WorldProgram> implements Engine {
 			this.context = context;
 		}
 
+		/**
+		 * Cull instances against the view frustum on the GPU, if the driver supports it.
+		 */
+		public Builder<P> setCullingCompiler(CullingCompiler culling) {
+			this.culling = culling;
+			return this;
+		}
+
 		public Builder<P> setGroupFactory(GroupFactory<P> groupFactory) {
 			this.groupFactory = groupFactory;
 			return this;
@@ -194,7 +352,7 @@ public class InstancingEngine<P extends WorldProgram> implements Engine {
 		}
 
 		public InstancingEngine<P> build() {
-			return new InstancingEngine<>(context, groupFactory, ignoreOriginCoordinate);
+			return new InstancingEngine<>(context, culling, groupFactory, ignoreOriginCoordinate);
 		}
 	}
 }
@@ -6,6 +6,11 @@ import com.jozufozu.flywheel.core.layout.BufferLayout;
 
 public interface BufferedModel {
 
+	/**
+	 * The largest indirect draw command, {@code DrawElementsIndirectCommand}, is 5 integers.
+	 */
+	int INDIRECT_COMMAND_SIZE = 20;
+
 	VertexType getType();
 
 	int getVertexCount();
@@ -22,6 +27,22 @@ public interface BufferedModel {
 	 */
 	void drawInstances(int instanceCount);
 
+	/**
+	 * Write an indirect draw command for this model to the given address, with an instance count of 0.
+	 *
+	 * <p>
+	 *     The instance count is always the second 32-bit integer of the command, so it can be filled in later.
+	 *     At most {@link #INDIRECT_COMMAND_SIZE} bytes will be written.
+	 * </p>
+	 */
+	void writeIndirectCommand(long ptr);
+
+	/**
+	 * Draws instances of this model using the command at the given offset in the bound draw indirect buffer,
+	 * assuming the appropriate state is already bound.
+	 */
+	void drawInstancesIndirect(long offset);
+
 	boolean isDeleted();
 
 	void delete();
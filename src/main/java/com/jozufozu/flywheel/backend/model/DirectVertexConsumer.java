@@ -81,6 +81,55 @@ public class DirectVertexConsumer implements VertexConsumer {
 		return uv1 >= 0;
 	}
 
+	/**
+	 * Skip over room for the given number of vertices, so the caller can write them directly.
+	 *
+	 * @param vertexCount The number of vertices that will be written.
+	 * @return The address of the first vertex.
+	 */
+	public long reserve(int vertexCount) {
+		long base = vertexBase;
+		long after = base + (long) vertexCount * stride;
+
+		if (after > end) {
+			throw new BufferOverflowException();
+		}
+
+		vertexBase = after;
+		return base;
+	}
+
+	public int getStride() {
+		return stride;
+	}
+
+	/**
+	 * The offsets of each element within a vertex, or -1 if the format doesn't have it.
+	 */
+	public int getPositionOffset() {
+		return position;
+	}
+
+	public int getNormalOffset() {
+		return normal;
+	}
+
+	public int getColorOffset() {
+		return color;
+	}
+
+	public int getUvOffset() {
+		return uv;
+	}
+
+	public int getOverlayOffset() {
+		return uv1;
+	}
+
+	public int getLightOffset() {
+		return uv2;
+	}
+
 	/**
 	 * Split off the head of this consumer into a new object and advance this object's write-pointer.
 	 * @param vertexCount The number of vertices that must be written to the head.
@@ -15,6 +15,13 @@ public class ElementBuffer {
 		this.elementCount = elementCount;
 	}
 
+	/**
+	 * @return true if both element buffers index out of the same buffer object with the same index type.
+	 */
+	public boolean isCompatible(ElementBuffer other) {
+		return buffer == other.buffer && eboIndexType == other.eboIndexType;
+	}
+
 	public void bind() {
 		buffer.bind();
 	}
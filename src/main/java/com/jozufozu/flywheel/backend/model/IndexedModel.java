@@ -2,6 +2,8 @@ package com.jozufozu.flywheel.backend.model;
 
 import org.lwjgl.opengl.GL20;
 import org.lwjgl.opengl.GL31;
+import org.lwjgl.opengl.GL40;
+import org.lwjgl.system.MemoryUtil;
 
 import com.jozufozu.flywheel.Flywheel;
 import com.jozufozu.flywheel.api.vertex.VertexType;
@@ -75,6 +77,24 @@ public class IndexedModel implements BufferedModel {
 		GL31.glDrawElementsInstanced(primitiveMode.glEnum, ebo.elementCount, ebo.eboIndexType.getGlEnum(), 0, instanceCount);
 	}
 
+	@Override
+	public void writeIndirectCommand(long ptr) {
+		MemoryUtil.memPutInt(ptr, ebo.elementCount);
+		MemoryUtil.memPutInt(ptr + 4, 0);
+		MemoryUtil.memPutInt(ptr + 8, 0);
+		MemoryUtil.memPutInt(ptr + 12, 0);
+		MemoryUtil.memPutInt(ptr + 16, 0);
+	}
+
+	@Override
+	public void drawInstancesIndirect(long offset) {
+		if (!valid()) return;
+
+		ebo.bind();
+
+		GL40.glDrawElementsIndirect(primitiveMode.glEnum, ebo.eboIndexType.getGlEnum(), offset);
+	}
+
 	public boolean isDeleted() {
 		return deleted;
 	}
@@ -4,18 +4,28 @@ import java.util.ArrayList;
 import java.util.List;
 
 import org.lwjgl.opengl.GL32;
+import org.lwjgl.opengl.GL40;
+import org.lwjgl.system.MemoryUtil;
 
 import com.jozufozu.flywheel.Flywheel;
 import com.jozufozu.flywheel.api.vertex.VertexType;
 import com.jozufozu.flywheel.api.vertex.VertexWriter;
 import com.jozufozu.flywheel.backend.gl.GlPrimitive;
 import com.jozufozu.flywheel.backend.gl.GlVertexArray;
-import com.jozufozu.flywheel.backend.gl.buffer.GlBuffer;
 import com.jozufozu.flywheel.backend.gl.buffer.GlBufferType;
 import com.jozufozu.flywheel.backend.gl.buffer.MappedBuffer;
 import com.jozufozu.flywheel.backend.gl.buffer.MappedGlBuffer;
 import com.jozufozu.flywheel.core.model.Model;
 
+/**
+ * Packs many models into one vertex buffer.
+ *
+ * <p>
+ *     Each model owns a range of vertices handed out by a {@link RangeAllocator}. Deleting a model just frees its
+ *     range, and the buffer only grows when no free range fits, keeping its contents. Nothing already in the pool is
+ *     ever moved or re-uploaded.
+ * </p>
+ */
 public class ModelPool implements ModelAllocator {
 
 	protected final VertexType vertexType;
@@ -24,9 +34,9 @@ public class ModelPool implements ModelAllocator {
 
 	private final List<PooledModel> pendingUpload = new ArrayList<>();
 
-	private final GlBuffer vbo;
+	private final RangeAllocator allocator = new RangeAllocator();
 
-	private int vertices;
+	private final MappedGlBuffer vbo;
 
 	private boolean dirty;
 	private boolean anyToRemove;
@@ -54,9 +64,8 @@ public class ModelPool implements ModelAllocator {
 	 */
 	@Override
 	public PooledModel alloc(Model model, Callback callback) {
-		PooledModel bufferedModel = new PooledModel(model, vertices);
+		PooledModel bufferedModel = new PooledModel(model, allocVertices(model.vertexCount()));
 		bufferedModel.callback = callback;
-		vertices += model.vertexCount();
 		models.add(bufferedModel);
 		pendingUpload.add(bufferedModel);
 
@@ -64,16 +73,29 @@ public class ModelPool implements ModelAllocator {
 		return bufferedModel;
 	}
 
+	private int allocVertices(int count) {
+		if (count <= 0) {
+			return 0;
+		}
+
+		int first = allocator.alloc(count);
+
+		if (first == -1) {
+			int capacity = allocator.capacity();
+			allocator.grow(Math.max(capacity * 2, capacity + count));
+			first = allocator.alloc(count);
+		}
+
+		return first;
+	}
+
 	public void flush() {
 		if (dirty) {
 			if (anyToRemove) processDeletions();
 
 			vbo.bind();
-			if (realloc()) {
-				uploadAll();
-			} else {
-				uploadPending();
-			}
+			realloc();
+			uploadPending();
 			vbo.unbind();
 
 			dirty = false;
@@ -82,70 +104,87 @@ public class ModelPool implements ModelAllocator {
 	}
 
 	private void processDeletions() {
+		models.removeIf(model -> {
+			if (model.isDeleted()) {
+				allocator.free(model.first, model.getVertexCount());
+				return true;
+			}
+			return false;
+		});
 
-		// remove deleted models
-		models.removeIf(PooledModel::isDeleted);
-
-		// re-evaluate first vertex for each model
-		int vertices = 0;
-		for (PooledModel model : models) {
-			if (model.first != vertices)
-				pendingUpload.add(model);
-
-			model.first = vertices;
+		pendingUpload.removeIf(PooledModel::isDeleted);
 
-			vertices += model.getVertexCount();
-		}
-
-		this.vertices = vertices;
 		this.anyToRemove = false;
 	}
 
 	/**
+	 * Grow the buffer to cover the allocator's arena. Existing vertices are copied on the GPU.
 	 * Assumes vbo is bound.
 	 *
 	 * @return true if the buffer was reallocated
 	 */
 	private boolean realloc() {
-		return vbo.ensureCapacity((long) vertices * vertexType.getStride());
+		return vbo.ensureCapacityPreserving((long) allocator.capacity() * vertexType.getStride());
 	}
 
-	private void uploadAll() {
-		try (MappedBuffer buffer = vbo.getBuffer()) {
-			VertexWriter writer = vertexType.createWriter(buffer.unwrap());
+	/**
+	 * Map the span covering all pending models and write each of them into its own range.
+	 */
+	private void uploadPending() {
+		int spanStart = Integer.MAX_VALUE;
+		int spanEnd = 0;
 
-			int vertices = 0;
-			for (PooledModel model : models) {
-				model.first = vertices;
+		for (PooledModel model : pendingUpload) {
+			if (model.getVertexCount() <= 0) continue;
 
-				buffer(writer, model);
+			spanStart = Math.min(spanStart, model.first);
+			spanEnd = Math.max(spanEnd, model.first + model.getVertexCount());
+		}
 
-				vertices += model.getVertexCount();
+		if (spanEnd <= spanStart) {
+			for (PooledModel model : pendingUpload) {
+				if (model.callback != null) model.callback.onAlloc(model);
 			}
-
-		} catch (Exception e) {
-			Flywheel.LOGGER.error("Error uploading pooled models:", e);
+			return;
 		}
-	}
 
-	private void uploadPending() {
-		try (MappedBuffer buffer = vbo.getBuffer()) {
+		int stride = vertexType.getStride();
+
+		try (MappedBuffer buffer = vbo.getBufferForFlush((long) spanStart * stride, (long) (spanEnd - spanStart) * stride)) {
 			VertexWriter writer = vertexType.createWriter(buffer.unwrap());
 			for (PooledModel model : pendingUpload) {
-				buffer(writer, model);
+				buffer(writer, model, spanStart);
+				if (model.getVertexCount() > 0) {
+					buffer.flush((long) model.first * stride, (long) model.getVertexCount() * stride);
+				}
 			}
-			pendingUpload.clear();
 		} catch (Exception e) {
 			Flywheel.LOGGER.error("Error uploading pooled models:", e);
 		}
 	}
 
-	private void buffer(VertexWriter writer, PooledModel model) {
-		writer.seekToVertex(model.first);
-		writer.writeVertexList(model.model.getReader());
+	private void buffer(VertexWriter writer, PooledModel model, int spanStart) {
+		if (model.getVertexCount() > 0) {
+			writer.seekToVertex(model.first - spanStart);
+			writer.writeVertexList(model.model.getReader());
+		}
 		if (model.callback != null) model.callback.onAlloc(model);
 	}
 
+	public int getAttributeCount() {
+		return vertexType.getLayout().getAttributeCount();
+	}
+
+	/**
+	 * Bind the pool's vertex buffer to the given VAO. Every model in the pool can then be drawn from it.
+	 * The VAO must be bound externally.
+	 */
+	public void setupState(GlVertexArray vao) {
+		vbo.bind();
+		vao.enableArrays(getAttributeCount());
+		vao.bindAttributes(0, vertexType.getLayout());
+	}
+
 	private void setDirty() {
 		dirty = true;
 	}
@@ -182,9 +221,11 @@ public class ModelPool implements ModelAllocator {
 
 		@Override
 		public void setupState(GlVertexArray vao) {
-			vbo.bind();
-			vao.enableArrays(getAttributeCount());
-			vao.bindAttributes(0, vertexType.getLayout());
+			ModelPool.this.setupState(vao);
+		}
+
+		public ElementBuffer getElementBuffer() {
+			return ebo;
 		}
 
 		@Override
@@ -203,9 +244,27 @@ public class ModelPool implements ModelAllocator {
 			GL32.glDrawElementsInstancedBaseVertex(GlPrimitive.TRIANGLES.glEnum, ebo.elementCount, ebo.eboIndexType.getGlEnum(), 0, instanceCount, first);
 		}
 
+		@Override
+		public void writeIndirectCommand(long ptr) {
+			MemoryUtil.memPutInt(ptr, ebo.elementCount);
+			MemoryUtil.memPutInt(ptr + 4, 0);
+			MemoryUtil.memPutInt(ptr + 8, 0);
+			MemoryUtil.memPutInt(ptr + 12, first);
+			MemoryUtil.memPutInt(ptr + 16, 0);
+		}
+
+		@Override
+		public void drawInstancesIndirect(long offset) {
+			if (!valid()) return;
+
+			ebo.bind();
+
+			GL40.glDrawElementsIndirect(GlPrimitive.TRIANGLES.glEnum, ebo.eboIndexType.getGlEnum(), offset);
+		}
+
 		@Override
 		public boolean isDeleted() {
-			return false;
+			return remove;
 		}
 
 		@Override
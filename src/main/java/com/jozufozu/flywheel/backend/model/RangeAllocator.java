@@ -0,0 +1,106 @@
+package com.jozufozu.flywheel.backend.model;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import it.unimi.dsi.fastutil.longs.LongRBTreeSet;
+
+/**
+ * Hands out ranges of a linear arena using a free list.
+ *
+ * <p>
+ *     Allocation picks the smallest free range that fits, the lowest one if there are several. Freed ranges are merged
+ *     with their neighbors, so the arena only fragments as much as the allocation pattern forces it to. Free ranges
+ *     are indexed both by start, for merging, and by size, so both take logarithmic time however fragmented the arena
+ *     gets.
+ * </p>
+ */
+public class RangeAllocator {
+
+	/**
+	 * Start of each free range, mapped to its length. Adjacent free ranges are always merged.
+	 */
+	private final TreeMap<Integer, Integer> free = new TreeMap<>();
+
+	/**
+	 * The same free ranges, packed as {@code length << 32 | start} so they sort by size first.
+	 */
+	private final LongRBTreeSet bySize = new LongRBTreeSet();
+
+	private int capacity;
+
+	public int capacity() {
+		return capacity;
+	}
+
+	/**
+	 * @return The start of the allocated range, or -1 if no free range is large enough.
+	 */
+	public int alloc(int length) {
+		if (bySize.isEmpty()) {
+			return -1;
+		}
+
+		// the smallest range at least this long
+		long key = pack(length, 0);
+		if (bySize.lastLong() < key) {
+			return -1;
+		}
+		long best = bySize.tailSet(key)
+				.firstLong();
+
+		int start = (int) best;
+		int size = (int) (best >>> 32);
+
+		removeFree(start, size);
+		if (size > length) {
+			addFree(start + length, size - length);
+		}
+
+		return start;
+	}
+
+	public void free(int start, int length) {
+		if (length <= 0) return;
+
+		Map.Entry<Integer, Integer> before = free.floorEntry(start);
+		if (before != null && before.getKey() + before.getValue() == start) {
+			start = before.getKey();
+			length += before.getValue();
+			removeFree(start, before.getValue());
+		}
+
+		Integer after = free.get(start + length);
+		if (after != null) {
+			removeFree(start + length, after);
+			length += after;
+		}
+
+		addFree(start, length);
+	}
+
+	/**
+	 * Extend the arena. The new space becomes free.
+	 */
+	public void grow(int newCapacity) {
+		if (newCapacity <= capacity) return;
+
+		int oldCapacity = capacity;
+		capacity = newCapacity;
+		free(oldCapacity, newCapacity - oldCapacity);
+	}
+
+	private void addFree(int start, int length) {
+		free.put(start, length);
+		bySize.add(pack(length, start));
+	}
+
+	private void removeFree(int start, int length) {
+		free.remove(start);
+		bySize.remove(pack(length, start));
+	}
+
+	private static long pack(int length, int start) {
+		return (long) length << 32 | (start & 0xFFFFFFFFL);
+	}
+}
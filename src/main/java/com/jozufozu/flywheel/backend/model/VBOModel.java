@@ -3,6 +3,8 @@ package com.jozufozu.flywheel.backend.model;
 import static org.lwjgl.opengl.GL11.glDrawArrays;
 
 import org.lwjgl.opengl.GL31;
+import org.lwjgl.opengl.GL40;
+import org.lwjgl.system.MemoryUtil;
 
 import com.jozufozu.flywheel.Flywheel;
 import com.jozufozu.flywheel.api.vertex.VertexType;
@@ -76,6 +78,21 @@ public class VBOModel implements BufferedModel {
 		GL31.glDrawArraysInstanced(primitiveMode.glEnum, 0, getVertexCount(), instanceCount);
 	}
 
+	@Override
+	public void writeIndirectCommand(long ptr) {
+		MemoryUtil.memPutInt(ptr, getVertexCount());
+		MemoryUtil.memPutInt(ptr + 4, 0);
+		MemoryUtil.memPutInt(ptr + 8, 0);
+		MemoryUtil.memPutInt(ptr + 12, 0);
+	}
+
+	@Override
+	public void drawInstancesIndirect(long offset) {
+		if (!valid()) return;
+
+		GL40.glDrawArraysIndirect(primitiveMode.glEnum, offset);
+	}
+
 	public void delete() {
 		if (deleted) return;
 
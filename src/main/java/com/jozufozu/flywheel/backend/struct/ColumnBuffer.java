@@ -0,0 +1,244 @@
+package com.jozufozu.flywheel.backend.struct;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.lwjgl.system.MemoryUtil;
+
+import com.jozufozu.flywheel.core.layout.BufferLayout;
+import com.jozufozu.flywheel.core.layout.LayoutItem;
+
+/**
+ * An off-heap, structure-of-arrays block of instance data.
+ *
+ * <p>
+ *     Each {@link LayoutItem} of the layout gets its own tightly packed column. Column {@code k} starts at
+ *     {@code capacity * offset(k)}, so the block is laid out exactly the way it is bound on the GPU and can be
+ *     uploaded with plain memory copies.
+ * </p>
+ *
+ * <p>
+ *     Handles may write through {@link #address} from worker threads while another thread allocates, so the block
+ *     never moves between sync points. Elements that don't fit are handed out from overflow chunks instead, and only
+ *     moved into a single larger block by {@link #flushGrowth()} at the next sync point, when nothing can be writing.
+ *     Until then {@link #capacity()}, {@link #columnOffset} and {@link #copyAll} only cover the block itself.
+ * </p>
+ */
+public class ColumnBuffer {
+
+	private static final int INITIAL_CAPACITY = 16;
+
+	private final BufferLayout layout;
+	private final int[] sizes;
+	private final int[] offsets;
+	private final int stride;
+
+	private long block;
+	private int capacity;
+	private int size;
+
+	/**
+	 * The address of each column in the block. Only replaced at sync points.
+	 */
+	private long[] columnAddresses;
+
+	/**
+	 * Chunks of {@link #capacity} elements each, holding everything past the end of the block until
+	 * {@link #flushGrowth()}. Replaced as a whole when a chunk is added, so readers on other threads never see a
+	 * partially grown array.
+	 */
+	private volatile long[] overflow = new long[0];
+
+	public ColumnBuffer(BufferLayout layout) {
+		this.layout = layout;
+
+		List<LayoutItem> items = layout.getLayoutItems();
+		sizes = new int[items.size()];
+		offsets = new int[items.size()];
+
+		int offset = 0;
+		for (int i = 0; i < items.size(); i++) {
+			sizes[i] = items.get(i).size();
+			offsets[i] = offset;
+			offset += sizes[i];
+		}
+		stride = offset;
+
+		capacity = INITIAL_CAPACITY;
+		block = MemoryUtil.nmemCalloc(capacity, stride);
+		columnAddresses = computeColumnAddresses(block, capacity);
+	}
+
+	public BufferLayout getLayout() {
+		return layout;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int columnCount() {
+		return sizes.length;
+	}
+
+	/**
+	 * @return The size in bytes of one element of the given column.
+	 */
+	public int columnSize(int column) {
+		return sizes[column];
+	}
+
+	public int capacity() {
+		return capacity;
+	}
+
+	/**
+	 * @return The size in bytes of the whole block, including unused elements.
+	 */
+	public long byteSize() {
+		return (long) capacity * stride;
+	}
+
+	/**
+	 * @return The offset in bytes of the given column from the start of the block.
+	 */
+	public long columnOffset(int column) {
+		return (long) capacity * offsets[column];
+	}
+
+	public long address(int column, int index) {
+		if (index < capacity) {
+			return columnAddresses[column] + (long) index * sizes[column];
+		}
+
+		long chunk = overflow[index / capacity - 1];
+		return chunk + (long) capacity * offsets[column] + (long) (index % capacity) * sizes[column];
+	}
+
+	/**
+	 * Append a zeroed element, spilling into an overflow chunk if the block is full. Calls must not overlap.
+	 *
+	 * @return The index of the new element.
+	 */
+	public int allocate() {
+		int index = size;
+
+		if (index >= capacity * (overflow.length + 1)) {
+			long[] grown = Arrays.copyOf(overflow, overflow.length + 1);
+			grown[overflow.length] = MemoryUtil.nmemCalloc(capacity, stride);
+			overflow = grown;
+		}
+
+		for (int i = 0; i < sizes.length; i++) {
+			MemoryUtil.memSet(address(i, index), 0, sizes[i]);
+		}
+
+		size = index + 1;
+		return index;
+	}
+
+	/**
+	 * @return true if some elements live in overflow chunks, and {@link #flushGrowth()} has work to do.
+	 */
+	public boolean hasOverflow() {
+		return overflow.length > 0;
+	}
+
+	/**
+	 * Copy every column of one element to another.
+	 */
+	public void copy(int from, int to) {
+		for (int i = 0; i < sizes.length; i++) {
+			MemoryUtil.memCopy(address(i, from), address(i, to), sizes[i]);
+		}
+	}
+
+	/**
+	 * Copy every column of an element in another buffer with the same layout into this one.
+	 */
+	public void copyFrom(ColumnBuffer other, int from, int to) {
+		for (int i = 0; i < sizes.length; i++) {
+			MemoryUtil.memCopy(other.address(i, from), address(i, to), sizes[i]);
+		}
+	}
+
+	/**
+	 * Shrink to the given number of elements. The dropped elements are left as they are.
+	 */
+	public void truncate(int newSize) {
+		size = Math.min(size, newSize);
+	}
+
+	public void clear() {
+		size = 0;
+	}
+
+	/**
+	 * Copy the whole block to the given address.
+	 */
+	public void copyAll(long ptr) {
+		MemoryUtil.memCopy(block, ptr, byteSize());
+	}
+
+	/**
+	 * Move everything in the overflow chunks into one block large enough to hold it. Only call this when no other
+	 * thread can be writing to the buffer, the address of every element may change.
+	 */
+	public void flushGrowth() {
+		long[] chunks = overflow;
+		if (chunks.length == 0) {
+			return;
+		}
+
+		int newCapacity = capacity;
+		while (newCapacity < size) {
+			newCapacity *= 2;
+		}
+
+		if (newCapacity != capacity) {
+			long newBlock = MemoryUtil.nmemCalloc(newCapacity, stride);
+
+			for (int i = 0; i < sizes.length; i++) {
+				long dst = newBlock + (long) newCapacity * offsets[i];
+				MemoryUtil.memCopy(columnAddresses[i], dst, (long) Math.min(size, capacity) * sizes[i]);
+
+				for (int c = 0; c < chunks.length; c++) {
+					int first = capacity * (c + 1);
+					int count = Math.min(size - first, capacity);
+					if (count <= 0) break;
+
+					MemoryUtil.memCopy(chunks[c] + (long) capacity * offsets[i], dst + (long) first * sizes[i], (long) count * sizes[i]);
+				}
+			}
+
+			MemoryUtil.nmemFree(block);
+			block = newBlock;
+			capacity = newCapacity;
+			columnAddresses = computeColumnAddresses(newBlock, newCapacity);
+		}
+
+		for (long chunk : chunks) {
+			MemoryUtil.nmemFree(chunk);
+		}
+		overflow = new long[0];
+	}
+
+	public void delete() {
+		for (long chunk : overflow) {
+			MemoryUtil.nmemFree(chunk);
+		}
+		overflow = new long[0];
+		MemoryUtil.nmemFree(block);
+		block = 0;
+		columnAddresses = new long[sizes.length];
+		capacity = size = 0;
+	}
+
+	private long[] computeColumnAddresses(long block, int capacity) {
+		long[] out = new long[offsets.length];
+		for (int i = 0; i < offsets.length; i++) {
+			out[i] = block + (long) capacity * offsets[i];
+		}
+		return out;
+	}
+}
@@ -0,0 +1,30 @@
+package com.jozufozu.flywheel.backend.struct;
+
+import org.lwjgl.system.MemoryUtil;
+
+import com.jozufozu.flywheel.api.struct.StructType;
+import com.jozufozu.flywheel.backend.gl.buffer.VecBuffer;
+import com.jozufozu.flywheel.core.materials.ColumnData;
+
+/**
+ * Interleaves column handles into a regular instance buffer, for backends that don't bind columns directly.
+ */
+public class ColumnWriterUnsafe<S extends ColumnData> extends UnsafeBufferWriter<S> {
+
+	public ColumnWriterUnsafe(VecBuffer backingBuffer, StructType<S> vertexType) {
+		super(backingBuffer, vertexType);
+	}
+
+	@Override
+	protected void writeInternal(S s) {
+		ColumnBuffer columns = s.getColumns();
+		int slot = s.getSlot();
+
+		long ptr = writePointer;
+		for (int i = 0; i < columns.columnCount(); i++) {
+			int size = columns.columnSize(i);
+			MemoryUtil.memCopy(columns.address(i, slot), ptr, size);
+			ptr += size;
+		}
+	}
+}
@@ -19,6 +19,11 @@ public enum BackendType {
 	 * Use GPU instancing to render everything.
 	 */
 	INSTANCING("GL33 Instanced Arrays"),
+
+	/**
+	 * Draw every model in a material with one multi-draw-indirect call.
+	 */
+	INDIRECT("GL43 Multi Draw Indirect"),
 	;
 
 	private static final Map<String, BackendType> lookup;
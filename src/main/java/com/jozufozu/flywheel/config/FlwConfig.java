@@ -5,6 +5,7 @@ import org.apache.commons.lang3.tuple.Pair;
 import net.minecraftforge.common.ForgeConfigSpec;
 import net.minecraftforge.common.ForgeConfigSpec.BooleanValue;
 import net.minecraftforge.common.ForgeConfigSpec.EnumValue;
+import net.minecraftforge.common.ForgeConfigSpec.IntValue;
 import net.minecraftforge.fml.ModLoadingContext;
 import net.minecraftforge.fml.config.ModConfig;
 
@@ -39,6 +40,34 @@ public class FlwConfig {
 		return client.limitUpdates.get();
 	}
 
+	public boolean meshCache() {
+		return client.meshCache.get();
+	}
+
+	public boolean programCache() {
+		return client.programCache.get();
+	}
+
+	public boolean separableShaders() {
+		return client.separableShaders.get();
+	}
+
+	public boolean worldLight() {
+		return client.worldLight.get();
+	}
+
+	public int lightUpdateBudget() {
+		return client.lightUpdateBudget.get();
+	}
+
+	public boolean sectionCulling() {
+		return client.sectionCulling.get();
+	}
+
+	public boolean hiZCulling() {
+		return client.hiZCulling.get();
+	}
+
 	public static void init() {
 	}
 
@@ -46,6 +75,13 @@ public class FlwConfig {
 		public final EnumValue<BackendType> backend;
 		public final BooleanValue debugNormals;
 		public final BooleanValue limitUpdates;
+		public final BooleanValue meshCache;
+		public final BooleanValue programCache;
+		public final BooleanValue separableShaders;
+		public final BooleanValue worldLight;
+		public final IntValue lightUpdateBudget;
+		public final BooleanValue sectionCulling;
+		public final BooleanValue hiZCulling;
 
 		public ClientConfig(ForgeConfigSpec.Builder builder) {
 			backend = builder.comment("Select the backend to use.")
@@ -56,6 +92,27 @@ public class FlwConfig {
 
 			limitUpdates = builder.comment("Enable or disable instance update limiting with distance.")
 					.define("limitUpdates", true);
+
+			meshCache = builder.comment("Enable or disable caching block model meshes on disk between reloads.")
+					.define("meshCache", true);
+
+			programCache = builder.comment("Enable or disable caching compiled shader programs on disk.")
+					.define("programCache", true);
+
+			separableShaders = builder.comment("Link vertex and fragment shaders separately and combine them at draw time. Cuts shader compile time with many materials, but requires addons to set uniforms through GlProgram.")
+					.define("separableShaders", false);
+
+			worldLight = builder.comment("Light instances near the camera from a shared light texture instead of updating their light on the CPU. Instances that set their own light, such as fullbright parts, will be lit by the world instead.")
+					.define("worldLight", false);
+
+			lightUpdateBudget = builder.comment("How many milliseconds per frame may be spent dispatching light updates. Updates that don't fit wait for the next frame.")
+					.defineInRange("lightUpdateBudget", 2, 0, 50);
+
+			sectionCulling = builder.comment("Skip updating and drawing instances in chunk sections that vanilla found to be hidden behind other terrain.")
+					.define("sectionCulling", true);
+
+			hiZCulling = builder.comment("Skip drawing instances that are hidden behind terrain or other instances, by testing them against the depth buffer on the GPU.")
+					.define("hiZCulling", true);
 		}
 	}
 }
@@ -1,9 +1,11 @@
 package com.jozufozu.flywheel.core;
 
 import com.jozufozu.flywheel.Flywheel;
+import com.jozufozu.flywheel.core.compile.CullingCompiler;
 import com.jozufozu.flywheel.core.compile.ProgramCompiler;
 import com.jozufozu.flywheel.core.crumbling.CrumblingProgram;
 import com.jozufozu.flywheel.core.shader.NormalDebugStateProvider;
+import com.jozufozu.flywheel.core.shader.WorldLightStateProvider;
 import com.jozufozu.flywheel.core.shader.WorldProgram;
 import com.jozufozu.flywheel.core.source.FileResolution;
 import com.jozufozu.flywheel.core.source.Resolver;
@@ -19,15 +21,18 @@ public class Contexts {
 
 	public static ProgramCompiler<WorldProgram> WORLD;
 	public static ProgramCompiler<CrumblingProgram> CRUMBLING;
+	public static CullingCompiler WORLD_CULLING;
 
 	public static void flwInit(GatherContextEvent event) {
 		GameStateRegistry.register(NormalDebugStateProvider.INSTANCE);
+		GameStateRegistry.register(WorldLightStateProvider.INSTANCE);
 
 		FileResolution worldBuiltins = Resolver.INSTANCE.get(ResourceUtil.subPath(Names.WORLD, ".glsl"));
 		FileResolution crumblingBuiltins = Resolver.INSTANCE.get(ResourceUtil.subPath(Names.CRUMBLING, ".glsl"));
 
-		WORLD = ProgramCompiler.create(Templates.INSTANCING, WorldProgram::new, worldBuiltins);
-		CRUMBLING = ProgramCompiler.create(Templates.INSTANCING, CrumblingProgram::new, crumblingBuiltins);
+		WORLD = ProgramCompiler.create(Templates.INSTANCING, WorldProgram::new, WorldProgram::new, worldBuiltins);
+		CRUMBLING = ProgramCompiler.create(Templates.INSTANCING, CrumblingProgram::new, CrumblingProgram::new, crumblingBuiltins);
+		WORLD_CULLING = new CullingCompiler(worldBuiltins);
 	}
 
 	public static class Names {
@@ -12,6 +12,8 @@ public class GameStateRegistry {
 
 	private static final List<GameStateProvider> PROVIDERS = new ArrayList<>();
 
+	private static final int MAX_ENUMERATED_PROVIDERS = 4;
+
 	/**
 	 * Registers a game state provider.
 	 * @param provider The provider to register.
@@ -52,6 +54,28 @@ public class GameStateRegistry {
 		return shaderConstants;
 	}
 
+	/**
+	 * Every snapshot the registered providers could produce.
+	 *
+	 * <p>
+	 *     There are 2^n of them, so past {@link #MAX_ENUMERATED_PROVIDERS} providers only the current snapshot is
+	 *     returned.
+	 * </p>
+	 */
+	public static List<StateSnapshot> allSnapshots() {
+		int size = PROVIDERS.size();
+
+		if (size > MAX_ENUMERATED_PROVIDERS) {
+			return List.of(takeSnapshot());
+		}
+
+		List<StateSnapshot> out = new ArrayList<>(1 << size);
+		for (long bits = 0; bits < 1L << size; bits++) {
+			out.add(new StateSnapshot(BitSet.valueOf(new long[] { bits })));
+		}
+		return out;
+	}
+
 	public static void _clear() {
 		PROVIDERS.clear();
 	}
@@ -2,6 +2,8 @@ package com.jozufozu.flywheel.core;
 
 import com.jozufozu.flywheel.Flywheel;
 import com.jozufozu.flywheel.api.struct.StructType;
+import com.jozufozu.flywheel.core.materials.model.ColumnModelData;
+import com.jozufozu.flywheel.core.materials.model.ColumnModelType;
 import com.jozufozu.flywheel.core.materials.model.ModelData;
 import com.jozufozu.flywheel.core.materials.model.ModelType;
 import com.jozufozu.flywheel.core.materials.oriented.OrientedData;
@@ -16,6 +18,10 @@ public class Materials {
 
 	public static final StructType<OrientedData> ORIENTED = new OrientedType();
 	public static final StructType<ModelData> TRANSFORMED = new ModelType();
+	/**
+	 * Same as {@link #TRANSFORMED}, but stored off-heap. Prefer this for models with very many instances.
+	 */
+	public static final StructType<ColumnModelData> TRANSFORMED_COLUMNS = new ColumnModelType();
 
 	public static class Names {
 		public static final ResourceLocation MODEL = Flywheel.rl("model");
@@ -0,0 +1,96 @@
+package com.jozufozu.flywheel.core.compile;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.Nullable;
+
+import com.jozufozu.flywheel.backend.gl.shader.GlShader;
+import com.jozufozu.flywheel.backend.gl.shader.ShaderType;
+import com.jozufozu.flywheel.core.Templates;
+import com.jozufozu.flywheel.core.shader.CullingProgram;
+import com.jozufozu.flywheel.core.source.FileResolution;
+import com.jozufozu.flywheel.core.source.SourceFile;
+import com.jozufozu.flywheel.event.ReloadRenderersEvent;
+
+/**
+ * A caching compiler for the transform feedback programs used to cull instances on the GPU.
+ *
+ * <p>
+ *     The vertex stage shares the header and user code of the regular programs so the culling pass places instances
+ *     exactly where they will be drawn.
+ * </p>
+ */
+public class CullingCompiler extends Memoizer<ProgramContext, CullingProgram> {
+
+	private static final List<CullingCompiler> ALL_COMPILERS = new ArrayList<>();
+
+	private final VertexCompiler vertexCompiler;
+
+	public CullingCompiler(FileResolution header) {
+		this.vertexCompiler = new VertexCompiler(Templates.CULLING, header);
+
+		ALL_COMPILERS.add(this);
+	}
+
+	/**
+	 * Get or compile the culling program for a spec.
+	 *
+	 * @param ctx The context of compilation. The alpha discard threshold is ignored.
+	 * @return A culling program, or null if the spec's instance struct cannot be captured with transform feedback.
+	 */
+	@Nullable
+	public CullingProgram getProgram(ProgramContext ctx) {
+		if (!Templates.CULLING.apply(ctx.spec.getVertexFile()).canCull()) {
+			return null;
+		}
+
+		// culling doesn't care about the layer, don't compile one program for each
+		return super.get(new ProgramContext(ctx.spec, 0, ctx.vertexType, ctx.ctx));
+	}
+
+	@Override
+	public void invalidate() {
+		super.invalidate();
+		vertexCompiler.invalidate();
+	}
+
+	@Override
+	protected CullingProgram _create(ProgramContext ctx) {
+		SourceFile file = ctx.spec.getVertexFile();
+		CullingTemplateData data = Templates.CULLING.apply(file);
+
+		String geometrySource = CompileUtil.generateHeader(Templates.CULLING.getVersion(), ShaderType.GEOMETRY) + data.generateGeometry();
+		GlShader geometry = new GlShader(file.name, ShaderType.GEOMETRY, geometrySource);
+
+		try {
+			ProgramAssembler assembler = new ProgramAssembler(ctx.spec.name)
+					.attachShader(vertexCompiler.get(new VertexCompiler.Context(file, ctx.ctx, ctx.vertexType)))
+					.attachShader(geometry)
+					.setFeedbackVaryings(data.getFeedbackVaryings())
+					.link();
+
+			return new CullingProgram(ctx.spec.name, assembler.program, data.getCulledLayout());
+		} finally {
+			// the geometry shader is never shared, let it go with the program
+			geometry.delete();
+		}
+	}
+
+	@Override
+	protected void _destroy(CullingProgram value) {
+		value.delete();
+	}
+
+	public static void invalidateAll(ReloadRenderersEvent event) {
+		ALL_COMPILERS.forEach(CullingCompiler::invalidate);
+	}
+
+	/**
+	 * Destroy every compiler along with its programs, like {@link ProgramCompiler#deleteAll()}.
+	 */
+	public static void deleteAll() {
+		ALL_COMPILERS.forEach(CullingCompiler::invalidate);
+		ALL_COMPILERS.clear();
+	}
+}
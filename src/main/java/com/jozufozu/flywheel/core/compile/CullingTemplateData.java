@@ -0,0 +1,290 @@
+package com.jozufozu.flywheel.core.compile;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.Nullable;
+
+import com.jozufozu.flywheel.api.vertex.VertexType;
+import com.jozufozu.flywheel.backend.instancing.SectionVisibility;
+import com.jozufozu.flywheel.backend.instancing.instancing.HiZBuffer;
+import com.jozufozu.flywheel.core.layout.BufferLayout;
+import com.jozufozu.flywheel.core.layout.CommonItems;
+import com.jozufozu.flywheel.core.layout.LayoutItem;
+import com.jozufozu.flywheel.core.layout.MatrixItems;
+import com.jozufozu.flywheel.core.source.FileIndex;
+import com.jozufozu.flywheel.core.source.SourceFile;
+import com.jozufozu.flywheel.core.source.parse.StructField;
+
+/**
+ * Generates a culling pass for an instanced shader.
+ *
+ * <p>
+ *     The vertex stage reads one instance per point, runs the user's {@code vertex} function over the model's bounding
+ *     sphere, and tests the result against the view frustum, the sections vanilla found to be visible (see
+ *     {@link SectionVisibility}), and the depth of what was drawn so far (see {@link HiZBuffer}). The geometry stage
+ *     then emits only the visible instances,
+ *     which are captured with transform feedback into a tightly packed buffer of floats described by
+ *     {@link #getCulledLayout()}.
+ * </p>
+ */
+public class CullingTemplateData extends InstancingTemplateData {
+
+	/**
+	 * The minimum value of {@code GL_MAX_TRANSFORM_FEEDBACK_INTERLEAVED_COMPONENTS} guaranteed by the spec.
+	 */
+	private static final int MAX_FEEDBACK_COMPONENTS = 64;
+
+	@Nullable
+	private final BufferLayout culledLayout;
+
+	public CullingTemplateData(SourceFile file) {
+		super(file);
+
+		culledLayout = createCulledLayout();
+	}
+
+	/**
+	 * Only instance structs made entirely of float vectors and matrices can be captured by transform feedback.
+	 *
+	 * @return true if culling programs can be generated for this file.
+	 */
+	public boolean canCull() {
+		return culledLayout != null;
+	}
+
+	/**
+	 * @return The layout of the instance buffer written by the culling pass.
+	 */
+	public BufferLayout getCulledLayout() {
+		if (culledLayout == null) {
+			throw new IllegalStateException("Cannot cull instances of " + file.name);
+		}
+		return culledLayout;
+	}
+
+	/**
+	 * @return The names of the geometry shader outputs to capture, in buffer order.
+	 */
+	public List<String> getFeedbackVaryings() {
+		List<String> out = new ArrayList<>();
+		for (StructField field : instance.getFields()) {
+			out.add("_flw_o_" + field.name);
+		}
+		return out;
+	}
+
+	@Override
+	public String generateFooter(FileIndex shader, VertexType vertexType) {
+		StringBuilder template = new StringBuilder();
+
+		declareInstanceAttributes(template, vertexType);
+
+		for (StructField field : instance.getFields()) {
+			template.append("out ")
+					.append(field.type)
+					.append(" _flw_i_")
+					.append(field.name)
+					.append(";\n");
+		}
+
+		template.append(String.format("""
+						uniform vec4 uFrustumPlanes[6];
+						uniform vec3 uFrustumOrigin;
+						uniform vec4 uModelBounds;
+
+						uniform sampler3D uSectionVisibility;
+						// in blocks, relative to the frustum's coordinate space
+						uniform ivec3 uSectionGridMin;
+						// in sections, zero if nothing is known
+						uniform ivec3 uSectionGridSize;
+
+						uniform sampler2D uHiZ;
+						// zero if there is no depth to test against
+						uniform int uHiZLevels;
+						// the size of the depth buffer the pyramid was built from
+						uniform ivec2 uHiZDepthSize;
+
+						flat out int _flw_visible;
+
+						bool _flw_sectionVisible(vec3 center, float radius) {
+						    if (uSectionGridSize.x == 0) {
+						        return true;
+						    }
+
+						    ivec3 lo = ivec3(floor((center - radius - vec3(uSectionGridMin)) / 16.));
+						    ivec3 hi = ivec3(floor((center + radius - vec3(uSectionGridMin)) / 16.));
+
+						    // vanilla didn't look outside the grid, and large instances aren't worth the lookups
+						    if (any(lessThan(lo, ivec3(0))) || any(greaterThanEqual(hi, uSectionGridSize)) || any(greaterThan(hi - lo, ivec3(1)))) {
+						        return true;
+						    }
+
+						    for (int x = lo.x; x <= hi.x; x++) {
+						        for (int y = lo.y; y <= hi.y; y++) {
+						            for (int z = lo.z; z <= hi.z; z++) {
+						                if (texelFetch(uSectionVisibility, ivec3(x, y, z), 0).r > 0.) {
+						                    return true;
+						                }
+						            }
+						        }
+						    }
+
+						    return false;
+						}
+
+						bool _flw_depthVisible(vec3 center, float radius) {
+						    if (uHiZLevels == 0) {
+						        return true;
+						    }
+
+						    vec2 lo = vec2(1.);
+						    vec2 hi = vec2(0.);
+						    float nearest = 1.;
+						    for (int c = 0; c < 8; c++) {
+						        vec3 corner = center + radius * vec3((c & 1) == 0 ? -1. : 1., (c & 2) == 0 ? -1. : 1., (c & 4) == 0 ? -1. : 1.);
+						        vec4 clip = uViewProjection * vec4(corner, 1.);
+
+						        // crosses the near plane, the bounds can't be projected
+						        if (clip.w <= 0. || clip.z < -clip.w) {
+						            return true;
+						        }
+
+						        vec3 ndc = clip.xyz / clip.w;
+						        lo = min(lo, ndc.xy * .5 + .5);
+						        hi = max(hi, ndc.xy * .5 + .5);
+						        nearest = min(nearest, ndc.z * .5 + .5);
+						    }
+
+						    lo = clamp(lo, 0., 1.);
+						    hi = clamp(hi, 0., 1.);
+
+						    // a texel of level L covers 2^(L+1) depth pixels, pick the level where the bounds cover at most 2x2 texels
+						    vec2 extent = (hi - lo) * vec2(uHiZDepthSize);
+						    int level = clamp(int(ceil(log2(max(max(extent.x, extent.y), 1.)))) - 1, 0, uHiZLevels - 1);
+
+						    // the odd pixels at the far edges are folded into the last texel of each level
+						    ivec2 size = textureSize(uHiZ, level);
+						    ivec2 a = min(ivec2(lo * vec2(uHiZDepthSize)) >> (level + 1), size - 1);
+						    ivec2 b = min(ivec2(hi * vec2(uHiZDepthSize)) >> (level + 1), size - 1);
+
+						    float farthest = max(max(texelFetch(uHiZ, a, level).r, texelFetch(uHiZ, ivec2(b.x, a.y), level).r), max(texelFetch(uHiZ, ivec2(a.x, b.y), level).r, texelFetch(uHiZ, b, level).r));
+
+						    return nearest <= farthest;
+						}
+
+						vec3 _flw_transformPoint(%1$s i, vec3 pos) {
+						    Vertex v;
+						    v.pos = pos;
+						    v.color = vec4(1.);
+						    v.texCoords = vec2(0.);
+						    v.light = vec2(0.);
+						    v.normal = vec3(0., 1., 0.);
+						    vertex(v, i);
+						    return v.pos;
+						}
+
+						void main() {
+						    %1$s i;
+						    %2$s
+						    vec3 center = _flw_transformPoint(i, uModelBounds.xyz);
+						    // exact for rotations and uniform scales, which is all we really see
+						    float radius = distance(center, _flw_transformPoint(i, uModelBounds.xyz + vec3(uModelBounds.w, 0., 0.)));
+						    radius = max(radius, distance(center, _flw_transformPoint(i, uModelBounds.xyz + vec3(0., uModelBounds.w, 0.))));
+						    radius = max(radius, distance(center, _flw_transformPoint(i, uModelBounds.xyz + vec3(0., 0., uModelBounds.w))));
+
+						    vec3 pos = center - uFrustumOrigin;
+						    bool visible = true;
+						    for (int p = 0; p < 6; p++) {
+						        visible = visible && dot(uFrustumPlanes[p].xyz, pos) + uFrustumPlanes[p].w >= -radius;
+						    }
+						    visible = visible && _flw_sectionVisible(center, radius);
+						    visible = visible && _flw_depthVisible(center, radius);
+
+						    _flw_visible = visible ? 1 : 0;
+						    %3$s
+						    gl_Position = vec4(0.);
+						}
+						""",
+				instanceName,
+				assignFields(instance, "i.", "a_i_"),
+				assignFields(instance, "_flw_i_", "a_i_")
+		));
+
+		return template.toString();
+	}
+
+	/**
+	 * Generate the body of the geometry shader that drops culled instances.
+	 */
+	public String generateGeometry() {
+		StringBuilder template = new StringBuilder();
+
+		template.append("""
+				layout(points) in;
+				layout(points, max_vertices = 1) out;
+
+				flat in int _flw_visible[];
+				""");
+
+		for (StructField field : instance.getFields()) {
+			template.append("in ")
+					.append(field.type)
+					.append(" _flw_i_")
+					.append(field.name)
+					.append("[];\n");
+			template.append("out ")
+					.append(field.type)
+					.append(" _flw_o_")
+					.append(field.name)
+					.append(";\n");
+		}
+
+		template.append(String.format("""
+
+						void main() {
+						    if (_flw_visible[0] == 0) {
+						        return;
+						    }
+
+						    %s
+						    EmitVertex();
+						    EndPrimitive();
+						}
+						""",
+				assignFields(instance, "_flw_o_", "_flw_i_").toString().replace(";\n", "[0];\n")));
+
+		return template.toString();
+	}
+
+	@Nullable
+	private BufferLayout createCulledLayout() {
+		BufferLayout.Builder builder = BufferLayout.builder();
+		int components = 0;
+
+		for (StructField field : instance.getFields()) {
+			LayoutItem item = switch (field.type.toString()) {
+				case "float" -> CommonItems.FLOAT;
+				case "vec2" -> CommonItems.VEC2;
+				case "vec3" -> CommonItems.VEC3;
+				case "vec4" -> CommonItems.VEC4;
+				case "mat3" -> MatrixItems.MAT3;
+				case "mat4" -> MatrixItems.MAT4;
+				default -> null;
+			};
+
+			if (item == null) {
+				return null;
+			}
+
+			builder.addItems(item);
+			components += item.size() / 4;
+		}
+
+		if (components > MAX_FEEDBACK_COMPONENTS) {
+			return null;
+		}
+
+		return builder.build();
+	}
+}
@@ -21,6 +21,13 @@ public class FragmentCompiler extends Memoizer<FragmentCompiler.Context, GlShade
 
 	@Override
 	protected GlShader _create(Context key) {
+		return new GlShader(key.file.name, ShaderType.FRAGMENT, generateSource(key));
+	}
+
+	/**
+	 * Generate the final source of a fragment shader without compiling it.
+	 */
+	public String generateSource(Context key) {
 		SourceFile fragmentFile = key.file;
 		FragmentTemplateData appliedTemplate = fragment.apply(fragmentFile);
 
@@ -37,7 +44,7 @@ public class FragmentCompiler extends Memoizer<FragmentCompiler.Context, GlShade
 
 		builder.append(appliedTemplate.generateFooter());
 
-		return new GlShader(fragmentFile.name, ShaderType.FRAGMENT, builder.toString());
+		return builder.toString();
 	}
 
 	@Override
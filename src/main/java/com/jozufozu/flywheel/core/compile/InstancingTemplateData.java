@@ -67,25 +67,10 @@ public class InstancingTemplateData implements VertexData {
 
 	@Override
 	public String generateFooter(FileIndex shader, VertexType vertexType) {
-		ImmutableList<StructField> fields = instance.getFields();
-
-		int attributeBinding = vertexType.getLayout()
-				.getAttributeCount();
-
 		StringBuilder template = new StringBuilder();
 
-		for (StructField field : fields) {
-			template.append("layout(location = ")
-					.append(attributeBinding)
-					.append(") in")
-					.append(' ')
-					.append(field.type)
-					.append(' ')
-					.append("a_i_")
-					.append(field.name)
-					.append(";\n");
-			attributeBinding += CompileUtil.getAttributeCount(field.type);
-		}
+		declareInstanceAttributes(template, vertexType);
+
 		template.append(String.format("""
 						out vec4 v2f_color;
 						out vec2 v2f_texCoords;
@@ -116,6 +101,28 @@ public class InstancingTemplateData implements VertexData {
 		return template.toString();
 	}
 
+	/**
+	 * Declare one vertex attribute per field of the instance struct, named {@code a_i_<field>}.
+	 * Instance attributes are placed directly after the vertex attributes.
+	 */
+	protected void declareInstanceAttributes(StringBuilder template, VertexType vertexType) {
+		int attributeBinding = vertexType.getLayout()
+				.getAttributeCount();
+
+		for (StructField field : instance.getFields()) {
+			template.append("layout(location = ")
+					.append(attributeBinding)
+					.append(") in")
+					.append(' ')
+					.append(field.type)
+					.append(' ')
+					.append("a_i_")
+					.append(field.name)
+					.append(";\n");
+			attributeBinding += CompileUtil.getAttributeCount(field.type);
+		}
+	}
+
 	public static StringBuilder assignFields(ShaderStruct struct, String prefix1, String prefix2) {
 		ImmutableList<StructField> fields = struct.getFields();
 
@@ -7,6 +7,10 @@ import static org.lwjgl.opengl.GL20.glCreateProgram;
 import static org.lwjgl.opengl.GL20.glGetProgramInfoLog;
 import static org.lwjgl.opengl.GL20.glGetProgrami;
 import static org.lwjgl.opengl.GL20.glLinkProgram;
+import static org.lwjgl.opengl.GL30.GL_INTERLEAVED_ATTRIBS;
+import static org.lwjgl.opengl.GL30.glTransformFeedbackVaryings;
+import static org.lwjgl.opengl.GL41.GL_PROGRAM_BINARY_RETRIEVABLE_HINT;
+import static org.lwjgl.opengl.GL41.glProgramParameteri;
 
 import java.util.List;
 
@@ -55,11 +59,32 @@ public class ProgramAssembler {
 	}
 
 	public ProgramAssembler attachShader(GlShader glShader) {
+		glShader.checkCompiled();
 		shaders.add(glShader);
 		glAttachShader(this.program, glShader.handle());
 		return this;
 	}
 
+	/**
+	 * Capture the given outputs of the last vertex processing stage with transform feedback.
+	 * Must be called before {@link #link()}.
+	 *
+	 * @param varyings The names of the outputs, interleaved in order into a single buffer.
+	 */
+	public ProgramAssembler setFeedbackVaryings(List<String> varyings) {
+		glTransformFeedbackVaryings(this.program, varyings.toArray(new CharSequence[0]), GL_INTERLEAVED_ATTRIBS);
+		return this;
+	}
+
+	/**
+	 * Tell the driver we want to read back the program binary after linking.
+	 * Must be called before {@link #link()}.
+	 */
+	public ProgramAssembler retrievableBinary() {
+		glProgramParameteri(this.program, GL_PROGRAM_BINARY_RETRIEVABLE_HINT, GL_TRUE);
+		return this;
+	}
+
 	public <P extends GlProgram> P build(GlProgram.Factory<P> factory) {
 		return factory.create(name, program);
 	}
@@ -0,0 +1,203 @@
+package com.jozufozu.flywheel.core.compile;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import javax.annotation.Nullable;
+
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL20;
+import org.lwjgl.opengl.GL41;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.system.MemoryUtil;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.jozufozu.flywheel.Flywheel;
+import com.jozufozu.flywheel.backend.gl.versioned.GlCompat;
+import com.jozufozu.flywheel.config.FlwConfig;
+
+import net.minecraft.Util;
+import net.minecraft.client.Minecraft;
+import net.minecraft.resources.ResourceLocation;
+
+/**
+ * Keeps linked program binaries on disk, so cold starts and resource reloads don't have to compile every program again.
+ *
+ * <p>
+ *     Binaries are keyed by a hash of the final shader sources and the driver's vendor, renderer and version. The
+ *     sources already contain the shader constants of the {@link com.jozufozu.flywheel.core.shader.StateSnapshot
+ *     StateSnapshot}, so anything that changes a program also changes its key. Drivers may still reject a binary, in
+ *     which case the caller compiles from source as usual.
+ * </p>
+ */
+public final class ProgramBinaryCache {
+
+	private static final int MAGIC = 0x464C5750; // FLWP
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 12;
+
+	@Nullable
+	private static String driver;
+
+	private ProgramBinaryCache() {
+	}
+
+	public static boolean isEnabled() {
+		return FlwConfig.get().programCache() && GlCompat.getInstance()
+				.programBinarySupported();
+	}
+
+	/**
+	 * Compute the cache key of a program.
+	 *
+	 * @param name    The name of the program.
+	 * @param sources The final source of every shader in the program, in the order they are attached.
+	 */
+	public static String key(ResourceLocation name, String... sources) {
+		Hasher hasher = Hashing.murmur3_128()
+				.newHasher();
+
+		hasher.putInt(VERSION);
+		hasher.putString(getDriver(), StandardCharsets.UTF_8);
+		hasher.putString(name.toString(), StandardCharsets.UTF_8);
+
+		for (String source : sources) {
+			hasher.putInt(source.length());
+			hasher.putString(source, StandardCharsets.UTF_8);
+		}
+
+		return hasher.hash()
+				.toString();
+	}
+
+	/**
+	 * @return true if there is a binary stored for the key. It may still be rejected by {@link #load}.
+	 */
+	public static boolean contains(String key) {
+		return Files.isRegularFile(getFile(key));
+	}
+
+	/**
+	 * Create a program from a cached binary.
+	 *
+	 * @return The handle of the linked program, or 0 if there is no usable binary for the key.
+	 */
+	public static int load(String key) {
+		Path file = getFile(key);
+
+		byte[] bytes;
+		try {
+			bytes = Files.readAllBytes(file);
+		} catch (NoSuchFileException e) {
+			return 0;
+		} catch (IOException e) {
+			Flywheel.LOGGER.warn(String.format("Could not read cached program '%s':", file), e);
+			return 0;
+		}
+
+		ByteBuffer header = ByteBuffer.wrap(bytes)
+				.order(ByteOrder.nativeOrder());
+
+		if (bytes.length <= HEADER_SIZE || header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+			return 0;
+		}
+
+		int format = header.getInt(8);
+
+		ByteBuffer binary = MemoryUtil.memAlloc(bytes.length - HEADER_SIZE);
+		binary.put(bytes, HEADER_SIZE, bytes.length - HEADER_SIZE)
+				.flip();
+
+		int program = GL20.glCreateProgram();
+		try {
+			GL41.glProgramBinary(program, format, binary);
+		} finally {
+			MemoryUtil.memFree(binary);
+		}
+
+		if (GL20.glGetProgrami(program, GL20.GL_LINK_STATUS) != GL11.GL_TRUE) {
+			// usually a driver update, the binary will be replaced once the program is compiled again
+			GL20.glDeleteProgram(program);
+			return 0;
+		}
+
+		return program;
+	}
+
+	/**
+	 * Save the binary of a linked program.
+	 */
+	public static void store(String key, int program) {
+		int length = GL20.glGetProgrami(program, GL41.GL_PROGRAM_BINARY_LENGTH);
+
+		if (length <= 0) {
+			return;
+		}
+
+		byte[] bytes;
+
+		ByteBuffer binary = MemoryUtil.memAlloc(length);
+		try (MemoryStack stack = MemoryStack.stackPush()) {
+			IntBuffer written = stack.mallocInt(1);
+			IntBuffer format = stack.mallocInt(1);
+
+			GL41.glGetProgramBinary(program, written, format, binary);
+
+			if (written.get(0) <= 0) {
+				return;
+			}
+
+			bytes = new byte[HEADER_SIZE + written.get(0)];
+
+			ByteBuffer.wrap(bytes)
+					.order(ByteOrder.nativeOrder())
+					.putInt(MAGIC)
+					.putInt(VERSION)
+					.putInt(format.get(0));
+
+			binary.get(0, bytes, HEADER_SIZE, written.get(0));
+		} finally {
+			MemoryUtil.memFree(binary);
+		}
+
+		Path file = getFile(key);
+		Util.ioPool()
+				.execute(() -> write(file, bytes));
+	}
+
+	private static void write(Path file, byte[] bytes) {
+		try {
+			Path directory = file.getParent();
+			Files.createDirectories(directory);
+
+			// write to a temporary file first, so nobody ever reads a half written binary
+			Path temp = Files.createTempFile(directory, "program", ".tmp");
+			Files.write(temp, bytes);
+			Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			Flywheel.LOGGER.warn(String.format("Could not cache program '%s':", file), e);
+		}
+	}
+
+	private static Path getFile(String key) {
+		return Minecraft.getInstance().gameDirectory.toPath()
+				.resolve(".flywheel")
+				.resolve("programs")
+				.resolve(key + ".bin");
+	}
+
+	private static String getDriver() {
+		if (driver == null) {
+			driver = GL11.glGetString(GL11.GL_VENDOR) + ';' + GL11.glGetString(GL11.GL_RENDERER) + ';' + GL11.glGetString(GL11.GL_VERSION);
+		}
+		return driver;
+	}
+}
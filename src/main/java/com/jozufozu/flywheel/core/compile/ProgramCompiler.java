@@ -3,10 +3,14 @@ package com.jozufozu.flywheel.core.compile;
 import java.util.ArrayList;
 import java.util.List;
 
+import javax.annotation.Nullable;
+
 import com.jozufozu.flywheel.backend.gl.shader.GlProgram;
+import com.jozufozu.flywheel.backend.gl.shader.GlProgramPipeline;
+import com.jozufozu.flywheel.backend.gl.versioned.GlCompat;
+import com.jozufozu.flywheel.config.FlwConfig;
 import com.jozufozu.flywheel.core.Templates;
 import com.jozufozu.flywheel.core.source.FileResolution;
-import com.jozufozu.flywheel.event.ReloadRenderersEvent;
 
 /**
  * A caching compiler.
@@ -15,19 +19,35 @@ import com.jozufozu.flywheel.event.ReloadRenderersEvent;
  *     This class is responsible for compiling programs on the fly. An instance of this class will keep a cache of
  *     compiled programs, and will only compile a program if it is not already in the cache.
  * </p>
+ * <p>
+ *     With separable shaders enabled, vertex and fragment shaders are linked into stages of their own and combined
+ *     with program pipelines. Each stage is then linked once, instead of once for every pairing it appears in. This
+ *     needs a {@link GlProgram.PipelineFactory}, compilers without one always link whole programs.
+ * </p>
  */
 public class ProgramCompiler<P extends GlProgram> extends Memoizer<ProgramContext, P> {
 
 	private static final List<ProgramCompiler<?>> ALL_COMPILERS = new ArrayList<>();
 
 	private final GlProgram.Factory<P> factory;
+	@Nullable
+	private final GlProgram.PipelineFactory<P> pipelineFactory;
 	private final VertexCompiler vertexCompiler;
 	private final FragmentCompiler fragmentCompiler;
+	private final StageCompiler<VertexCompiler.Context> vertexStages;
+	private final StageCompiler<FragmentCompiler.Context> fragmentStages;
 
 	public ProgramCompiler(GlProgram.Factory<P> factory, VertexCompiler vertexCompiler, FragmentCompiler fragmentCompiler) {
+		this(factory, null, vertexCompiler, fragmentCompiler);
+	}
+
+	public ProgramCompiler(GlProgram.Factory<P> factory, @Nullable GlProgram.PipelineFactory<P> pipelineFactory, VertexCompiler vertexCompiler, FragmentCompiler fragmentCompiler) {
 		this.factory = factory;
+		this.pipelineFactory = pipelineFactory;
 		this.vertexCompiler = vertexCompiler;
 		this.fragmentCompiler = fragmentCompiler;
+		this.vertexStages = new StageCompiler<>(vertexCompiler);
+		this.fragmentStages = new StageCompiler<>(fragmentCompiler);
 
 		ALL_COMPILERS.add(this);
 	}
@@ -41,7 +61,20 @@ public class ProgramCompiler<P extends GlProgram> extends Memoizer<ProgramContex
 	 * @return A program compiler.
 	 */
 	public static <T extends VertexData, P extends GlProgram> ProgramCompiler<P> create(Template<T> template, GlProgram.Factory<P> factory, FileResolution header) {
-		return new ProgramCompiler<>(factory, new VertexCompiler(template, header), new FragmentCompiler(Templates.FRAGMENT, header));
+		return create(template, factory, null, header);
+	}
+
+	/**
+	 * Creates a program compiler using this template, that can also build programs out of separable stages.
+	 * @param template The vertex template to use.
+	 * @param factory A factory to add meaning to compiled programs.
+	 * @param pipelineFactory A factory to add meaning to program pipelines, or null to always link whole programs.
+	 * @param header The header file to use for the program.
+	 * @param <P> The type of program to compile.
+	 * @return A program compiler.
+	 */
+	public static <T extends VertexData, P extends GlProgram> ProgramCompiler<P> create(Template<T> template, GlProgram.Factory<P> factory, @Nullable GlProgram.PipelineFactory<P> pipelineFactory, FileResolution header) {
+		return new ProgramCompiler<>(factory, pipelineFactory, new VertexCompiler(template, header), new FragmentCompiler(Templates.FRAGMENT, header));
 	}
 
 	/**
@@ -54,20 +87,69 @@ public class ProgramCompiler<P extends GlProgram> extends Memoizer<ProgramContex
 		return super.get(ctx);
 	}
 
+	/**
+	 * Start compiling the shaders of a program without waiting for them.
+	 *
+	 * <p>
+	 *     Does nothing if the program will be loaded from the {@link ProgramBinaryCache} anyway. Call
+	 *     {@link #getProgram} later to link it.
+	 * </p>
+	 */
+	public void prepare(ProgramContext ctx) {
+		VertexCompiler.Context vertex = new VertexCompiler.Context(ctx.spec.getVertexFile(), ctx.ctx, ctx.vertexType);
+		FragmentCompiler.Context fragment = new FragmentCompiler.Context(ctx.spec.getFragmentFile(), ctx.ctx, ctx.alphaDiscard);
+
+		if (!useSeparableStages() && ProgramBinaryCache.isEnabled() && ProgramBinaryCache.contains(ProgramBinaryCache.key(ctx.spec.name, vertexCompiler.generateSource(vertex), fragmentCompiler.generateSource(fragment)))) {
+			return;
+		}
+
+		vertexCompiler.get(vertex);
+		fragmentCompiler.get(fragment);
+	}
+
 	@Override
 	public void invalidate() {
 		super.invalidate();
+		vertexStages.invalidate();
+		fragmentStages.invalidate();
 		vertexCompiler.invalidate();
 		fragmentCompiler.invalidate();
 	}
 
 	@Override
 	protected P _create(ProgramContext ctx) {
-		return new ProgramAssembler(ctx.spec.name)
-				.attachShader(vertexCompiler.get(new VertexCompiler.Context(ctx.spec.getVertexFile(), ctx.ctx, ctx.vertexType)))
-				.attachShader(fragmentCompiler.get(new FragmentCompiler.Context(ctx.spec.getFragmentFile(), ctx.ctx, ctx.alphaDiscard)))
-				.link()
-				.build(this.factory);
+		VertexCompiler.Context vertex = new VertexCompiler.Context(ctx.spec.getVertexFile(), ctx.ctx, ctx.vertexType);
+		FragmentCompiler.Context fragment = new FragmentCompiler.Context(ctx.spec.getFragmentFile(), ctx.ctx, ctx.alphaDiscard);
+
+		if (useSeparableStages()) {
+			GlProgramPipeline pipeline = new GlProgramPipeline(vertexStages.get(vertex), fragmentStages.get(fragment));
+			return pipelineFactory.create(ctx.spec.name, pipeline);
+		}
+
+		if (!ProgramBinaryCache.isEnabled()) {
+			return new ProgramAssembler(ctx.spec.name)
+					.attachShader(vertexCompiler.get(vertex))
+					.attachShader(fragmentCompiler.get(fragment))
+					.link()
+					.build(this.factory);
+		}
+
+		String key = ProgramBinaryCache.key(ctx.spec.name, vertexCompiler.generateSource(vertex), fragmentCompiler.generateSource(fragment));
+
+		int cached = ProgramBinaryCache.load(key);
+		if (cached != 0) {
+			return this.factory.create(ctx.spec.name, cached);
+		}
+
+		ProgramAssembler assembler = new ProgramAssembler(ctx.spec.name)
+				.retrievableBinary()
+				.attachShader(vertexCompiler.get(vertex))
+				.attachShader(fragmentCompiler.get(fragment))
+				.link();
+
+		ProgramBinaryCache.store(key, assembler.program);
+
+		return assembler.build(this.factory);
 	}
 
 	@Override
@@ -75,7 +157,21 @@ public class ProgramCompiler<P extends GlProgram> extends Memoizer<ProgramContex
 		value.delete();
 	}
 
-	public static void invalidateAll(ReloadRenderersEvent event) {
+	private boolean useSeparableStages() {
+		return pipelineFactory != null && FlwConfig.get().separableShaders() && GlCompat.getInstance()
+				.separateShaderObjectsSupported();
+	}
+
+	public static List<ProgramCompiler<?>> getAll() {
+		return ALL_COMPILERS;
+	}
+
+	/**
+	 * Destroy every compiler along with its programs. Called before contexts are gathered again, so compilers from
+	 * the last resource reload don't linger.
+	 */
+	public static void deleteAll() {
 		ALL_COMPILERS.forEach(ProgramCompiler::invalidate);
+		ALL_COMPILERS.clear();
 	}
 }
@@ -0,0 +1,100 @@
+package com.jozufozu.flywheel.core.compile;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.jozufozu.flywheel.api.vertex.VertexType;
+import com.jozufozu.flywheel.backend.Backend;
+import com.jozufozu.flywheel.backend.RenderLayer;
+import com.jozufozu.flywheel.backend.gl.versioned.GlCompat;
+import com.jozufozu.flywheel.core.Formats;
+import com.jozufozu.flywheel.core.GameStateRegistry;
+import com.jozufozu.flywheel.core.shader.ProgramSpec;
+import com.jozufozu.flywheel.core.shader.StateSnapshot;
+
+/**
+ * Compiles every program a backend could ask for ahead of time, so a new struct type, layer or game state showing up
+ * mid-game doesn't hitch the frame.
+ *
+ * <p>
+ *     All shaders are submitted to the driver before any compile status is queried, so drivers with
+ *     {@code KHR_parallel_shader_compile} can work on them at the same time. Programs are then linked one by one.
+ * </p>
+ */
+public final class ProgramPrecompiler {
+
+	/**
+	 * The vertex types the engines draw models with.
+	 */
+	private static final List<VertexType> VERTEX_TYPES = List.of(Formats.POS_TEX_NORMAL);
+
+	private ProgramPrecompiler() {
+	}
+
+	/**
+	 * Compile every combination of the given programs, the vertex types, the render layers and the possible game
+	 * states, for every registered {@link ProgramCompiler}.
+	 */
+	public static void run(Collection<ProgramSpec> specs) {
+		long start = System.nanoTime();
+
+		List<ProgramContext> contexts = enumerate(specs);
+		List<ProgramCompiler<?>> compilers = ProgramCompiler.getAll();
+
+		GlCompat.getInstance()
+				.enableParallelShaderCompile();
+
+		for (ProgramCompiler<?> compiler : compilers) {
+			for (ProgramContext ctx : contexts) {
+				try {
+					compiler.prepare(ctx);
+				} catch (Exception e) {
+					// reported below when linking
+				}
+			}
+		}
+
+		int linked = 0;
+		int failed = 0;
+		for (ProgramCompiler<?> compiler : compilers) {
+			for (ProgramContext ctx : contexts) {
+				try {
+					compiler.getProgram(ctx);
+					linked++;
+				} catch (Exception e) {
+					// not every spec works with every context, the renderer will report it if the program is ever used
+					Backend.LOGGER.debug("Could not precompile " + ctx, e);
+					failed++;
+				}
+			}
+		}
+
+		long elapsed = (System.nanoTime() - start) / 1_000_000;
+		Backend.LOGGER.info("Precompiled {} programs in {}ms ({} failed, parallel compile {}).", linked, elapsed, failed, GlCompat.getInstance()
+				.parallelShaderCompileSupported() ? "on" : "off");
+	}
+
+	private static List<ProgramContext> enumerate(Collection<ProgramSpec> specs) {
+		Set<Float> alphaDiscards = new LinkedHashSet<>();
+		for (RenderLayer layer : RenderLayer.values()) {
+			alphaDiscards.add(ProgramContext.getAlphaDiscard(layer));
+		}
+
+		List<StateSnapshot> snapshots = GameStateRegistry.allSnapshots();
+
+		List<ProgramContext> out = new ArrayList<>();
+		for (ProgramSpec spec : specs) {
+			for (VertexType vertexType : VERTEX_TYPES) {
+				for (float alphaDiscard : alphaDiscards) {
+					for (StateSnapshot snapshot : snapshots) {
+						out.add(new ProgramContext(spec, alphaDiscard, vertexType, snapshot));
+					}
+				}
+			}
+		}
+		return out;
+	}
+}
@@ -0,0 +1,27 @@
+package com.jozufozu.flywheel.core.compile;
+
+import com.jozufozu.flywheel.backend.gl.shader.GlSeparableProgram;
+import com.jozufozu.flywheel.backend.gl.shader.GlShader;
+
+/**
+ * Links the shaders of another compiler into separable program stages, so each stage is linked once no matter how many
+ * programs it ends up in.
+ */
+public class StageCompiler<K> extends Memoizer<K, GlSeparableProgram> {
+
+	private final Memoizer<K, GlShader> shaders;
+
+	public StageCompiler(Memoizer<K, GlShader> shaders) {
+		this.shaders = shaders;
+	}
+
+	@Override
+	protected GlSeparableProgram _create(K key) {
+		return new GlSeparableProgram(shaders.get(key));
+	}
+
+	@Override
+	protected void _destroy(GlSeparableProgram value) {
+		value.delete();
+	}
+}
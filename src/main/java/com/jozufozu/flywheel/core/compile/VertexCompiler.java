@@ -22,6 +22,13 @@ public class VertexCompiler extends Memoizer<VertexCompiler.Context, GlShader> {
 
 	@Override
 	protected GlShader _create(Context key) {
+		return new GlShader(key.file.name, ShaderType.VERTEX, generateSource(key));
+	}
+
+	/**
+	 * Generate the final source of a vertex shader without compiling it.
+	 */
+	public String generateSource(Context key) {
 		StringBuilder finalSource = new StringBuilder();
 
 		finalSource.append(CompileUtil.generateHeader(template.getVersion(), ShaderType.VERTEX));
@@ -49,7 +56,7 @@ public class VertexCompiler extends Memoizer<VertexCompiler.Context, GlShader> {
 		VertexData appliedTemplate = template.apply(key.file);
 		finalSource.append(appliedTemplate.generateFooter(index, key.vertexType));
 
-		return new GlShader(key.file.name, ShaderType.VERTEX, finalSource.toString());
+		return finalSource.toString();
 	}
 
 	@Override
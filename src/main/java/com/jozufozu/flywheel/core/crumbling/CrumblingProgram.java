@@ -1,7 +1,6 @@
 package com.jozufozu.flywheel.core.crumbling;
 
-import static org.lwjgl.opengl.GL20.glUniform2f;
-
+import com.jozufozu.flywheel.backend.gl.shader.GlProgramPipeline;
 import com.jozufozu.flywheel.core.shader.WorldProgram;
 
 import net.minecraft.client.renderer.texture.TextureAtlas;
@@ -20,6 +19,12 @@ public class CrumblingProgram extends WorldProgram {
 		uTextureScale = getUniformLocation("uTextureScale");
 	}
 
+	public CrumblingProgram(ResourceLocation name, GlProgramPipeline pipeline) {
+		super(name, pipeline);
+
+		uTextureScale = getUniformLocation("uTextureScale");
+	}
+
 	@Override
 	protected void registerSamplers() {
 		super.registerSamplers();
@@ -27,7 +32,7 @@ public class CrumblingProgram extends WorldProgram {
 	}
 
 	public void setTextureScale(float x, float y) {
-		glUniform2f(uTextureScale, x, y);
+		setUniform2f(uTextureScale, x, y);
 	}
 
 	public void setAtlasSize(int width, int height) {
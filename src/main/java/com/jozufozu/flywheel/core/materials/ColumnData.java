@@ -0,0 +1,55 @@
+package com.jozufozu.flywheel.core.materials;
+
+import javax.annotation.Nullable;
+
+import com.jozufozu.flywheel.api.InstanceData;
+import com.jozufozu.flywheel.api.struct.Columnar;
+import com.jozufozu.flywheel.backend.struct.ColumnBuffer;
+
+/**
+ * A handle to an instance stored off-heap in a {@link ColumnBuffer}.
+ *
+ * <p>
+ *     Setters write straight into native memory, so the handle itself holds nothing but its slot. The owning instancer
+ *     may move an instance to a different slot when others are removed, so never cache {@link #getSlot()}.
+ * </p>
+ *
+ * @see Columnar
+ */
+public abstract class ColumnData extends InstanceData {
+
+	@Nullable
+	private ColumnBuffer columns;
+	private int slot;
+
+	/**
+	 * Point this handle at a slot. Only the owning instancer should call this.
+	 */
+	public void setSlot(ColumnBuffer columns, int slot) {
+		this.columns = columns;
+		this.slot = slot;
+	}
+
+	@Nullable
+	public ColumnBuffer getColumns() {
+		return columns;
+	}
+
+	public int getSlot() {
+		return slot;
+	}
+
+	/**
+	 * Fill a freshly allocated, zeroed slot with this struct's default values.
+	 */
+	public void writeDefaults() {
+
+	}
+
+	/**
+	 * @return The address of this instance's element in the given column.
+	 */
+	protected final long address(int column) {
+		return columns.address(column, slot);
+	}
+}
@@ -0,0 +1,143 @@
+package com.jozufozu.flywheel.core.materials.model;
+
+import org.lwjgl.system.MemoryUtil;
+
+import com.jozufozu.flywheel.core.materials.ColumnData;
+import com.jozufozu.flywheel.core.materials.FlatLit;
+import com.jozufozu.flywheel.util.Color;
+import com.jozufozu.flywheel.util.MatrixWrite;
+import com.mojang.blaze3d.vertex.PoseStack;
+import com.mojang.math.Matrix3f;
+import com.mojang.math.Matrix4f;
+
+import net.minecraft.client.renderer.LightTexture;
+import net.minecraft.core.Vec3i;
+
+/**
+ * An off-heap counterpart to {@link ModelData}, for instancers with very many instances.
+ *
+ * @see ColumnModelType
+ */
+public class ColumnModelData extends ColumnData implements FlatLit<ColumnModelData> {
+	static final int LIGHT = 0;
+	static final int COLOR = 1;
+	static final int MODEL = 2;
+	static final int NORMAL = 3;
+
+	@Override
+	public void writeDefaults() {
+		MemoryUtil.memPutInt(address(COLOR), 0xFFFFFFFF);
+	}
+
+	@Override
+	public ColumnModelData setBlockLight(int blockLight) {
+		MemoryUtil.memPutByte(address(LIGHT), (byte) (blockLight << 4));
+		markDirty();
+		return this;
+	}
+
+	@Override
+	public ColumnModelData setSkyLight(int skyLight) {
+		MemoryUtil.memPutByte(address(LIGHT) + 1, (byte) (skyLight << 4));
+		markDirty();
+		return this;
+	}
+
+	@Override
+	public int getPackedLight() {
+		long ptr = address(LIGHT);
+		int blockLight = Byte.toUnsignedInt(MemoryUtil.memGetByte(ptr)) >> 4;
+		int skyLight = Byte.toUnsignedInt(MemoryUtil.memGetByte(ptr + 1)) >> 4;
+		return LightTexture.pack(blockLight, skyLight);
+	}
+
+	public ColumnModelData setColor(Color color) {
+		return setColor((byte) color.getRed(), (byte) color.getGreen(), (byte) color.getBlue(), (byte) color.getAlpha());
+	}
+
+	public ColumnModelData setColor(int r, int g, int b) {
+		return setColor((byte) r, (byte) g, (byte) b);
+	}
+
+	public ColumnModelData setColor(byte r, byte g, byte b) {
+		long ptr = address(COLOR);
+		MemoryUtil.memPutByte(ptr, r);
+		MemoryUtil.memPutByte(ptr + 1, g);
+		MemoryUtil.memPutByte(ptr + 2, b);
+		markDirty();
+		return this;
+	}
+
+	public ColumnModelData setColor(byte r, byte g, byte b, byte a) {
+		MemoryUtil.memPutByte(address(COLOR) + 3, a);
+		return setColor(r, g, b);
+	}
+
+	public ColumnModelData setTransform(PoseStack stack) {
+		return setTransform(stack.last().pose(), stack.last().normal());
+	}
+
+	public ColumnModelData setTransform(Matrix4f model, Matrix3f normal) {
+		((MatrixWrite) (Object) model).flywheel$writeUnsafe(address(MODEL));
+		((MatrixWrite) (Object) normal).flywheel$writeUnsafe(address(NORMAL));
+		markDirty();
+		return this;
+	}
+
+	/**
+	 * Sets the transform matrices to be all zeros.
+	 *
+	 * <p>
+	 *     This will allow the gpu to quickly discard all geometry for this instance, effectively "turning it off".
+	 * </p>
+	 */
+	public ColumnModelData setEmptyTransform() {
+		MemoryUtil.memSet(address(MODEL), 0, 4 * 16);
+		MemoryUtil.memSet(address(NORMAL), 0, 4 * 9);
+		markDirty();
+		return this;
+	}
+
+	public ColumnModelData loadIdentity() {
+		Matrix4f model = new Matrix4f();
+		model.setIdentity();
+		Matrix3f normal = new Matrix3f();
+		normal.setIdentity();
+		return setTransform(model, normal);
+	}
+
+	@Override
+	public boolean shiftOrigin(Vec3i offset) {
+		Matrix4f model = new Matrix4f();
+		Matrix3f normal = new Matrix3f();
+		getTransform(model, normal);
+
+		model.multiplyBackward(Matrix4f.createTranslateMatrix(-offset.getX(), -offset.getY(), -offset.getZ()));
+		setTransform(model, normal);
+		return true;
+	}
+
+	/**
+	 * Read the transform back into the given matrices.
+	 */
+	public void getTransform(Matrix4f model, Matrix3f normal) {
+		((MatrixWrite) (Object) model).flywheel$readUnsafe(address(MODEL));
+		((MatrixWrite) (Object) normal).flywheel$readUnsafe(address(NORMAL));
+	}
+
+	public byte getR() {
+		return MemoryUtil.memGetByte(address(COLOR));
+	}
+
+	public byte getG() {
+		return MemoryUtil.memGetByte(address(COLOR) + 1);
+	}
+
+	public byte getB() {
+		return MemoryUtil.memGetByte(address(COLOR) + 2);
+	}
+
+	public byte getA() {
+		return MemoryUtil.memGetByte(address(COLOR) + 3);
+	}
+}
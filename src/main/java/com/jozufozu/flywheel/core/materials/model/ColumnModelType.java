@@ -0,0 +1,43 @@
+package com.jozufozu.flywheel.core.materials.model;
+
+import com.jozufozu.flywheel.api.struct.Batched;
+import com.jozufozu.flywheel.api.struct.Columnar;
+import com.jozufozu.flywheel.api.struct.StructWriter;
+import com.jozufozu.flywheel.backend.gl.buffer.VecBuffer;
+import com.jozufozu.flywheel.backend.struct.ColumnWriterUnsafe;
+import com.jozufozu.flywheel.core.Programs;
+import com.jozufozu.flywheel.core.layout.BufferLayout;
+import com.jozufozu.flywheel.core.model.ModelTransformer;
+
+import net.minecraft.resources.ResourceLocation;
+
+public class ColumnModelType implements Columnar<ColumnModelData>, Batched<ColumnModelData> {
+
+	@Override
+	public ColumnModelData create() {
+		return new ColumnModelData();
+	}
+
+	@Override
+	public BufferLayout getLayout() {
+		return ModelType.FORMAT;
+	}
+
+	@Override
+	public StructWriter<ColumnModelData> getWriter(VecBuffer backing) {
+		return new ColumnWriterUnsafe<>(backing, this);
+	}
+
+	@Override
+	public ResourceLocation getProgramSpec() {
+		return Programs.TRANSFORMED;
+	}
+
+	@Override
+	public void transform(ColumnModelData d, ModelTransformer.Params b) {
+		// params are always reset to identity before this is called, so we can load the matrices directly
+		d.getTransform(b.model, b.normal);
+		b.color(d.getR(), d.getG(), d.getB(), d.getA())
+				.light(d.getPackedLight());
+	}
+}
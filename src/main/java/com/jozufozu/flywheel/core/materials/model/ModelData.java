@@ -7,6 +7,7 @@ import com.mojang.math.Matrix3f;
 import com.mojang.math.Matrix4f;
 import com.mojang.math.Quaternion;
 
+import net.minecraft.core.Vec3i;
 import net.minecraft.util.Mth;
 
 public class ModelData extends BasicData implements Transform<ModelData> {
@@ -93,4 +94,13 @@ public class ModelData extends BasicData implements Transform<ModelData> {
 		this.normal.mul(normal);
 		return this;
 	}
+
+	@Override
+	public boolean shiftOrigin(Vec3i offset) {
+		markDirty();
+
+		// applied after the transform, so empty transforms stay empty
+		model.multiplyBackward(Matrix4f.createTranslateMatrix(-offset.getX(), -offset.getY(), -offset.getZ()));
+		return true;
+	}
 }
@@ -5,6 +5,7 @@ import com.mojang.math.Quaternion;
 import com.mojang.math.Vector3f;
 
 import net.minecraft.core.BlockPos;
+import net.minecraft.core.Vec3i;
 
 public class OrientedData extends BasicData {
 
@@ -81,5 +82,11 @@ public class OrientedData extends BasicData {
 		return this;
 	}
 
+	@Override
+	public boolean shiftOrigin(Vec3i offset) {
+		nudge(-offset.getX(), -offset.getY(), -offset.getZ());
+		return true;
+	}
+
 }
 
@@ -0,0 +1,111 @@
+package com.jozufozu.flywheel.core.model;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+import com.jozufozu.flywheel.Flywheel;
+import com.jozufozu.flywheel.api.vertex.VertexList;
+import com.jozufozu.flywheel.api.vertex.VertexType;
+import com.jozufozu.flywheel.backend.model.ElementBuffer;
+import com.mojang.math.Vector4f;
+
+/**
+ * A model that is built in the background.
+ *
+ * <p>
+ *     Until the build finishes the model has no vertices, and anything that needs the actual mesh throws.
+ *     Wait for {@link #isReady()} before uploading it.
+ * </p>
+ */
+public class AsyncModel implements Model {
+
+	private final String name;
+	private final CompletableFuture<Model> future;
+
+	public AsyncModel(String name, CompletableFuture<Model> future) {
+		this.name = name;
+		this.future = future;
+	}
+
+	/**
+	 * Start building a model.
+	 *
+	 * @param key           An object that uniquely identifies the model, used as its name until it is ready.
+	 * @param modelSupplier A factory that creates the model. Must be safe to call off the render thread.
+	 * @param executor      Where to run the factory.
+	 */
+	public static AsyncModel supply(Object key, Supplier<Model> modelSupplier, Executor executor) {
+		String name = String.valueOf(key);
+
+		CompletableFuture<Model> future = CompletableFuture.supplyAsync(modelSupplier, executor);
+		future.exceptionally(e -> {
+			Flywheel.LOGGER.error(String.format("Error building model '%s':", name), e);
+			return null;
+		});
+
+		return new AsyncModel(name, future);
+	}
+
+	/**
+	 * @return true once the model was built successfully.
+	 */
+	public boolean isReady() {
+		return future.isDone() && !future.isCompletedExceptionally();
+	}
+
+	/**
+	 * @return true if building the model threw. The model will never become ready.
+	 */
+	public boolean isFailed() {
+		return future.isCompletedExceptionally();
+	}
+
+	/**
+	 * @return The built model.
+	 * @throws IllegalStateException if the model is not {@link #isReady() ready}.
+	 */
+	public Model get() {
+		if (!isReady()) {
+			throw new IllegalStateException("Model '" + name + "' is not ready");
+		}
+
+		return future.join();
+	}
+
+	@Override
+	public String name() {
+		return isReady() ? get().name() : name;
+	}
+
+	@Override
+	public VertexList getReader() {
+		return get().getReader();
+	}
+
+	@Override
+	public int vertexCount() {
+		return isReady() ? get().vertexCount() : 0;
+	}
+
+	@Override
+	public VertexType getType() {
+		return isReady() ? get().getType() : Model.super.getType();
+	}
+
+	@Override
+	public ElementBuffer createEBO() {
+		return get().createEBO();
+	}
+
+	@Override
+	public Vector4f getBoundingSphere() {
+		return get().getBoundingSphere();
+	}
+
+	@Override
+	public void writeInto(ByteBuffer buffer) {
+		get().writeInto(buffer);
+	}
+}
@@ -29,7 +29,7 @@ public class BlockModel implements Model {
 	}
 
 	public BlockModel(BakedModel model, BlockState referenceState, PoseStack ms) {
-		reader = Formats.BLOCK.createReader(ModelUtil.getBufferBuilder(model, referenceState, ms));
+		reader = MeshCache.getOrMesh(model, referenceState, ms, () -> Formats.BLOCK.createReader(ModelUtil.getBufferBuilder(model, referenceState, ms)));
 		name = referenceState.toString();
 	}
 
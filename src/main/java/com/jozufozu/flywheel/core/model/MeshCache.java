@@ -0,0 +1,254 @@
+package com.jozufozu.flywheel.core.model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import javax.annotation.Nullable;
+
+import org.lwjgl.system.MemoryStack;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.jozufozu.flywheel.Flywheel;
+import com.jozufozu.flywheel.api.vertex.VertexList;
+import com.jozufozu.flywheel.config.FlwConfig;
+import com.jozufozu.flywheel.core.Formats;
+import com.jozufozu.flywheel.core.vertex.BlockVertexListUnsafe;
+import com.jozufozu.flywheel.core.virtual.VirtualEmptyModelData;
+import com.mojang.blaze3d.vertex.PoseStack;
+
+import net.minecraft.Util;
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.renderer.block.model.BakedQuad;
+import net.minecraft.client.resources.model.BakedModel;
+import net.minecraft.core.Direction;
+import net.minecraft.world.level.block.state.BlockState;
+
+/**
+ * Keeps the meshes of {@link BlockModel}s on disk, so reloads and world joins don't have to tesselate them again.
+ *
+ * <p>
+ *     Entries are content addressed: the key is a hash of the model's quads, the reference state, the transform and the
+ *     smooth lighting option. A resource pack that changes a model changes its quads, and with them the key, so entries
+ *     never have to be invalidated. To keep stale ones from piling up, the whole cache is wiped whenever the format
+ *     version or the list of resource packs changes, see {@link #pruneStale()}.
+ * </p>
+ */
+public final class MeshCache {
+
+	private static final int MAGIC = 0x464C574D; // FLWM
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 16;
+	private static final String STAMP_FILE = "stamp";
+
+	private static final Direction[] DIRECTIONS = Direction.values();
+
+	private MeshCache() {
+	}
+
+	/**
+	 * Read a mesh from the cache, or build it and write it to the cache.
+	 *
+	 * @param mesher Builds the mesh on a cache miss.
+	 */
+	public static VertexList getOrMesh(BakedModel model, BlockState referenceState, PoseStack poseStack, Supplier<VertexList> mesher) {
+		if (!FlwConfig.get().meshCache()) {
+			return mesher.get();
+		}
+
+		Path file;
+		try {
+			file = getDirectory().resolve(key(model, referenceState, poseStack) + ".bin");
+		} catch (Exception e) {
+			// some models don't like being asked for their quads out of context
+			return mesher.get();
+		}
+
+		VertexList cached = load(file);
+
+		if (cached != null) {
+			return cached;
+		}
+
+		VertexList reader = mesher.get();
+		store(file, reader);
+		return reader;
+	}
+
+	/**
+	 * Wipe the cache if it was written by another version or with other resource packs. Called on resource reload.
+	 */
+	public static void pruneStale() {
+		if (!FlwConfig.get().meshCache()) {
+			return;
+		}
+
+		Path directory = getDirectory();
+		Path stampFile = directory.resolve(STAMP_FILE);
+		String stamp = VERSION + "\n" + String.join("\n", Minecraft.getInstance()
+				.getResourcePackRepository()
+				.getSelectedIds());
+
+		try {
+			if (Files.isRegularFile(stampFile) && Files.readString(stampFile).equals(stamp)) {
+				return;
+			}
+
+			if (Files.isDirectory(directory)) {
+				try (Stream<Path> files = Files.list(directory)) {
+					for (Path file : (Iterable<Path>) files::iterator) {
+						Files.deleteIfExists(file);
+					}
+				}
+			}
+
+			Files.createDirectories(directory);
+			Files.writeString(stampFile, stamp);
+		} catch (IOException e) {
+			Flywheel.LOGGER.warn("Could not clear the mesh cache:", e);
+		}
+	}
+
+	private static Path getDirectory() {
+		return Minecraft.getInstance().gameDirectory.toPath()
+				.resolve(".flywheel")
+				.resolve("meshes");
+	}
+
+	private static String key(BakedModel model, BlockState referenceState, PoseStack poseStack) {
+		Hasher hasher = Hashing.murmur3_128()
+				.newHasher();
+
+		hasher.putInt(VERSION);
+		hasher.putString(referenceState.toString(), StandardCharsets.UTF_8);
+		hasher.putBoolean(model.useAmbientOcclusion());
+		// decides whether ambient occlusion is baked into the vertex colors
+		hasher.putBoolean(Minecraft.useAmbientOcclusion());
+
+		try (MemoryStack stack = MemoryStack.stackPush()) {
+			FloatBuffer pose = stack.mallocFloat(16);
+			poseStack.last()
+					.pose()
+					.store(pose);
+
+			for (int i = 0; i < 16; i++) {
+				hasher.putFloat(pose.get(i));
+			}
+		}
+
+		// Same seed the tesselator uses, so we see the same quads it will.
+		Random random = new Random();
+		for (int i = 0; i <= DIRECTIONS.length; i++) {
+			Direction side = i < DIRECTIONS.length ? DIRECTIONS[i] : null;
+			random.setSeed(42);
+
+			hasher.putInt(i);
+			for (BakedQuad quad : model.getQuads(referenceState, side, random, VirtualEmptyModelData.INSTANCE)) {
+				for (int vertex : quad.getVertices()) {
+					hasher.putInt(vertex);
+				}
+				hasher.putInt(quad.getTintIndex());
+				hasher.putBoolean(quad.isShade());
+			}
+		}
+
+		return hasher.hash()
+				.toString();
+	}
+
+	@Nullable
+	private static VertexList load(Path file) {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long size = channel.size();
+
+			if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+				return null;
+			}
+
+			MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			mapped.order(ByteOrder.nativeOrder());
+
+			if (mapped.getInt(0) != MAGIC || mapped.getInt(4) != VERSION) {
+				return null;
+			}
+
+			int vertexCount = mapped.getInt(8);
+			int unshadedStartVertex = mapped.getInt(12);
+
+			ByteBuffer data = mapped.slice(HEADER_SIZE, (int) size - HEADER_SIZE)
+					.order(ByteOrder.nativeOrder());
+
+			if (vertexCount < 0 || data.remaining() < Formats.BLOCK.byteOffset(vertexCount)) {
+				return null;
+			}
+
+			// the vertex list copies the data, so the mapping can go away with the channel
+			if (unshadedStartVertex < 0) {
+				return Formats.BLOCK.createReader(data, vertexCount);
+			} else {
+				return Formats.BLOCK.createReader(data, vertexCount, unshadedStartVertex);
+			}
+		} catch (NoSuchFileException e) {
+			return null;
+		} catch (IOException e) {
+			Flywheel.LOGGER.warn(String.format("Could not read cached mesh '%s':", file), e);
+			return null;
+		}
+	}
+
+	private static void store(Path file, VertexList reader) {
+		if (!(reader instanceof BlockVertexListUnsafe list)) {
+			return;
+		}
+
+		ByteBuffer contents = list.getContents();
+		int vertexCount = list.getVertexCount();
+		int unshadedStartVertex = list instanceof BlockVertexListUnsafe.Shaded shaded ? shaded.getUnshadedStartVertex() : -1;
+
+		Util.ioPool()
+				.execute(() -> write(file, contents, vertexCount, unshadedStartVertex));
+	}
+
+	private static void write(Path file, ByteBuffer contents, int vertexCount, int unshadedStartVertex) {
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE)
+				.order(ByteOrder.nativeOrder());
+		header.putInt(MAGIC)
+				.putInt(VERSION)
+				.putInt(vertexCount)
+				.putInt(unshadedStartVertex)
+				.flip();
+
+		try {
+			Path directory = file.getParent();
+			Files.createDirectories(directory);
+
+			// write to a temporary file first, so nobody ever maps a half written entry
+			Path temp = Files.createTempFile(directory, "mesh", ".tmp");
+			try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+				while (header.hasRemaining()) {
+					channel.write(header);
+				}
+				while (contents.hasRemaining()) {
+					channel.write(contents);
+				}
+			}
+
+			Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			Flywheel.LOGGER.warn(String.format("Could not cache mesh '%s':", file), e);
+		}
+	}
+}
@@ -7,6 +7,7 @@ import com.jozufozu.flywheel.api.vertex.VertexType;
 import com.jozufozu.flywheel.backend.model.ElementBuffer;
 import com.jozufozu.flywheel.core.Formats;
 import com.jozufozu.flywheel.core.QuadConverter;
+import com.mojang.math.Vector4f;
 
 /**
  * A model that can be rendered by flywheel.
@@ -76,6 +77,53 @@ public interface Model {
 		return vertexCount() == 0;
 	}
 
+	/**
+	 * Compute a sphere enclosing every vertex of this model, in model space.
+	 *
+	 * <p>
+	 *     The sphere is centered on the model's bounding box, so it is not minimal, but it's cheap and good enough for
+	 *     culling. Callers should cache the result.
+	 * </p>
+	 * @return A vector whose xyz is the center of the sphere and w is the radius.
+	 */
+	default Vector4f getBoundingSphere() {
+		VertexList reader = getReader();
+		int vertexCount = reader.getVertexCount();
+
+		if (vertexCount == 0) {
+			return new Vector4f(0, 0, 0, 0);
+		}
+
+		float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY, minZ = Float.POSITIVE_INFINITY;
+		float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY, maxZ = Float.NEGATIVE_INFINITY;
+
+		for (int i = 0; i < vertexCount; i++) {
+			float x = reader.getX(i);
+			float y = reader.getY(i);
+			float z = reader.getZ(i);
+			minX = Math.min(minX, x);
+			minY = Math.min(minY, y);
+			minZ = Math.min(minZ, z);
+			maxX = Math.max(maxX, x);
+			maxY = Math.max(maxY, y);
+			maxZ = Math.max(maxZ, z);
+		}
+
+		float centerX = (minX + maxX) * 0.5f;
+		float centerY = (minY + maxY) * 0.5f;
+		float centerZ = (minZ + maxZ) * 0.5f;
+
+		float radiusSq = 0;
+		for (int i = 0; i < vertexCount; i++) {
+			float dx = reader.getX(i) - centerX;
+			float dy = reader.getY(i) - centerY;
+			float dz = reader.getZ(i) - centerZ;
+			radiusSq = Math.max(radiusSq, dx * dx + dy * dy + dz * dz);
+		}
+
+		return new Vector4f(centerX, centerY, centerZ, (float) Math.sqrt(radiusSq));
+	}
+
 	default void writeInto(ByteBuffer buffer) {
 		getType().createWriter(buffer).writeVertexList(getReader());
 	}
@@ -2,9 +2,15 @@ package com.jozufozu.flywheel.core.model;
 
 import java.util.function.IntPredicate;
 
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.system.MemoryUtil;
+
 import com.jozufozu.flywheel.api.vertex.ShadedVertexList;
 import com.jozufozu.flywheel.api.vertex.VertexList;
+import com.jozufozu.flywheel.backend.model.DirectVertexConsumer;
 import com.jozufozu.flywheel.util.DiffuseLightCalculator;
+import com.jozufozu.flywheel.util.MatrixWrite;
+import com.jozufozu.flywheel.util.RenderMath;
 import com.jozufozu.flywheel.util.transform.Transform;
 import com.mojang.blaze3d.vertex.PoseStack;
 import com.mojang.blaze3d.vertex.VertexConsumer;
@@ -26,6 +32,11 @@ public class ModelTransformer {
 
 	public final Context context = new Context();
 
+	/**
+	 * The model's vertices unpacked into flat arrays, for {@link #renderInto(Params, PoseStack, DirectVertexConsumer)}.
+	 */
+	private volatile VertexArrays arrays;
+
 	public ModelTransformer(Model model) {
 		this.model = model;
 		reader = model.getReader();
@@ -122,6 +133,210 @@ public class ModelTransformer {
 		}
 	}
 
+	/**
+	 * Transform the model straight into the memory of a {@link DirectVertexConsumer}.
+	 *
+	 * <p>
+	 *     The matrices are unpacked into locals once, and the vertices are read from flat arrays in a few tight loops,
+	 *     one per group of attributes, instead of going through the {@link VertexConsumer} call chain for every
+	 *     element. The output is the same as {@link #renderInto(Params, PoseStack, VertexConsumer)}. Safe to call from
+	 *     many threads at once, as long as each has its own consumer.
+	 * </p>
+	 */
+	public void renderInto(Params params, PoseStack input, DirectVertexConsumer consumer) {
+		if (isEmpty())
+			return;
+
+		if (params.spriteShiftFunc != null) {
+			// sprite shifts go through the consumer, so they can't be batched
+			renderInto(params, input, (VertexConsumer) consumer);
+			return;
+		}
+
+		Matrix4f modelMat = input.last()
+				.pose()
+				.copy();
+		modelMat.multiply(params.model);
+
+		Matrix3f normalMat;
+		if (context.fullNormalTransform) {
+			normalMat = input.last().normal().copy();
+			normalMat.mul(params.normal);
+		} else {
+			normalMat = params.normal.copy();
+		}
+
+		VertexArrays arrays = getArrays();
+		final int vertexCount = arrays.vertexCount;
+		final int stride = consumer.getStride();
+		final long base = consumer.reserve(vertexCount);
+
+		final int position = consumer.getPositionOffset();
+		if (position >= 0) {
+			float m00, m01, m02, m03, m10, m11, m12, m13, m20, m21, m22, m23;
+			try (MemoryStack stack = MemoryStack.stackPush()) {
+				long ptr = stack.nmalloc(16 * 4);
+				((MatrixWrite) (Object) modelMat).flywheel$writeUnsafe(ptr);
+				// column major
+				m00 = MemoryUtil.memGetFloat(ptr);
+				m10 = MemoryUtil.memGetFloat(ptr + 4);
+				m20 = MemoryUtil.memGetFloat(ptr + 8);
+				m01 = MemoryUtil.memGetFloat(ptr + 16);
+				m11 = MemoryUtil.memGetFloat(ptr + 20);
+				m21 = MemoryUtil.memGetFloat(ptr + 24);
+				m02 = MemoryUtil.memGetFloat(ptr + 32);
+				m12 = MemoryUtil.memGetFloat(ptr + 36);
+				m22 = MemoryUtil.memGetFloat(ptr + 40);
+				m03 = MemoryUtil.memGetFloat(ptr + 48);
+				m13 = MemoryUtil.memGetFloat(ptr + 52);
+				m23 = MemoryUtil.memGetFloat(ptr + 56);
+			}
+
+			final float[] xs = arrays.x;
+			final float[] ys = arrays.y;
+			final float[] zs = arrays.z;
+			for (int i = 0; i < vertexCount; i++) {
+				float x = xs[i];
+				float y = ys[i];
+				float z = zs[i];
+				long ptr = base + (long) i * stride + position;
+				MemoryUtil.memPutFloat(ptr, m00 * x + m01 * y + m02 * z + m03);
+				MemoryUtil.memPutFloat(ptr + 4, m10 * x + m11 * y + m12 * z + m13);
+				MemoryUtil.memPutFloat(ptr + 8, m20 * x + m21 * y + m22 * z + m23);
+			}
+		}
+
+		final int uv = consumer.getUvOffset();
+		if (uv >= 0) {
+			final float[] us = arrays.u;
+			final float[] vs = arrays.v;
+			for (int i = 0; i < vertexCount; i++) {
+				long ptr = base + (long) i * stride + uv;
+				MemoryUtil.memPutFloat(ptr, us[i]);
+				MemoryUtil.memPutFloat(ptr + 4, vs[i]);
+			}
+		}
+
+		final int overlay = consumer.getOverlayOffset();
+		if (overlay >= 0) {
+			short overlayU = (short) (params.overlay & 0xFFFF);
+			short overlayV = (short) (params.overlay >> 16);
+			for (int i = 0; i < vertexCount; i++) {
+				long ptr = base + (long) i * stride + overlay;
+				MemoryUtil.memPutShort(ptr, overlayU);
+				MemoryUtil.memPutShort(ptr + 2, overlayV);
+			}
+		}
+
+		final int light = consumer.getLightOffset();
+		if (light >= 0) {
+			final int[] lights = arrays.light;
+			for (int i = 0; i < vertexCount; i++) {
+				int packed = params.useParamLight ? params.packedLightCoords : lights[i];
+				long ptr = base + (long) i * stride + light;
+				MemoryUtil.memPutShort(ptr, (short) (packed & 0xFFFF));
+				MemoryUtil.memPutShort(ptr + 2, (short) (packed >> 16 & 0xFFFF));
+			}
+		}
+
+		final int normal = consumer.getNormalOffset();
+		final int color = consumer.getColorOffset();
+		if (normal < 0 && color < 0) {
+			return;
+		}
+
+		float n00, n01, n02, n10, n11, n12, n20, n21, n22;
+		try (MemoryStack stack = MemoryStack.stackPush()) {
+			long ptr = stack.nmalloc(9 * 4);
+			((MatrixWrite) (Object) normalMat).flywheel$writeUnsafe(ptr);
+			// column major
+			n00 = MemoryUtil.memGetFloat(ptr);
+			n10 = MemoryUtil.memGetFloat(ptr + 4);
+			n20 = MemoryUtil.memGetFloat(ptr + 8);
+			n01 = MemoryUtil.memGetFloat(ptr + 12);
+			n11 = MemoryUtil.memGetFloat(ptr + 16);
+			n21 = MemoryUtil.memGetFloat(ptr + 20);
+			n02 = MemoryUtil.memGetFloat(ptr + 24);
+			n12 = MemoryUtil.memGetFloat(ptr + 28);
+			n22 = MemoryUtil.memGetFloat(ptr + 32);
+		}
+
+		final boolean outputDiffuse = context.outputColorDiffuse;
+		final DiffuseLightCalculator diffuseCalculator = DiffuseLightCalculator.forCurrentLevel();
+
+		final float[] nxs = arrays.nx;
+		final float[] nys = arrays.ny;
+		final float[] nzs = arrays.nz;
+		final byte[] colors = arrays.color;
+		final boolean[] shaded = arrays.shaded;
+		for (int i = 0; i < vertexCount; i++) {
+			float normalX = nxs[i];
+			float normalY = nys[i];
+			float normalZ = nzs[i];
+
+			float nx = n00 * normalX + n01 * normalY + n02 * normalZ;
+			float ny = n10 * normalX + n11 * normalY + n12 * normalZ;
+			float nz = n20 * normalX + n21 * normalY + n22 * normalZ;
+
+			// same as Vector3f#normalize
+			float lengthSqr = nx * nx + ny * ny + nz * nz;
+			if (lengthSqr >= 1.0E-5F) {
+				float invLength = Mth.fastInvSqrt(lengthSqr);
+				nx *= invLength;
+				ny *= invLength;
+				nz *= invLength;
+			}
+
+			long vertex = base + (long) i * stride;
+
+			if (normal >= 0) {
+				MemoryUtil.memPutByte(vertex + normal, RenderMath.nb(nx));
+				MemoryUtil.memPutByte(vertex + normal + 1, RenderMath.nb(ny));
+				MemoryUtil.memPutByte(vertex + normal + 2, RenderMath.nb(nz));
+			}
+
+			if (color >= 0) {
+				int r, g, b, a;
+				if (params.useParamColor) {
+					r = params.r;
+					g = params.g;
+					b = params.b;
+					a = params.a;
+				} else {
+					r = Byte.toUnsignedInt(colors[i * 4]);
+					g = Byte.toUnsignedInt(colors[i * 4 + 1]);
+					b = Byte.toUnsignedInt(colors[i * 4 + 2]);
+					a = Byte.toUnsignedInt(colors[i * 4 + 3]);
+				}
+
+				if (outputDiffuse) {
+					float instanceDiffuse = diffuseCalculator.getDiffuse(nx, ny, nz, shaded[i]);
+					r = transformColor(r, instanceDiffuse);
+					g = transformColor(g, instanceDiffuse);
+					b = transformColor(b, instanceDiffuse);
+				}
+
+				MemoryUtil.memPutByte(vertex + color, (byte) r);
+				MemoryUtil.memPutByte(vertex + color + 1, (byte) g);
+				MemoryUtil.memPutByte(vertex + color + 2, (byte) b);
+				MemoryUtil.memPutByte(vertex + color + 3, (byte) a);
+			}
+		}
+	}
+
+	private VertexArrays getArrays() {
+		VertexArrays out = arrays;
+		if (out == null) {
+			synchronized (this) {
+				out = arrays;
+				if (out == null) {
+					out = arrays = new VertexArrays(reader, shadedPredicate);
+				}
+			}
+		}
+		return out;
+	}
+
 	public boolean isEmpty() {
 		return reader.isEmpty();
 	}
@@ -139,6 +354,56 @@ public class ModelTransformer {
 		return Mth.clamp((int) (component * scale), 0, 255);
 	}
 
+	/**
+	 * Structure of arrays copy of a model's vertices. Models never change, so this is only built once.
+	 */
+	private static class VertexArrays {
+		private final int vertexCount;
+		private final float[] x;
+		private final float[] y;
+		private final float[] z;
+		private final float[] nx;
+		private final float[] ny;
+		private final float[] nz;
+		private final float[] u;
+		private final float[] v;
+		private final byte[] color;
+		private final int[] light;
+		private final boolean[] shaded;
+
+		private VertexArrays(VertexList reader, IntPredicate shadedPredicate) {
+			vertexCount = reader.getVertexCount();
+			x = new float[vertexCount];
+			y = new float[vertexCount];
+			z = new float[vertexCount];
+			nx = new float[vertexCount];
+			ny = new float[vertexCount];
+			nz = new float[vertexCount];
+			u = new float[vertexCount];
+			v = new float[vertexCount];
+			color = new byte[vertexCount * 4];
+			light = new int[vertexCount];
+			shaded = new boolean[vertexCount];
+
+			for (int i = 0; i < vertexCount; i++) {
+				x[i] = reader.getX(i);
+				y[i] = reader.getY(i);
+				z[i] = reader.getZ(i);
+				nx[i] = reader.getNX(i);
+				ny[i] = reader.getNY(i);
+				nz[i] = reader.getNZ(i);
+				u[i] = reader.getU(i);
+				v[i] = reader.getV(i);
+				color[i * 4] = reader.getR(i);
+				color[i * 4 + 1] = reader.getG(i);
+				color[i * 4 + 2] = reader.getB(i);
+				color[i * 4 + 3] = reader.getA(i);
+				light[i] = reader.getLight(i);
+				shaded[i] = shadedPredicate.test(i);
+			}
+		}
+	}
+
 	@FunctionalInterface
 	public interface SpriteShiftFunc {
 		void shift(VertexConsumer builder, float u, float v);
@@ -0,0 +1,125 @@
+package com.jozufozu.flywheel.core.shader;
+
+import static org.lwjgl.opengl.GL20.glUniform1i;
+import static org.lwjgl.opengl.GL20.glUniform2i;
+import static org.lwjgl.opengl.GL20.glUniform3f;
+import static org.lwjgl.opengl.GL20.glUniform3i;
+import static org.lwjgl.opengl.GL20.glUniform4f;
+import static org.lwjgl.opengl.GL20.glUniform4fv;
+
+import javax.annotation.Nullable;
+
+import com.jozufozu.flywheel.backend.gl.shader.GlProgram;
+import com.jozufozu.flywheel.backend.instancing.SectionVisibility;
+import com.jozufozu.flywheel.backend.instancing.instancing.HiZBuffer;
+import com.jozufozu.flywheel.core.layout.BufferLayout;
+import com.jozufozu.flywheel.util.FrustumPlanes;
+import com.mojang.math.Matrix4f;
+import com.mojang.math.Vector4f;
+
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.Vec3i;
+import net.minecraft.resources.ResourceLocation;
+
+/**
+ * A transform feedback program that copies the visible subset of an instance buffer into another buffer.
+ *
+ * @see com.jozufozu.flywheel.core.compile.CullingTemplateData
+ */
+public class CullingProgram extends GlProgram {
+	protected final int uFrustumPlanes = getUniformLocation("uFrustumPlanes");
+	protected final int uFrustumOrigin = getUniformLocation("uFrustumOrigin");
+	protected final int uModelBounds = getUniformLocation("uModelBounds");
+	protected final int uSectionVisibility = getUniformLocation("uSectionVisibility");
+	protected final int uSectionGridMin = getUniformLocation("uSectionGridMin");
+	protected final int uSectionGridSize = getUniformLocation("uSectionGridSize");
+	protected final int uViewProjection = getUniformLocation("uViewProjection");
+	protected final int uHiZ = getUniformLocation("uHiZ");
+	protected final int uHiZLevels = getUniformLocation("uHiZLevels");
+	protected final int uHiZDepthSize = getUniformLocation("uHiZDepthSize");
+
+	private final BufferLayout culledLayout;
+
+	public CullingProgram(ResourceLocation name, int handle, BufferLayout culledLayout) {
+		super(name, handle);
+		this.culledLayout = culledLayout;
+	}
+
+	/**
+	 * @return The layout of the instances this program writes out.
+	 */
+	public BufferLayout getCulledLayout() {
+		return culledLayout;
+	}
+
+	public void uploadFrustum(FrustumPlanes frustum) {
+		if (uFrustumPlanes >= 0) {
+			glUniform4fv(uFrustumPlanes, frustum.getPlanes());
+		}
+
+		if (uFrustumOrigin >= 0) {
+			glUniform3f(uFrustumOrigin, (float) frustum.getCameraX(), (float) frustum.getCameraY(), (float) frustum.getCameraZ());
+		}
+	}
+
+	/**
+	 * Bind the sections vanilla found to be visible, or turn section culling off if there are none.
+	 *
+	 * @param origin The origin of the coordinate space the instances are culled in.
+	 */
+	public void uploadSectionVisibility(Vec3i origin) {
+		if (uSectionGridSize < 0) return;
+
+		if (!SectionVisibility.bind()) {
+			glUniform3i(uSectionGridSize, 0, 0, 0);
+			return;
+		}
+
+		if (uSectionVisibility >= 0) {
+			glUniform1i(uSectionVisibility, SectionVisibility.TEXTURE_UNIT.number);
+		}
+
+		if (uSectionGridMin >= 0) {
+			BlockPos min = SectionVisibility.getGridMin();
+			glUniform3i(uSectionGridMin, min.getX() - origin.getX(), min.getY() - origin.getY(), min.getZ() - origin.getZ());
+		}
+
+		glUniform3i(uSectionGridSize, SectionVisibility.getGridSizeX(), SectionVisibility.getGridSizeY(), SectionVisibility.getGridSizeZ());
+	}
+
+	/**
+	 * Bind a depth pyramid to test instances against, or turn depth testing off if there is none.
+	 *
+	 * @param viewProjection The view projection the depth was drawn with, relative to the culling origin.
+	 */
+	public void uploadHiZ(Matrix4f viewProjection, @Nullable HiZBuffer hiZ) {
+		if (uHiZLevels < 0) return;
+
+		if (hiZ == null || !hiZ.isValid()) {
+			glUniform1i(uHiZLevels, 0);
+			return;
+		}
+
+		hiZ.bind();
+
+		if (uHiZ >= 0) {
+			glUniform1i(uHiZ, HiZBuffer.TEXTURE_UNIT.number);
+		}
+
+		if (uViewProjection >= 0) {
+			uploadMatrixUniform(uViewProjection, viewProjection);
+		}
+
+		if (uHiZDepthSize >= 0) {
+			glUniform2i(uHiZDepthSize, hiZ.getDepthWidth(), hiZ.getDepthHeight());
+		}
+
+		glUniform1i(uHiZLevels, hiZ.getLevels());
+	}
+
+	public void uploadModelBounds(Vector4f sphere) {
+		if (uModelBounds < 0) return;
+
+		glUniform4f(uModelBounds, sphere.x(), sphere.y(), sphere.z(), sphere.w());
+	}
+}
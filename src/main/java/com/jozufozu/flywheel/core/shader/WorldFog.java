@@ -1,22 +1,22 @@
 package com.jozufozu.flywheel.core.shader;
 
-import org.lwjgl.opengl.GL20;
-
 import com.jozufozu.flywheel.backend.gl.shader.GlProgram;
 import com.mojang.blaze3d.systems.RenderSystem;
 
 public class WorldFog {
 
+	private final GlProgram program;
 	private final int uFogColor;
 	private final int uFogRange;
 
 	public WorldFog(GlProgram program) {
+		this.program = program;
 		this.uFogColor = program.getUniformLocation("uFogColor");
 		this.uFogRange = program.getUniformLocation("uFogRange");
 	}
 
 	public void bind() {
-		GL20.glUniform2f(uFogRange, RenderSystem.getShaderFogStart(), RenderSystem.getShaderFogEnd());
-		GL20.glUniform4fv(uFogColor, RenderSystem.getShaderFogColor());
+		program.setUniform2f(uFogRange, RenderSystem.getShaderFogStart(), RenderSystem.getShaderFogEnd());
+		program.setUniform4fv(uFogColor, RenderSystem.getShaderFogColor());
 	}
 }
@@ -0,0 +1,17 @@
+package com.jozufozu.flywheel.core.shader;
+
+import com.jozufozu.flywheel.light.WorldLight;
+
+public enum WorldLightStateProvider implements GameStateProvider {
+	INSTANCE;
+
+	@Override
+	public boolean isTrue() {
+		return WorldLight.isActive();
+	}
+
+	@Override
+	public void alterConstants(ShaderConstants constants) {
+		constants.define("WORLD_LIGHT");
+	}
+}
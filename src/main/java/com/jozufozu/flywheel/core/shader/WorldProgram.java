@@ -1,15 +1,15 @@
 package com.jozufozu.flywheel.core.shader;
 
-import static org.lwjgl.opengl.GL20.glUniform1f;
-import static org.lwjgl.opengl.GL20.glUniform2f;
-import static org.lwjgl.opengl.GL20.glUniform3f;
-
 import com.jozufozu.flywheel.backend.gl.shader.GlProgram;
+import com.jozufozu.flywheel.backend.gl.shader.GlProgramPipeline;
+import com.jozufozu.flywheel.light.WorldLight;
 import com.jozufozu.flywheel.util.AnimationTickHolder;
+import com.jozufozu.flywheel.util.box.ImmutableBox;
 import com.mojang.blaze3d.platform.Window;
 import com.mojang.math.Matrix4f;
 
 import net.minecraft.client.Minecraft;
+import net.minecraft.core.Vec3i;
 import net.minecraft.resources.ResourceLocation;
 
 public class WorldProgram extends GlProgram {
@@ -17,16 +17,30 @@ public class WorldProgram extends GlProgram {
 	protected final int uViewProjection = getUniformLocation("uViewProjection");
 	protected final int uCameraPos = getUniformLocation("uCameraPos");
 	protected final int uWindowSize = getUniformLocation("uWindowSize");
+	protected final int uWorldLightMin = getUniformLocation("uWorldLightMin");
+	protected final int uWorldLightSize = getUniformLocation("uWorldLightSize");
+	protected final int uWorldLightOrigin = getUniformLocation("uWorldLightOrigin");
 	private final WorldFog fog;
 
 	protected int uBlockAtlas;
 	protected int uLightMap;
+	protected int uWorldLight;
 
 	public WorldProgram(ResourceLocation name, int handle) {
 		super(name, handle);
 
 		fog = new WorldFog(this);
+		bindSamplers();
+	}
+
+	public WorldProgram(ResourceLocation name, GlProgramPipeline pipeline) {
+		super(name, pipeline);
+
+		fog = new WorldFog(this);
+		bindSamplers();
+	}
 
+	private void bindSamplers() {
 		super.bind();
 		registerSamplers();
 		unbind();
@@ -35,12 +49,13 @@ public class WorldProgram extends GlProgram {
 	protected void registerSamplers() {
 		uBlockAtlas = setSamplerBinding("uBlockAtlas", 0);
 		uLightMap = setSamplerBinding("uLightMap", 2);
+		uWorldLight = setSamplerBinding("uWorldLight", 4);
 	}
 
 	public void uploadViewProjection(Matrix4f viewProjection) {
 		if (uViewProjection < 0) return;
 
-		uploadMatrixUniform(uViewProjection, viewProjection);
+		setUniformMatrix4f(uViewProjection, viewProjection);
 	}
 
 	public void uploadWindowSize() {
@@ -50,19 +65,40 @@ public class WorldProgram extends GlProgram {
 
 		int height = window.getScreenHeight();
 		int width = window.getScreenWidth();
-		glUniform2f(uWindowSize, width, height);
+		setUniform2f(uWindowSize, width, height);
 	}
 
 	public void uploadCameraPos(double camX, double camY, double camZ) {
 		if (uCameraPos < 0) return;
 
-		glUniform3f(uCameraPos, (float) camX, (float) camY, (float) camZ);
+		setUniform3f(uCameraPos, (float) camX, (float) camY, (float) camZ);
+	}
+
+	/**
+	 * Bind the {@link WorldLight} and tell the program where it is.
+	 *
+	 * @param origin The origin coordinate positions in the program are relative to.
+	 */
+	public void uploadWorldLight(Vec3i origin) {
+		ImmutableBox volume = WorldLight.getVolume();
+		if (uWorldLightMin < 0 || volume == null) return;
+
+		WorldLight.bind();
+
+		int sizeX = volume.sizeX();
+		int sizeY = volume.sizeY();
+		int sizeZ = volume.sizeZ();
+
+		setUniform3f(uWorldLightMin, volume.getMinX() - origin.getX(), volume.getMinY() - origin.getY(), volume.getMinZ() - origin.getZ());
+		setUniform3f(uWorldLightSize, sizeX, sizeY, sizeZ);
+		// the texture wraps around, so only the origin modulo its size matters
+		setUniform3f(uWorldLightOrigin, Math.floorMod(origin.getX(), sizeX), Math.floorMod(origin.getY(), sizeY), Math.floorMod(origin.getZ(), sizeZ));
 	}
 
 	public void uploadTime(float renderTime) {
 		if (uTime < 0) return;
 
-		glUniform1f(uTime, renderTime);
+		setUniform1f(uTime, renderTime);
 	}
 
 	@Override
@@ -37,6 +37,14 @@ public abstract class AbstractVertexList implements VertexList, AutoCloseable {
 		((Buffer) this.contents).flip();
 	}
 
+	/**
+	 * @return A view of the raw vertex data. Don't write to it.
+	 */
+	public ByteBuffer getContents() {
+		return contents.duplicate()
+				.order(contents.order());
+	}
+
 	@Override
 	public void close() {
 		MemoryUtil.memFree(contents);
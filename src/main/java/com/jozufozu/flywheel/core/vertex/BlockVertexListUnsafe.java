@@ -101,6 +101,10 @@ public class BlockVertexListUnsafe extends AbstractVertexList {
 			return index < unshadedStartVertex;
 		}
 
+		public int getUnshadedStartVertex() {
+			return unshadedStartVertex;
+		}
+
 	}
 
 }
@@ -30,6 +30,12 @@ public class ForgeEvents {
 		WorldAttached.invalidateWorld(event.getWorld());
 	}
 
+	@SubscribeEvent
+	public static void dispatchLight(BeginFrameEvent event) {
+		if (Backend.isGameActive())
+			LightUpdater.get(event.getWorld()).dispatchPending();
+	}
+
 	@SubscribeEvent
 	public static void tickLight(TickEvent.ClientTickEvent e) {
 		if (e.phase == TickEvent.Phase.END && Backend.isGameActive())
@@ -38,6 +38,11 @@ public class DummyLightUpdater extends LightUpdater {
 		// noop
 	}
 
+	@Override
+	public void dispatchPending() {
+		// noop
+	}
+
 	@Override
 	public Stream<ImmutableBox> getAllBoxes() {
 		return Stream.empty();
@@ -1,6 +1,7 @@
 package com.jozufozu.flywheel.light;
 
 import static org.lwjgl.opengl.GL11.GL_LINEAR;
+import static org.lwjgl.opengl.GL11.GL_REPEAT;
 import static org.lwjgl.opengl.GL11.GL_TEXTURE_MAG_FILTER;
 import static org.lwjgl.opengl.GL11.GL_TEXTURE_MIN_FILTER;
 import static org.lwjgl.opengl.GL11.GL_TEXTURE_WRAP_S;
@@ -19,26 +20,79 @@ import static org.lwjgl.opengl.GL12.glTexImage3D;
 import static org.lwjgl.opengl.GL12.glTexSubImage3D;
 import static org.lwjgl.opengl.GL14.GL_MIRRORED_REPEAT;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.Nullable;
+
 import org.lwjgl.opengl.GL30;
+import org.lwjgl.system.MemoryUtil;
 
 import com.jozufozu.flywheel.backend.gl.GlTexture;
 import com.jozufozu.flywheel.backend.gl.GlTextureUnit;
+import com.jozufozu.flywheel.backend.gl.buffer.GlBuffer;
+import com.jozufozu.flywheel.backend.gl.buffer.GlBufferType;
+import com.jozufozu.flywheel.backend.gl.versioned.GlCompat;
 import com.jozufozu.flywheel.util.box.GridAlignedBB;
 import com.jozufozu.flywheel.util.box.ImmutableBox;
 
 import net.minecraft.world.level.BlockAndTintGetter;
 
+/**
+ * A light volume backed by a 3d texture.
+ *
+ * <p>
+ *     A toroidal volume addresses its texture by world position modulo the texture size, instead of relative to the
+ *     minimum corner of the volume. When it moves, the texture origin scrolls along with it, and only the newly exposed
+ *     slabs are read from the level and uploaded. Shaders sample it at {@code worldPos / size} with the texture set to
+ *     repeat, see {@link #isToroidal()}.
+ * </p>
+ * <p>
+ *     Light updates only upload the regions they touched. With persistent buffers, uploads are staged through a ring
+ *     of pixel unpack buffers so the texture copy happens asynchronously.
+ * </p>
+ */
 public class GPULightVolume extends LightVolume {
 
+	private static final int MAX_DIRTY_REGIONS = 16;
+	private static final int BUFFERED_UPLOADS = 3;
+
 	protected final GridAlignedBB sampleVolume = new GridAlignedBB();
 	private final GlTexture glTexture;
 
 	private final GlTextureUnit textureUnit = GlTextureUnit.T4;
 	protected boolean bufferDirty;
 
+	private final boolean toroidal;
+	/**
+	 * Regions of the world that changed since the last upload, ignored if the whole buffer is dirty.
+	 */
+	private final List<GridAlignedBB> dirtyRegions = new ArrayList<>();
+
+	/**
+	 * Stages uploads so they don't stall on the driver copying from client memory. Only used with persistent buffers.
+	 */
+	@Nullable
+	private GlBuffer unpackBuffer;
+	@Nullable
+	private ByteBuffer staging;
+
+	private int textureSizeX;
+	private int textureSizeY;
+	private int textureSizeZ;
+
 	public GPULightVolume(BlockAndTintGetter level, ImmutableBox sampleVolume) {
+		this(level, sampleVolume, false);
+	}
+
+	/**
+	 * @param toroidal If true, address the texture by world position so moves only upload what changed.
+	 */
+	public GPULightVolume(BlockAndTintGetter level, ImmutableBox sampleVolume, boolean toroidal) {
 		super(level, sampleVolume);
 		this.sampleVolume.assign(sampleVolume);
+		this.toroidal = toroidal;
 
 		glTexture = new GlTexture(GL_TEXTURE_3D);
 
@@ -48,16 +102,14 @@ public class GPULightVolume extends LightVolume {
 		textureUnit.makeActive();
 		glTexture.bind();
 
-		int sizeX = box.sizeX();
-		int sizeY = box.sizeY();
-		int sizeZ = box.sizeZ();
-		glTexImage3D(GL_TEXTURE_3D, 0, GL30.GL_RG8, sizeX, sizeY, sizeZ, 0, GL30.GL_RG, GL_UNSIGNED_BYTE, 0);
+		allocateTexture();
 
+		int wrap = toroidal ? GL_REPEAT : GL_MIRRORED_REPEAT;
 		glTexture.setParameteri(GL_TEXTURE_MIN_FILTER, GL_LINEAR);
 		glTexture.setParameteri(GL_TEXTURE_MAG_FILTER, GL_LINEAR);
-		glTexture.setParameteri(GL_TEXTURE_WRAP_S, GL_MIRRORED_REPEAT);
-		glTexture.setParameteri(GL_TEXTURE_WRAP_R, GL_MIRRORED_REPEAT);
-		glTexture.setParameteri(GL_TEXTURE_WRAP_T, GL_MIRRORED_REPEAT);
+		glTexture.setParameteri(GL_TEXTURE_WRAP_S, wrap);
+		glTexture.setParameteri(GL_TEXTURE_WRAP_R, wrap);
+		glTexture.setParameteri(GL_TEXTURE_WRAP_T, wrap);
 
 		glTexture.unbind();
 		oldState.makeActive();
@@ -71,6 +123,14 @@ public class GPULightVolume extends LightVolume {
 		if (sampleVolume != null) this.sampleVolume.assign(box);
 	}
 
+	/**
+	 * @return true if the texture is addressed by world position modulo its size. Such volumes should be sampled at
+	 * {@code worldPos / size}, rather than {@code (worldPos - min) / size}.
+	 */
+	public boolean isToroidal() {
+		return toroidal;
+	}
+
 	public void bind() {
 		// just in case something goes wrong, or we accidentally call this before this volume is properly disposed of.
 		if (lightData == null || lightData.capacity() == 0) return;
@@ -81,23 +141,123 @@ public class GPULightVolume extends LightVolume {
 		uploadTexture();
 	}
 
+	private void allocateTexture() {
+		textureSizeX = box.sizeX();
+		textureSizeY = box.sizeY();
+		textureSizeZ = box.sizeZ();
+		glTexImage3D(GL_TEXTURE_3D, 0, GL30.GL_RG8, textureSizeX, textureSizeY, textureSizeZ, 0, GL30.GL_RG, GL_UNSIGNED_BYTE, 0);
+	}
+
 	private void uploadTexture() {
+		if (!bufferDirty && dirtyRegions.isEmpty()) return;
+
+		if (textureSizeX != box.sizeX() || textureSizeY != box.sizeY() || textureSizeZ != box.sizeZ()) {
+			// the volume grew or shrank, everything has to be uploaded again anyway
+			allocateTexture();
+			bufferDirty = true;
+		}
+
+		long textureBytes = (long) textureSizeX * textureSizeY * textureSizeZ * 2;
+
+		if (unpackBuffer == null && GlCompat.getInstance()
+				.bufferStorageSupported()) {
+			unpackBuffer = GlBuffer.requestPersistent(GlBufferType.PIXEL_UNPACK_BUFFER, BUFFERED_UPLOADS);
+		}
+
+		if (unpackBuffer != null) {
+			unpackBuffer.bind();
+			unpackBuffer.ensureCapacity(textureBytes);
+			staging = unpackBuffer.getBuffer()
+					.unwrap();
+		}
+
+		glPixelStorei(GL_UNPACK_ALIGNMENT, 2); // we use 2 bytes per texel
+		// the buffer has the same layout as the texture, so the skips select the source region of each upload
+		glPixelStorei(GL_UNPACK_ROW_LENGTH, textureSizeX);
+		glPixelStorei(GL_UNPACK_IMAGE_HEIGHT, textureSizeY);
+
 		if (bufferDirty) {
-			glPixelStorei(GL_UNPACK_ROW_LENGTH, 0);
-			glPixelStorei(GL_UNPACK_SKIP_PIXELS, 0);
-			glPixelStorei(GL_UNPACK_SKIP_ROWS, 0);
-			glPixelStorei(GL_UNPACK_SKIP_IMAGES, 0);
-			glPixelStorei(GL_UNPACK_IMAGE_HEIGHT, 0);
-			glPixelStorei(GL_UNPACK_ALIGNMENT, 2); // we use 2 bytes per texel
-			int sizeX = box.sizeX();
-			int sizeY = box.sizeY();
-			int sizeZ = box.sizeZ();
+			uploadPiece(0, 0, 0, textureSizeX, textureSizeY, textureSizeZ);
+		} else {
+			for (GridAlignedBB region : dirtyRegions) {
+				uploadRegion(region);
+			}
+		}
+
+		glPixelStorei(GL_UNPACK_ROW_LENGTH, 0);
+		glPixelStorei(GL_UNPACK_SKIP_PIXELS, 0);
+		glPixelStorei(GL_UNPACK_SKIP_ROWS, 0);
+		glPixelStorei(GL_UNPACK_SKIP_IMAGES, 0);
+		glPixelStorei(GL_UNPACK_IMAGE_HEIGHT, 0);
+		glPixelStorei(GL_UNPACK_ALIGNMENT, 4); // 4 is the default
+
+		if (unpackBuffer != null) {
+			staging = null;
+			unpackBuffer.doneForThisFrame();
+			// vanilla texture uploads would read from our buffer otherwise
+			unpackBuffer.unbind();
+		}
+
+		bufferDirty = false;
+		dirtyRegions.clear();
+	}
+
+	/**
+	 * Upload a region of the world. Toroidal volumes split it into at most 8 pieces where it wraps around the edges of
+	 * the texture.
+	 */
+	private void uploadRegion(ImmutableBox world) {
+		int x = world.getMinX();
+		while (x < world.getMaxX()) {
+			int texX = toTexture(x, box.getMinX(), textureSizeX);
+			int width = Math.min(world.getMaxX() - x, textureSizeX - texX);
+
+			int y = world.getMinY();
+			while (y < world.getMaxY()) {
+				int texY = toTexture(y, box.getMinY(), textureSizeY);
+				int height = Math.min(world.getMaxY() - y, textureSizeY - texY);
+
+				int z = world.getMinZ();
+				while (z < world.getMaxZ()) {
+					int texZ = toTexture(z, box.getMinZ(), textureSizeZ);
+					int depth = Math.min(world.getMaxZ() - z, textureSizeZ - texZ);
+
+					uploadPiece(texX, texY, texZ, width, height, depth);
+
+					z += depth;
+				}
+				y += height;
+			}
+			x += width;
+		}
+	}
+
+	private int toTexture(int world, int min, int size) {
+		return toroidal ? world & (size - 1) : world - min;
+	}
+
+	private void uploadPiece(int texX, int texY, int texZ, int width, int height, int depth) {
+		glPixelStorei(GL_UNPACK_SKIP_PIXELS, texX);
+		glPixelStorei(GL_UNPACK_SKIP_ROWS, texY);
+		glPixelStorei(GL_UNPACK_SKIP_IMAGES, texZ);
 
-			glTexSubImage3D(GL_TEXTURE_3D, 0, 0, 0, 0, sizeX, sizeY, sizeZ, GL30.GL_RG, GL_UNSIGNED_BYTE, lightData);
+		if (staging == null) {
+			glTexSubImage3D(GL_TEXTURE_3D, 0, texX, texY, texZ, width, height, depth, GL30.GL_RG, GL_UNSIGNED_BYTE, lightData);
+			return;
+		}
 
-			glPixelStorei(GL_UNPACK_ALIGNMENT, 4); // 4 is the default
-			bufferDirty = false;
+		// only the rows being uploaded are copied, the rest of the staging segment is never read
+		long src = MemoryUtil.memAddress(lightData);
+		long dst = MemoryUtil.memAddress(staging);
+		long rowBytes = width * 2L;
+		for (int z = texZ; z < texZ + depth; z++) {
+			for (int y = texY; y < texY + height; y++) {
+				long offset = (texX + textureSizeX * (y + (long) z * textureSizeY)) * 2L;
+				MemoryUtil.memCopy(src + offset, dst + offset, rowBytes);
+			}
 		}
+
+		glTexSubImage3D(GL_TEXTURE_3D, 0, texX, texY, texZ, width, height, depth, GL30.GL_RG, GL_UNSIGNED_BYTE, unpackBuffer.getSegmentOffset());
 	}
 
 	public void unbind() {
@@ -108,12 +268,19 @@ public class GPULightVolume extends LightVolume {
 	public void delete() {
 		super.delete();
 		glTexture.delete();
+
+		if (unpackBuffer != null) {
+			unpackBuffer.delete();
+			unpackBuffer = null;
+		}
 	}
 
 	public void move(ImmutableBox newSampleVolume) {
 		if (lightData == null) return;
 
-		if (box.contains(newSampleVolume)) {
+		if (toroidal) {
+			scroll(newSampleVolume);
+		} else if (box.contains(newSampleVolume)) {
 			sampleVolume.assign(newSampleVolume);
 			initialize();
 		} else {
@@ -121,13 +288,102 @@ public class GPULightVolume extends LightVolume {
 		}
 	}
 
+	/**
+	 * Slide the box of a toroidal volume so it is centered on the new sample volume, and copy in only the newly exposed
+	 * slabs. Falls back to a full move if the box has to change size.
+	 */
+	private void scroll(ImmutableBox newSampleVolume) {
+		GridAlignedBB newBox = newSampleVolume.copy();
+		newBox.nextPowerOf2Centered();
+
+		if (newBox.sizeX() != box.sizeX() || newBox.sizeY() != box.sizeY() || newBox.sizeZ() != box.sizeZ()) {
+			super.move(newSampleVolume);
+			return;
+		}
+
+		sampleVolume.assign(newSampleVolume);
+
+		if (newBox.sameAs(box)) return;
+
+		if (!newBox.intersects(box)) {
+			box.assign(newBox);
+			initialize();
+			return;
+		}
+
+		GridAlignedBB overlap = box.intersect(newBox);
+		box.assign(newBox);
+
+		// the slabs don't overlap each other, and together cover everything outside the old box
+		if (overlap.sizeX() != box.sizeX()) {
+			copySlab(exposedMin(overlap.getMinX(), box.getMinX(), overlap.getMaxX()), box.getMinY(), box.getMinZ(), exposedMax(overlap.getMinX(), box.getMinX(), overlap.getMaxX(), box.getMaxX()), box.getMaxY(), box.getMaxZ());
+		}
+		if (overlap.sizeY() != box.sizeY()) {
+			copySlab(overlap.getMinX(), exposedMin(overlap.getMinY(), box.getMinY(), overlap.getMaxY()), box.getMinZ(), overlap.getMaxX(), exposedMax(overlap.getMinY(), box.getMinY(), overlap.getMaxY(), box.getMaxY()), box.getMaxZ());
+		}
+		if (overlap.sizeZ() != box.sizeZ()) {
+			copySlab(overlap.getMinX(), overlap.getMinY(), exposedMin(overlap.getMinZ(), box.getMinZ(), overlap.getMaxZ()), overlap.getMaxX(), overlap.getMaxY(), exposedMax(overlap.getMinZ(), box.getMinZ(), overlap.getMaxZ(), box.getMaxZ()));
+		}
+	}
+
+	private void copySlab(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+		GridAlignedBB slab = new GridAlignedBB(minX, minY, minZ, maxX, maxY, maxZ);
+		copyLight(slab);
+		markDirty(slab);
+	}
+
+	/**
+	 * If the overlap starts at the new minimum the box moved towards negative, and the exposed range is past the overlap.
+	 */
+	private static int exposedMin(int overlapMin, int newMin, int overlapMax) {
+		return overlapMin == newMin ? overlapMax : newMin;
+	}
+
+	private static int exposedMax(int overlapMin, int newMin, int overlapMax, int newMax) {
+		return overlapMin == newMin ? newMax : overlapMin;
+	}
+
 	@Override
 	public ImmutableBox getVolume() {
-		return sampleVolume;
+		// toroidal volumes keep the whole box up to date, so scrolling never exposes stale light
+		return toroidal ? box : sampleVolume;
+	}
+
+	@Override
+	protected int boxPosToBufferIndex(int x, int y, int z) {
+		if (!toroidal) {
+			return super.boxPosToBufferIndex(x, y, z);
+		}
+
+		// sides are powers of 2, so masking is a positive modulo
+		int sizeX = box.sizeX();
+		int sizeY = box.sizeY();
+		x = (x + box.getMinX()) & (sizeX - 1);
+		y = (y + box.getMinY()) & (sizeY - 1);
+		z = (z + box.getMinZ()) & (box.sizeZ() - 1);
+		return (x + sizeX * (y + z * sizeY)) * 2;
 	}
 
 	@Override
 	protected void markDirty() {
 		this.bufferDirty = true;
 	}
+
+	@Override
+	protected void markDirty(ImmutableBox changed) {
+		if (bufferDirty) return;
+
+		for (GridAlignedBB region : dirtyRegions) {
+			if (region.contains(changed)) return;
+		}
+
+		if (dirtyRegions.size() >= MAX_DIRTY_REGIONS) {
+			// not worth the extra calls
+			markDirty();
+			dirtyRegions.clear();
+			return;
+		}
+
+		dirtyRegions.add(changed.copy());
+	}
 }
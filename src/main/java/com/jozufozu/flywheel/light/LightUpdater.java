@@ -1,18 +1,25 @@
 package com.jozufozu.flywheel.light;
 
+import java.util.Map;
 import java.util.Queue;
-import java.util.Set;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.stream.Stream;
 
+import javax.annotation.Nullable;
+
 import com.jozufozu.flywheel.backend.Backend;
 import com.jozufozu.flywheel.backend.instancing.ParallelTaskEngine;
+import com.jozufozu.flywheel.config.FlwConfig;
 import com.jozufozu.flywheel.util.WeakHashSet;
 import com.jozufozu.flywheel.util.WorldAttached;
 import com.jozufozu.flywheel.util.box.GridAlignedBB;
 import com.jozufozu.flywheel.util.box.ImmutableBox;
 
-import it.unimi.dsi.fastutil.longs.LongSet;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2IntLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongLinkedOpenHashSet;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectLinkedOpenHashMap;
 import net.minecraft.core.BlockPos;
 import net.minecraft.core.SectionPos;
 import net.minecraft.world.level.LevelAccessor;
@@ -27,6 +34,10 @@ import net.minecraft.world.level.LightLayer;
 public class LightUpdater {
 
 	private static final WorldAttached<LightUpdater> LEVELS = new WorldAttached<>(LightUpdater::new);
+	/**
+	 * How many queued sections and chunks are dispatched at a time, between checks of the time budget.
+	 */
+	private static final int BATCH_SIZE = 64;
 	private final ParallelTaskEngine taskEngine;
 
 	public static LightUpdater get(LevelAccessor level) {
@@ -42,8 +53,11 @@ public class LightUpdater {
 	private final LevelAccessor level;
 
 	private final WeakHashSet<TickingLightListener> tickingLightListeners = new WeakHashSet<>();
-	private final WeakContainmentMultiMap<LightListener> sections = new WeakContainmentMultiMap<>();
-	private final WeakContainmentMultiMap<LightListener> chunks = new WeakContainmentMultiMap<>();
+	private final ListenerIndex<LightListener> sections = new ListenerIndex<>();
+	private final ListenerIndex<LightListener> chunks = new ListenerIndex<>();
+
+	private final Long2IntLinkedOpenHashMap pendingSections = new Long2IntLinkedOpenHashMap();
+	private final LongLinkedOpenHashSet pendingChunks = new LongLinkedOpenHashSet();
 
 	public LightUpdater(LevelAccessor level) {
 		taskEngine = Backend.getTaskEngine();
@@ -77,7 +91,7 @@ public class LightUpdater {
 	}
 
 	/**
-	 * Add a listener.
+	 * Add a listener, or update the sections it is in if it moved.
 	 *
 	 * @param listener The object that wants to receive light update notifications.
 	 */
@@ -87,9 +101,6 @@ public class LightUpdater {
 
 		ImmutableBox box = listener.getVolume();
 
-		LongSet sections = this.sections.getAndResetContainment(listener);
-		LongSet chunks = this.chunks.getAndResetContainment(listener);
-
 		int minX = SectionPos.blockToSectionCoord(box.getMinX());
 		int minY = SectionPos.blockToSectionCoord(box.getMinY());
 		int minZ = SectionPos.blockToSectionCoord(box.getMinZ());
@@ -97,18 +108,9 @@ public class LightUpdater {
 		int maxY = SectionPos.blockToSectionCoord(box.getMaxY());
 		int maxZ = SectionPos.blockToSectionCoord(box.getMaxZ());
 
-		for (int x = minX; x <= maxX; x++) {
-			for (int z = minZ; z <= maxZ; z++) {
-				for (int y = minY; y <= maxY; y++) {
-					long sectionPos = SectionPos.asLong(x, y, z);
-					this.sections.put(sectionPos, listener);
-					sections.add(sectionPos);
-				}
-				long chunkPos = SectionPos.asLong(x, 0, z);
-				this.chunks.put(chunkPos, listener);
-				chunks.add(chunkPos);
-			}
-		}
+		// only the sections it entered or left are touched
+		sections.put(listener, minX, minY, minZ, maxX, maxY, maxZ);
+		chunks.put(listener, minX, 0, minZ, maxX, 0, maxZ);
 	}
 
 	public void removeListener(LightListener listener) {
@@ -117,41 +119,113 @@ public class LightUpdater {
 	}
 
 	/**
-	 * Dispatch light updates to all registered {@link LightListener}s.
+	 * Queue a light update for all registered {@link LightListener}s in a section. Updates to the same section are
+	 * coalesced until the next {@link #dispatchPending()}.
 	 * @param type       The type of light that changed.
 	 * @param sectionPos A long representing the section position where light changed.
 	 */
 	public void onLightUpdate(LightLayer type, long sectionPos) {
-		Set<LightListener> set = sections.get(sectionPos);
+		pendingSections.put(sectionPos, pendingSections.get(sectionPos) | layerBit(type));
+	}
+
+	/**
+	 * Queue a light update of both layers for the listeners in every section of a box, except for sections entirely
+	 * inside another box. Used to make listeners re-read light that they stopped tracking themselves.
+	 *
+	 * @param box  The region to update.
+	 * @param keep A region that doesn't need updating, or null.
+	 */
+	public void queueRelight(ImmutableBox box, @Nullable ImmutableBox keep) {
+		int layers = layerBit(LightLayer.BLOCK) | layerBit(LightLayer.SKY);
 
-		if (set == null || set.isEmpty()) return;
+		int minX = SectionPos.blockToSectionCoord(box.getMinX());
+		int minY = SectionPos.blockToSectionCoord(box.getMinY());
+		int minZ = SectionPos.blockToSectionCoord(box.getMinZ());
+		int maxX = SectionPos.blockToSectionCoord(box.getMaxX());
+		int maxY = SectionPos.blockToSectionCoord(box.getMaxY());
+		int maxZ = SectionPos.blockToSectionCoord(box.getMaxZ());
 
-		set.removeIf(LightListener::isListenerInvalid);
+		for (int x = minX; x <= maxX; x++) {
+			for (int y = minY; y <= maxY; y++) {
+				for (int z = minZ; z <= maxZ; z++) {
+					SectionPos section = SectionPos.of(x, y, z);
 
-		ImmutableBox chunkBox = GridAlignedBB.from(SectionPos.of(sectionPos));
+					if (keep != null && keep.contains(GridAlignedBB.from(section))) continue;
 
-		for (LightListener listener : set) {
-			listener.onLightUpdate(type, chunkBox);
+					long sectionPos = section.asLong();
+					pendingSections.put(sectionPos, pendingSections.get(sectionPos) | layers);
+				}
+			}
 		}
 	}
 
 	/**
-	 * Dispatch light updates to all registered {@link LightListener}s
+	 * Queue a light update for all registered {@link LightListener}s
 	 * when the server sends lighting data for an entire chunk.
 	 *
 	 */
 	public void onLightPacket(int chunkX, int chunkZ) {
-		long chunkPos = SectionPos.asLong(chunkX, 0, chunkZ);
+		pendingChunks.add(SectionPos.asLong(chunkX, 0, chunkZ));
+	}
+
+	/**
+	 * Dispatch queued light updates, in the order they arrived, until the frame's time budget runs out.
+	 *
+	 * <p>
+	 *     Updates are grouped by listener, so each listener handles everything queued for it in one go. Listeners are
+	 *     called on the client thread, because the level's light engine isn't safe to read from several threads.
+	 * </p>
+	 */
+	public void dispatchPending() {
+		if (pendingSections.isEmpty() && pendingChunks.isEmpty()) return;
 
-		Set<LightListener> set = chunks.get(chunkPos);
+		long deadline = System.nanoTime() + FlwConfig.get()
+				.lightUpdateBudget() * 1_000_000L;
 
-		if (set == null || set.isEmpty()) return;
+		// always make some progress, even if the budget is 0
+		do {
+			Map<LightListener, PendingLight> batch = collectBatch();
 
-		set.removeIf(LightListener::isListenerInvalid);
+			batch.values()
+					.forEach(PendingLight::dispatch);
+		} while ((!pendingSections.isEmpty() || !pendingChunks.isEmpty()) && System.nanoTime() < deadline);
+	}
+
+	private Map<LightListener, PendingLight> collectBatch() {
+		Map<LightListener, PendingLight> batch = new Reference2ObjectLinkedOpenHashMap<>();
+
+		for (int i = 0; i < BATCH_SIZE && !pendingChunks.isEmpty(); i++) {
+			long chunkPos = pendingChunks.removeFirstLong();
+
+			chunks.forEach(chunkPos, listener -> {
+				if (listener.isListenerInvalid()) {
+					removeListener(listener);
+				} else {
+					batch.computeIfAbsent(listener, PendingLight::new)
+							.addChunk(chunkPos);
+				}
+			});
+		}
+
+		for (int i = 0; i < BATCH_SIZE && !pendingSections.isEmpty(); i++) {
+			long sectionPos = pendingSections.firstLongKey();
+			int layers = pendingSections.remove(sectionPos);
 
-		for (LightListener listener : set) {
-			listener.onLightPacket(chunkX, chunkZ);
+			sections.forEach(sectionPos, listener -> {
+				if (listener.isListenerInvalid()) {
+					removeListener(listener);
+				} else {
+					batch.computeIfAbsent(listener, PendingLight::new)
+							.addSection(sectionPos, layers);
+				}
+			});
 		}
+
+		return batch;
+	}
+
+	private static int layerBit(LightLayer type) {
+		return 1 << type.ordinal();
 	}
 
 	public static long blockToSection(BlockPos pos) {
@@ -169,4 +243,46 @@ public class LightUpdater {
 	public boolean isEmpty() {
 		return chunks.isEmpty();
 	}
+
+	/**
+	 * The queued light updates of one listener.
+	 */
+	private static class PendingLight {
+		private final LightListener listener;
+		private final LongArrayList chunks = new LongArrayList();
+		private final LongArrayList sections = new LongArrayList();
+		private final IntArrayList layers = new IntArrayList();
+
+		private PendingLight(LightListener listener) {
+			this.listener = listener;
+		}
+
+		private void addChunk(long chunkPos) {
+			chunks.add(chunkPos);
+		}
+
+		private void addSection(long sectionPos, int layers) {
+			sections.add(sectionPos);
+			this.layers.add(layers);
+		}
+
+		private void dispatch() {
+			for (int i = 0; i < chunks.size(); i++) {
+				long chunkPos = chunks.getLong(i);
+				listener.onLightPacket(SectionPos.x(chunkPos), SectionPos.z(chunkPos));
+			}
+
+			for (int i = 0; i < sections.size(); i++) {
+				ImmutableBox sectionBox = GridAlignedBB.from(SectionPos.of(sections.getLong(i)));
+				int layers = this.layers.getInt(i);
+
+				if ((layers & layerBit(LightLayer.BLOCK)) != 0) {
+					listener.onLightUpdate(LightLayer.BLOCK, sectionBox);
+				}
+				if ((layers & layerBit(LightLayer.SKY)) != 0) {
+					listener.onLightUpdate(LightLayer.SKY, sectionBox);
+				}
+			}
+		}
+	}
 }
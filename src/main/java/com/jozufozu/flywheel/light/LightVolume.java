@@ -8,6 +8,7 @@ import com.jozufozu.flywheel.util.box.GridAlignedBB;
 import com.jozufozu.flywheel.util.box.ImmutableBox;
 
 import net.minecraft.core.BlockPos;
+import net.minecraft.core.SectionPos;
 import net.minecraft.world.level.BlockAndTintGetter;
 import net.minecraft.world.level.LightLayer;
 
@@ -81,7 +82,7 @@ public class LightVolume implements ImmutableBox, LightListener {
 
 		if (type == LightLayer.BLOCK) copyBlock(vol);
 		else if (type == LightLayer.SKY) copySky(vol);
-		markDirty();
+		markDirty(vol);
 	}
 
 	@Override
@@ -93,7 +94,7 @@ public class LightVolume implements ImmutableBox, LightListener {
 		changedVolume.intersectAssign(getVolume()); // compute the region contained by us that has dirty lighting data.
 
 		copyLight(changedVolume);
-		markDirty();
+		markDirty(changedVolume);
 	}
 
 	/**
@@ -113,17 +114,7 @@ public class LightVolume implements ImmutableBox, LightListener {
 	 * @param worldVolume the region in the world to copy data from.
 	 */
 	public void copyBlock(ImmutableBox worldVolume) {
-		var pos = new BlockPos.MutableBlockPos();
-
-		int xShift = box.getMinX();
-		int yShift = box.getMinY();
-		int zShift = box.getMinZ();
-
-		worldVolume.forEachContained((x, y, z) -> {
-			int light = this.level.getBrightness(LightLayer.BLOCK, pos.set(x, y, z));
-
-			writeBlock(x - xShift, y - yShift, z - zShift, light);
-		});
+		copy(worldVolume, true, false);
 	}
 
 	/**
@@ -132,25 +123,81 @@ public class LightVolume implements ImmutableBox, LightListener {
 	 * @param worldVolume the region in the world to copy data from.
 	 */
 	public void copySky(ImmutableBox worldVolume) {
-		var pos = new BlockPos.MutableBlockPos();
+		copy(worldVolume, false, true);
+	}
+
+	/**
+	 * Copy all light from the world into this volume.
+	 *
+	 * @param worldVolume the region in the world to copy data from.
+	 */
+	public void copyLight(ImmutableBox worldVolume) {
+		copy(worldVolume, true, true);
+	}
+
+	private void copy(ImmutableBox worldVolume, boolean block, boolean sky) {
+		if (worldVolume.empty()) return;
+
+		if (!SectionLightReader.canRead(level)) {
+			copyBlockwise(worldVolume, block, sky);
+			return;
+		}
+
+		int minX = SectionPos.blockToSectionCoord(worldVolume.getMinX());
+		int minY = SectionPos.blockToSectionCoord(worldVolume.getMinY());
+		int minZ = SectionPos.blockToSectionCoord(worldVolume.getMinZ());
+		int maxX = SectionPos.blockToSectionCoord(worldVolume.getMaxX() - 1);
+		int maxY = SectionPos.blockToSectionCoord(worldVolume.getMaxY() - 1);
+		int maxZ = SectionPos.blockToSectionCoord(worldVolume.getMaxZ() - 1);
+
+		for (int sectionX = minX; sectionX <= maxX; sectionX++) {
+			for (int sectionZ = minZ; sectionZ <= maxZ; sectionZ++) {
+				for (int sectionY = minY; sectionY <= maxY; sectionY++) {
+					GridAlignedBB section = GridAlignedBB.from(SectionPos.of(sectionX, sectionY, sectionZ));
+					section.intersectAssign(worldVolume);
+
+					copySection(section, sectionX, sectionY, sectionZ, block, sky);
+				}
+			}
+		}
+	}
+
+	private void copySection(ImmutableBox section, int sectionX, int sectionY, int sectionZ, boolean block, boolean sky) {
+		SectionLightReader.Nibbles blockLight = block ? SectionLightReader.get(level, LightLayer.BLOCK, sectionX, sectionY, sectionZ) : null;
+		SectionLightReader.Nibbles skyLight = sky ? SectionLightReader.get(level, LightLayer.SKY, sectionX, sectionY, sectionZ) : null;
+
+		if ((block && blockLight == null) || (sky && skyLight == null)) {
+			copyBlockwise(section, block, sky);
+			return;
+		}
 
 		int xShift = box.getMinX();
 		int yShift = box.getMinY();
 		int zShift = box.getMinZ();
 
-		worldVolume.forEachContained((x, y, z) -> {
-			int light = this.level.getBrightness(LightLayer.SKY, pos.set(x, y, z));
-
-			writeSky(x - xShift, y - yShift, z - zShift, light);
-		});
+		for (int x = section.getMinX(); x < section.getMaxX(); x++) {
+			for (int y = section.getMinY(); y < section.getMaxY(); y++) {
+				for (int z = section.getMinZ(); z < section.getMaxZ(); z++) {
+					int localX = x & 15;
+					int localY = y & 15;
+					int localZ = z & 15;
+
+					if (blockLight != null && skyLight != null) {
+						writeLight(x - xShift, y - yShift, z - zShift, blockLight.get(localX, localY, localZ), skyLight.get(localX, localY, localZ));
+					} else if (blockLight != null) {
+						writeBlock(x - xShift, y - yShift, z - zShift, blockLight.get(localX, localY, localZ));
+					} else {
+						writeSky(x - xShift, y - yShift, z - zShift, skyLight.get(localX, localY, localZ));
+					}
+				}
+			}
+		}
 	}
 
 	/**
-	 * Copy all light from the world into this volume.
-	 *
-	 * @param worldVolume the region in the world to copy data from.
+	 * Copy light by asking the level for every block, for levels that can't be read a section at a time.
 	 */
-	public void copyLight(ImmutableBox worldVolume) {
+	private void copyBlockwise(ImmutableBox worldVolume, boolean block, boolean sky) {
 		BlockPos.MutableBlockPos pos = new BlockPos.MutableBlockPos();
 
 		int xShift = box.getMinX();
@@ -160,10 +207,13 @@ public class LightVolume implements ImmutableBox, LightListener {
 		worldVolume.forEachContained((x, y, z) -> {
 			pos.set(x, y, z);
 
-			int block = this.level.getBrightness(LightLayer.BLOCK, pos);
-			int sky = this.level.getBrightness(LightLayer.SKY, pos);
-
-			writeLight(x - xShift, y - yShift, z - zShift, block, sky);
+			if (block && sky) {
+				writeLight(x - xShift, y - yShift, z - zShift, this.level.getBrightness(LightLayer.BLOCK, pos), this.level.getBrightness(LightLayer.SKY, pos));
+			} else if (block) {
+				writeBlock(x - xShift, y - yShift, z - zShift, this.level.getBrightness(LightLayer.BLOCK, pos));
+			} else {
+				writeSky(x - xShift, y - yShift, z - zShift, this.level.getBrightness(LightLayer.SKY, pos));
+			}
 		});
 	}
 
@@ -176,6 +226,15 @@ public class LightVolume implements ImmutableBox, LightListener {
 		// noop
 	}
 
+	/**
+	 * Called when only part of the volume changed.
+	 *
+	 * @param changed The region in the world that was copied.
+	 */
+	protected void markDirty(ImmutableBox changed) {
+		markDirty();
+	}
+
 	protected void writeLight(int x, int y, int z, int block, int sky) {
 		byte b = (byte) ((block & 0xF) << 4);
 		byte s = (byte) ((sky & 0xF) << 4);
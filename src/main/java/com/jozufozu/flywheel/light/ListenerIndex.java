@@ -0,0 +1,245 @@
+package com.jozufozu.flywheel.light;
+
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.WeakHashMap;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import javax.annotation.Nullable;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import net.minecraft.core.SectionPos;
+
+/**
+ * A weak index of which listeners are in which cells of a grid, where each listener covers a box of cells.
+ *
+ * <p>
+ *     Cells hold compact int ids rather than sets of listeners. An id is a slot in the listener table plus the
+ *     generation of that slot, so ids left behind by listeners that were garbage collected are recognized and dropped
+ *     the next time their cell is visited, even if the slot has been reused since. Moving a listener only touches the
+ *     cells it entered or left.
+ * </p>
+ */
+public class ListenerIndex<T> {
+
+	private static final int INDEX_BITS = 20;
+	private static final int INDEX_MASK = (1 << INDEX_BITS) - 1;
+
+	private final Long2ObjectMap<IntArrayList> cells = new Long2ObjectOpenHashMap<>();
+	private final WeakHashMap<T, Entry> entries = new WeakHashMap<>();
+
+	@SuppressWarnings("unchecked")
+	private WeakReference<T>[] slots = new WeakReference[64];
+	private int[] generations = new int[64];
+	private final IntArrayList freeSlots = new IntArrayList();
+	private int slotCount;
+
+	/**
+	 * Ids are copied here before visiting a cell, so listeners can move or be removed while being visited.
+	 */
+	private final IntArrayList scratch = new IntArrayList();
+
+	/**
+	 * Place a listener in a box of cells, given in inclusive section coordinates.
+	 */
+	public void put(T listener, int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+		Entry entry = entries.get(listener);
+
+		if (entry == null) {
+			entry = new Entry(allocateSlot(listener));
+			entries.put(listener, entry);
+		} else if (entry.sameAs(minX, minY, minZ, maxX, maxY, maxZ)) {
+			return;
+		}
+
+		// leave the cells that aren't in the new box
+		if (entry.placed) {
+			for (int x = entry.minX; x <= entry.maxX; x++) {
+				for (int y = entry.minY; y <= entry.maxY; y++) {
+					for (int z = entry.minZ; z <= entry.maxZ; z++) {
+						if (!contains(minX, minY, minZ, maxX, maxY, maxZ, x, y, z)) {
+							removeFromCell(SectionPos.asLong(x, y, z), entry.id);
+						}
+					}
+				}
+			}
+		}
+
+		// and enter the ones that weren't in the old box
+		for (int x = minX; x <= maxX; x++) {
+			for (int y = minY; y <= maxY; y++) {
+				for (int z = minZ; z <= maxZ; z++) {
+					if (!entry.placed || !entry.contains(x, y, z)) {
+						cells.computeIfAbsent(SectionPos.asLong(x, y, z), $ -> new IntArrayList(4))
+								.add(entry.id);
+					}
+				}
+			}
+		}
+
+		entry.set(minX, minY, minZ, maxX, maxY, maxZ);
+	}
+
+	public boolean remove(T listener) {
+		Entry entry = entries.remove(listener);
+
+		if (entry == null) {
+			return false;
+		}
+
+		if (entry.placed) {
+			for (int x = entry.minX; x <= entry.maxX; x++) {
+				for (int y = entry.minY; y <= entry.maxY; y++) {
+					for (int z = entry.minZ; z <= entry.maxZ; z++) {
+						removeFromCell(SectionPos.asLong(x, y, z), entry.id);
+					}
+				}
+			}
+		}
+
+		freeSlot(entry.id);
+		return true;
+	}
+
+	/**
+	 * Visit every listener in a cell.
+	 */
+	public void forEach(long cell, Consumer<T> action) {
+		IntArrayList ids = cells.get(cell);
+
+		if (ids == null) return;
+
+		scratch.clear();
+		scratch.addAll(ids);
+
+		for (int i = 0; i < scratch.size(); i++) {
+			int id = scratch.getInt(i);
+			T listener = resolve(id);
+
+			if (listener == null) {
+				// collected without being removed, or the slot has been reused since
+				removeFromCell(cell, id);
+				continue;
+			}
+
+			action.accept(listener);
+		}
+	}
+
+	public Stream<T> stream() {
+		return entries.keySet()
+				.stream();
+	}
+
+	public boolean isEmpty() {
+		return entries.isEmpty();
+	}
+
+	@Nullable
+	private T resolve(int id) {
+		int index = id & INDEX_MASK;
+
+		if (generations[index] != id >>> INDEX_BITS) {
+			return null;
+		}
+
+		T listener = slots[index].get();
+
+		if (listener == null) {
+			// the entry is gone from the weak map already, so this is the only chance to reclaim the slot
+			freeSlot(id);
+		}
+
+		return listener;
+	}
+
+	private int allocateSlot(T listener) {
+		int index;
+		if (!freeSlots.isEmpty()) {
+			index = freeSlots.popInt();
+		} else {
+			index = slotCount++;
+
+			if (index > INDEX_MASK) {
+				throw new IllegalStateException("Too many light listeners");
+			}
+
+			if (index == slots.length) {
+				slots = Arrays.copyOf(slots, index * 2);
+				generations = Arrays.copyOf(generations, index * 2);
+			}
+		}
+
+		slots[index] = new WeakReference<>(listener);
+		return (generations[index] << INDEX_BITS) | index;
+	}
+
+	private void freeSlot(int id) {
+		int index = id & INDEX_MASK;
+
+		if (generations[index] != id >>> INDEX_BITS) return;
+
+		slots[index] = null;
+		generations[index] = (generations[index] + 1) & (-1 >>> INDEX_BITS);
+		freeSlots.add(index);
+	}
+
+	private void removeFromCell(long cell, int id) {
+		IntArrayList ids = cells.get(cell);
+
+		if (ids == null) return;
+
+		int i = ids.indexOf(id);
+		if (i < 0) return;
+
+		// order doesn't matter, swap the last id into the hole
+		int last = ids.popInt();
+		if (i < ids.size()) {
+			ids.set(i, last);
+		}
+
+		if (ids.isEmpty()) {
+			cells.remove(cell);
+		}
+	}
+
+	private static boolean contains(int minX, int minY, int minZ, int maxX, int maxY, int maxZ, int x, int y, int z) {
+		return x >= minX && x <= maxX && y >= minY && y <= maxY && z >= minZ && z <= maxZ;
+	}
+
+	private static class Entry {
+		private final int id;
+		private boolean placed;
+		private int minX;
+		private int minY;
+		private int minZ;
+		private int maxX;
+		private int maxY;
+		private int maxZ;
+
+		private Entry(int id) {
+			this.id = id;
+		}
+
+		private boolean sameAs(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+			return placed && this.minX == minX && this.minY == minY && this.minZ == minZ && this.maxX == maxX && this.maxY == maxY && this.maxZ == maxZ;
+		}
+
+		private boolean contains(int x, int y, int z) {
+			return ListenerIndex.contains(minX, minY, minZ, maxX, maxY, maxZ, x, y, z);
+		}
+
+		private void set(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+			this.placed = true;
+			this.minX = minX;
+			this.minY = minY;
+			this.minZ = minZ;
+			this.maxX = maxX;
+			this.maxY = maxY;
+			this.maxZ = maxZ;
+		}
+	}
+}
@@ -0,0 +1,80 @@
+package com.jozufozu.flywheel.light;
+
+import javax.annotation.Nullable;
+
+import com.jozufozu.flywheel.util.Mods;
+
+import net.minecraft.client.multiplayer.ClientLevel;
+import net.minecraft.core.SectionPos;
+import net.minecraft.world.level.BlockAndTintGetter;
+import net.minecraft.world.level.LightLayer;
+import net.minecraft.world.level.chunk.DataLayer;
+
+/**
+ * Fetches the light of a whole section at once, so volumes don't have to go through the light engine for every block.
+ *
+ * <p>
+ *     Only works for client levels, anything else may override {@code getBrightness} and has to be read block by
+ *     block. Starlight converts its nibble arrays to {@link DataLayer}s on every request, so with Starlight
+ *     installed its arrays are read directly, by {@link StarlightSectionReader}.
+ * </p>
+ */
+public final class SectionLightReader {
+
+	private static final Nibbles DARK = (x, y, z) -> 0;
+	private static final Nibbles BRIGHT = (x, y, z) -> 15;
+
+	private static final boolean STARLIGHT = Mods.STARLIGHT.isLoaded();
+
+	private SectionLightReader() {
+	}
+
+	public static boolean canRead(BlockAndTintGetter level) {
+		return level instanceof ClientLevel;
+	}
+
+	/**
+	 * Get the light of one section.
+	 *
+	 * @param level A level for which {@link #canRead} returned true.
+	 * @return The light in the section, or null if it has to be read block by block.
+	 */
+	@Nullable
+	public static Nibbles get(BlockAndTintGetter level, LightLayer layer, int sectionX, int sectionY, int sectionZ) {
+		ClientLevel clientLevel = (ClientLevel) level;
+
+		if (STARLIGHT) {
+			return StarlightSectionReader.get(clientLevel, layer, sectionX, sectionY, sectionZ);
+		}
+
+		DataLayer data = clientLevel.getLightEngine()
+				.getLayerListener(layer)
+				.getDataLayerData(SectionPos.of(sectionX, sectionY, sectionZ));
+
+		if (data != null) {
+			return data::get;
+		}
+
+		if (layer == LightLayer.BLOCK) {
+			return DARK;
+		}
+
+		if (sectionY >= clientLevel.getMaxSection()) {
+			return BRIGHT;
+		}
+
+		// missing sky sections take their light from the sections above them
+		return null;
+	}
+
+	/**
+	 * The light levels of a section.
+	 */
+	@FunctionalInterface
+	public interface Nibbles {
+		/**
+		 * @return The light level at the given position, in coordinates local to the section.
+		 */
+		int get(int x, int y, int z);
+	}
+}
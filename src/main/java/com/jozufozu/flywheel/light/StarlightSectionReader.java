@@ -0,0 +1,48 @@
+package com.jozufozu.flywheel.light;
+
+import javax.annotation.Nullable;
+
+import ca.spottedleaf.starlight.common.chunk.ExtendedChunk;
+import ca.spottedleaf.starlight.common.light.SWMRNibbleArray;
+import ca.spottedleaf.starlight.common.util.WorldUtil;
+import net.minecraft.client.multiplayer.ClientLevel;
+import net.minecraft.world.level.LightLayer;
+import net.minecraft.world.level.chunk.ChunkAccess;
+
+/**
+ * Reads Starlight's nibble arrays directly, see {@link SectionLightReader}.
+ *
+ * <p>
+ *     Kept apart so Starlight's classes are only ever loaded when it is installed.
+ * </p>
+ */
+final class StarlightSectionReader {
+
+	private StarlightSectionReader() {
+	}
+
+	@Nullable
+	static SectionLightReader.Nibbles get(ClientLevel level, LightLayer layer, int sectionX, int sectionY, int sectionZ) {
+		ChunkAccess chunk = level.getChunk(sectionX, sectionZ);
+
+		SWMRNibbleArray[] nibbles = layer == LightLayer.BLOCK ? ((ExtendedChunk) chunk).getBlockNibbles() : ((ExtendedChunk) chunk).getSkyNibbles();
+
+		if (nibbles == null) {
+			return null;
+		}
+
+		int index = sectionY - WorldUtil.getMinLightSection(level);
+
+		if (index < 0 || index >= nibbles.length) {
+			return null;
+		}
+
+		SWMRNibbleArray nibble = nibbles[index];
+
+		if (nibble == null || !nibble.isInitialisedVisible()) {
+			return null;
+		}
+
+		return nibble::getVisible;
+	}
+}
@@ -0,0 +1,136 @@
+package com.jozufozu.flywheel.light;
+
+import javax.annotation.Nullable;
+
+import com.jozufozu.flywheel.backend.Backend;
+import com.jozufozu.flywheel.backend.gl.GlTextureUnit;
+import com.jozufozu.flywheel.config.BackendType;
+import com.jozufozu.flywheel.config.FlwConfig;
+import com.jozufozu.flywheel.util.box.GridAlignedBB;
+import com.jozufozu.flywheel.util.box.ImmutableBox;
+
+import net.minecraft.client.Camera;
+import net.minecraft.client.multiplayer.ClientLevel;
+import net.minecraft.util.Mth;
+
+/**
+ * A light texture covering the world around the camera, shared by every instance drawn with the world context.
+ *
+ * <p>
+ *     Instance shaders sample it by world position, so instances inside it don't have to update their light on the CPU
+ *     when the world changes. It is a toroidal {@link GPULightVolume} that scrolls along with the camera, and it
+ *     listens to the {@link LightUpdater} like any other volume. Instances outside of it keep using the light stored
+ *     in their instance data, so whenever it moves away from or stops covering a region, the listeners there are
+ *     queued to update their light again.
+ * </p>
+ */
+public final class WorldLight {
+
+	public static final int HORIZONTAL_SIZE = 128;
+	public static final int VERTICAL_SIZE = 64;
+
+	/**
+	 * The volume only moves once the camera has moved this many blocks, so it isn't re-registered every block.
+	 */
+	private static final int STEP = 8;
+
+	@Nullable
+	private static GPULightVolume volume;
+	@Nullable
+	private static ClientLevel level;
+
+	private WorldLight() {
+	}
+
+	public static boolean isEnabled() {
+		BackendType backend = Backend.getBackendType();
+		return FlwConfig.get()
+				.worldLight() && (backend == BackendType.INSTANCING || backend == BackendType.INDIRECT);
+	}
+
+	/**
+	 * @return true if the world light is currently being maintained.
+	 */
+	public static boolean isActive() {
+		return volume != null;
+	}
+
+	/**
+	 * @return true if the given region is inside the world light, so the light in it doesn't need to be tracked on the
+	 * CPU.
+	 */
+	public static boolean covers(ImmutableBox box) {
+		return volume != null && volume.getVolume()
+				.contains(box);
+	}
+
+	/**
+	 * Create, move or delete the world light. Call once per frame.
+	 */
+	public static void beginFrame(ClientLevel level, Camera camera) {
+		if (!isEnabled()) {
+			delete();
+			return;
+		}
+
+		if (WorldLight.level != level) {
+			delete();
+		}
+
+		int x = Mth.floor(camera.getPosition().x) & -STEP;
+		int y = Mth.floor(camera.getPosition().y) & -STEP;
+		int z = Mth.floor(camera.getPosition().z) & -STEP;
+
+		GridAlignedBB box = new GridAlignedBB(x, y, z, x, y, z);
+		box.grow(HORIZONTAL_SIZE / 2, VERTICAL_SIZE / 2, HORIZONTAL_SIZE / 2);
+
+		if (volume == null) {
+			WorldLight.level = level;
+			volume = new GPULightVolume(level, box, true);
+			volume.initialize();
+		} else if (!volume.getVolume()
+				.sameAs(box)) {
+			GridAlignedBB previous = volume.getVolume()
+					.copy();
+			volume.move(box);
+
+			LightUpdater.get(level)
+					.queueRelight(previous, volume.getVolume());
+		} else {
+			return;
+		}
+
+		// re-registering moves the volume to the sections it now covers
+		LightUpdater.get(level)
+				.addListener(volume);
+	}
+
+	/**
+	 * Bind the world light to the texture unit the world programs sample it from, uploading any changes.
+	 */
+	public static void bind() {
+		if (volume == null) return;
+
+		volume.bind();
+		GlTextureUnit.T0.makeActive();
+	}
+
+	@Nullable
+	public static ImmutableBox getVolume() {
+		return volume == null ? null : volume.getVolume();
+	}
+
+	public static void delete() {
+		if (volume == null) return;
+
+		if (level != null) {
+			LightUpdater updater = LightUpdater.get(level);
+			updater.removeListener(volume);
+			updater.queueRelight(volume.getVolume(), null);
+		}
+
+		volume.delete();
+		volume = null;
+		level = null;
+	}
+}
@@ -0,0 +1,23 @@
+package com.jozufozu.flywheel.mixin;
+
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.gen.Accessor;
+
+import com.mojang.math.Vector4f;
+
+import net.minecraft.client.renderer.culling.Frustum;
+
+@Mixin(Frustum.class)
+public interface FrustumAccessor {
+	@Accessor("frustumData")
+	Vector4f[] flywheel$getPlanes();
+
+	@Accessor("camX")
+	double flywheel$getCamX();
+
+	@Accessor("camY")
+	double flywheel$getCamY();
+
+	@Accessor("camZ")
+	double flywheel$getCamZ();
+}
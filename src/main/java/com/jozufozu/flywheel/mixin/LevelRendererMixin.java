@@ -10,7 +10,9 @@ import org.spongepowered.asm.mixin.injection.Inject;
 import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
 
 import com.jozufozu.flywheel.backend.Backend;
+import com.jozufozu.flywheel.backend.ShadersModHandler;
 import com.jozufozu.flywheel.backend.instancing.InstancedRenderDispatcher;
+import com.jozufozu.flywheel.backend.instancing.SectionVisibility;
 import com.jozufozu.flywheel.core.crumbling.CrumblingRenderer;
 import com.jozufozu.flywheel.event.BeginFrameEvent;
 import com.jozufozu.flywheel.event.ReloadRenderersEvent;
@@ -18,6 +20,7 @@ import com.jozufozu.flywheel.event.RenderLayerEvent;
 import com.mojang.blaze3d.vertex.PoseStack;
 import com.mojang.math.Matrix4f;
 
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
 import net.minecraft.client.Camera;
 import net.minecraft.client.multiplayer.ClientLevel;
 import net.minecraft.client.renderer.GameRenderer;
@@ -43,11 +46,23 @@ public class LevelRendererMixin {
 	@Final
 	private RenderBuffers renderBuffers;
 
+	@Shadow
+	@Final
+	private ObjectArrayList<?> renderChunksInFrustum;
+
 	@Inject(at = @At("HEAD"), method = "setupRender")
 	private void setupRender(Camera camera, Frustum frustum, boolean queue, boolean isSpectator, CallbackInfo ci) {
 		MinecraftForge.EVENT_BUS.post(new BeginFrameEvent(level, camera, frustum));
 	}
 
+	@Inject(at = @At("TAIL"), method = "setupRender")
+	private void captureVisibleSections(Camera camera, Frustum frustum, boolean queue, boolean isSpectator, CallbackInfo ci) {
+		// the shadow pass sees different sections, and shouldn't affect what the camera sees
+		if (ShadersModHandler.isRenderingShadowPass()) return;
+
+		SectionVisibility.capture(level, renderChunksInFrustum);
+	}
+
 	@Unique
 	private boolean flywheel$LayerRendered;
 
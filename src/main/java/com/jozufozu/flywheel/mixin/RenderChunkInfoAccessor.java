@@ -0,0 +1,12 @@
+package com.jozufozu.flywheel.mixin;
+
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.gen.Accessor;
+
+import net.minecraft.client.renderer.chunk.ChunkRenderDispatcher;
+
+@Mixin(targets = "net.minecraft.client.renderer.LevelRenderer$RenderChunkInfo")
+public interface RenderChunkInfoAccessor {
+	@Accessor("chunk")
+	ChunkRenderDispatcher.RenderChunk flywheel$getChunk();
+}
@@ -38,6 +38,19 @@ public abstract class Matrix3fMixin implements MatrixWrite {
 		MemoryUtil.memPutFloat(ptr + 32, m22);
 	}
 
+	@Override
+	public void flywheel$readUnsafe(long ptr) {
+		m00 = MemoryUtil.memGetFloat(ptr);
+		m10 = MemoryUtil.memGetFloat(ptr + 4);
+		m20 = MemoryUtil.memGetFloat(ptr + 8);
+		m01 = MemoryUtil.memGetFloat(ptr + 12);
+		m11 = MemoryUtil.memGetFloat(ptr + 16);
+		m21 = MemoryUtil.memGetFloat(ptr + 20);
+		m02 = MemoryUtil.memGetFloat(ptr + 24);
+		m12 = MemoryUtil.memGetFloat(ptr + 28);
+		m22 = MemoryUtil.memGetFloat(ptr + 32);
+	}
+
 	@Override
 	public void flywheel$write(VecBuffer buffer) {
 		buffer.putFloat(m00);
@@ -52,6 +52,26 @@ public abstract class Matrix4fMixin implements MatrixWrite {
 		MemoryUtil.memPutFloat(ptr + 60, m33);
 	}
 
+	@Override
+	public void flywheel$readUnsafe(long ptr) {
+		m00 = MemoryUtil.memGetFloat(ptr);
+		m10 = MemoryUtil.memGetFloat(ptr + 4);
+		m20 = MemoryUtil.memGetFloat(ptr + 8);
+		m30 = MemoryUtil.memGetFloat(ptr + 12);
+		m01 = MemoryUtil.memGetFloat(ptr + 16);
+		m11 = MemoryUtil.memGetFloat(ptr + 20);
+		m21 = MemoryUtil.memGetFloat(ptr + 24);
+		m31 = MemoryUtil.memGetFloat(ptr + 28);
+		m02 = MemoryUtil.memGetFloat(ptr + 32);
+		m12 = MemoryUtil.memGetFloat(ptr + 36);
+		m22 = MemoryUtil.memGetFloat(ptr + 40);
+		m32 = MemoryUtil.memGetFloat(ptr + 44);
+		m03 = MemoryUtil.memGetFloat(ptr + 48);
+		m13 = MemoryUtil.memGetFloat(ptr + 52);
+		m23 = MemoryUtil.memGetFloat(ptr + 56);
+		m33 = MemoryUtil.memGetFloat(ptr + 60);
+	}
+
 	@Override
 	public void flywheel$write(VecBuffer buf) {
 		buf.putFloat(m00);
@@ -0,0 +1,130 @@
+package com.jozufozu.flywheel.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed size bitset that can be set from many threads at once.
+ *
+ * <p>
+ *     Only {@link #set} is thread safe. Reading, clearing and resizing must happen while nobody is setting bits.
+ * </p>
+ */
+public class AtomicBitSet {
+
+	private AtomicLongArray words;
+
+	public AtomicBitSet(int bits) {
+		words = new AtomicLongArray(wordCount(bits));
+	}
+
+	/**
+	 * @return The number of bits this set can hold.
+	 */
+	public int capacity() {
+		return words.length() << 6;
+	}
+
+	/**
+	 * Set a bit.
+	 *
+	 * @return false if the index is past the capacity, in which case nothing was set.
+	 */
+	public boolean set(int index) {
+		int word = index >> 6;
+
+		if (index < 0 || word >= words.length()) {
+			return false;
+		}
+
+		long mask = 1L << index;
+
+		// skip the atomic when the bit is already set
+		if ((words.get(word) & mask) == 0) {
+			words.getAndAccumulate(word, mask, (a, b) -> a | b);
+		}
+
+		return true;
+	}
+
+	public boolean get(int index) {
+		int word = index >> 6;
+		return word < words.length() && (words.get(word) & (1L << index)) != 0;
+	}
+
+	/**
+	 * @return The index of the first set bit at or after {@code from}, or -1 if there is none.
+	 */
+	public int nextSetBit(int from) {
+		int word = from >> 6;
+
+		if (word >= words.length()) {
+			return -1;
+		}
+
+		long bits = words.get(word) & (-1L << from);
+
+		while (true) {
+			if (bits != 0) {
+				return (word << 6) + Long.numberOfTrailingZeros(bits);
+			}
+
+			if (++word == words.length()) {
+				return -1;
+			}
+
+			bits = words.get(word);
+		}
+	}
+
+	/**
+	 * @return The index of the first clear bit at or after {@code from}. May be past the capacity.
+	 */
+	public int nextClearBit(int from) {
+		int word = from >> 6;
+
+		if (word >= words.length()) {
+			return from;
+		}
+
+		long bits = ~words.get(word) & (-1L << from);
+
+		while (true) {
+			if (bits != 0) {
+				return (word << 6) + Long.numberOfTrailingZeros(bits);
+			}
+
+			if (++word == words.length()) {
+				return word << 6;
+			}
+
+			bits = ~words.get(word);
+		}
+	}
+
+	public void clear() {
+		for (int i = 0; i < words.length(); i++) {
+			words.set(i, 0);
+		}
+	}
+
+	/**
+	 * Make room for at least the given number of bits, keeping the bits already set.
+	 */
+	public void ensureCapacity(int bits) {
+		int count = wordCount(bits);
+
+		if (count <= words.length()) {
+			return;
+		}
+
+		AtomicLongArray grown = new AtomicLongArray(Math.max(count, words.length() * 2));
+		for (int i = 0; i < words.length(); i++) {
+			grown.set(i, words.get(i));
+		}
+		words = grown;
+	}
+
+	private static int wordCount(int bits) {
+		return Math.max(1, (bits + 63) >> 6);
+	}
+}
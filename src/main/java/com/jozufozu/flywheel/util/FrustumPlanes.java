@@ -0,0 +1,92 @@
+package com.jozufozu.flywheel.util;
+
+import com.jozufozu.flywheel.mixin.FrustumAccessor;
+import com.mojang.math.Vector4f;
+
+import net.minecraft.client.renderer.culling.Frustum;
+import net.minecraft.core.Vec3i;
+
+/**
+ * A copy of the 6 planes of a vanilla {@link Frustum}, in a form that can be uploaded to a shader.
+ *
+ * <p>
+ *     Vanilla normalizes its planes over all 4 components, so here they are rescaled such that the xyz of each plane is
+ *     a unit normal. With that, the w component is the signed distance of the plane from the frustum's origin, and a
+ *     sphere can be tested against a plane with a single dot product.
+ * </p>
+ */
+public class FrustumPlanes {
+
+	private final float[] planes = new float[24];
+	private double cameraX;
+	private double cameraY;
+	private double cameraZ;
+	private boolean valid;
+
+	/**
+	 * Copy the planes out of a prepared frustum.
+	 *
+	 * @param frustum The frustum to copy.
+	 * @param origin  The origin of the coordinate space the frustum will be tested in.
+	 */
+	public void set(Frustum frustum, Vec3i origin) {
+		FrustumAccessor accessor = (FrustumAccessor) frustum;
+
+		Vector4f[] frustumData = accessor.flywheel$getPlanes();
+
+		for (int i = 0; i < 6; i++) {
+			Vector4f plane = frustumData[i];
+
+			float x = plane.x();
+			float y = plane.y();
+			float z = plane.z();
+			float length = (float) Math.sqrt(x * x + y * y + z * z);
+
+			if (length == 0) {
+				// Degenerate plane, make it accept everything.
+				planes[i * 4] = planes[i * 4 + 1] = planes[i * 4 + 2] = 0;
+				planes[i * 4 + 3] = 1;
+				continue;
+			}
+
+			planes[i * 4] = x / length;
+			planes[i * 4 + 1] = y / length;
+			planes[i * 4 + 2] = z / length;
+			planes[i * 4 + 3] = plane.w() / length;
+		}
+
+		cameraX = accessor.flywheel$getCamX() - origin.getX();
+		cameraY = accessor.flywheel$getCamY() - origin.getY();
+		cameraZ = accessor.flywheel$getCamZ() - origin.getZ();
+		valid = true;
+	}
+
+	/**
+	 * @return true if {@link #set} has been called at least once.
+	 */
+	public boolean isValid() {
+		return valid;
+	}
+
+	/**
+	 * @return The 6 planes packed as xyzw, relative to the camera.
+	 */
+	public float[] getPlanes() {
+		return planes;
+	}
+
+	/**
+	 * @return The x coordinate of the camera, relative to the origin passed to {@link #set}.
+	 */
+	public double getCameraX() {
+		return cameraX;
+	}
+
+	public double getCameraY() {
+		return cameraY;
+	}
+
+	public double getCameraZ() {
+		return cameraZ;
+	}
+}
@@ -13,5 +13,10 @@ public interface MatrixWrite {
 	 */
 	void flywheel$writeUnsafe(long ptr);
 
+	/**
+	 * Load the contents of this object from memory written by {@link #flywheel$writeUnsafe}.
+	 */
+	void flywheel$readUnsafe(long ptr);
+
 	void flywheel$write(VecBuffer buf);
 }
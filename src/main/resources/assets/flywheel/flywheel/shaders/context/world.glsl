@@ -12,7 +12,29 @@ uniform vec2 uWindowSize;
 
 #if defined(VERTEX_SHADER)
 
+#if defined(WORLD_LIGHT)
+uniform sampler3D uWorldLight;
+uniform vec3 uWorldLightMin;
+uniform vec3 uWorldLightSize;
+uniform vec3 uWorldLightOrigin;
+
+void FLWWorldLight(inout Vertex v) {
+    // sample the middle of the block the vertex faces
+    vec3 samplePos = v.pos + normalize(v.normal) * 0.5;
+    vec3 local = samplePos - uWorldLightMin;
+
+    // anything outside keeps the light from its instance
+    if (all(greaterThanEqual(local, vec3(0.))) && all(lessThan(local, uWorldLightSize))) {
+        v.light = texture(uWorldLight, (samplePos + uWorldLightOrigin) / uWorldLightSize).rg;
+    }
+}
+#endif
+
 vec4 FLWVertex(inout Vertex v) {
+    #if defined(WORLD_LIGHT)
+    FLWWorldLight(v);
+    #endif
+
     FragDistance = cylindrical_distance(v.pos, uCameraPos);
 
     return uViewProjection * vec4(v.pos, 1.);